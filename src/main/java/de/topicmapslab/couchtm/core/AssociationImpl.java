@@ -37,6 +37,8 @@ import de.topicmapslab.couchtm.internal.api.IConstant;
 import de.topicmapslab.couchtm.internal.api.IScoped;
 
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
+import de.topicmapslab.couchtm.internal.utils.ConstructSet;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.MergeUtils;
@@ -61,7 +63,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 
 	public AssociationImpl(String id, ITopicMap tm) {
 		super(id, tm, IConstant.ASSOCIATION);
-		roles = CollectionFactory.createIdentitySet(IConstant.ASSOC_ROLE_SIZE);
+		roles = new ConstructSet<IRole>(this, IConstant.ROLE);
 		scope = CollectionFactory.createSet();
 		loaded = false;
 		mergedIn = null;
@@ -71,7 +73,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 		super(assoc);
 		parent = (ITopicMap) assoc.getParent();
 		type = (ITopic) assoc.getType();
-		roles = CollectionFactory.createIdentitySet(IConstant.ASSOC_ROLE_SIZE);
+		roles = new ConstructSet<IRole>(this, IConstant.ROLE);
 		roles.addAll(Converter.setRoleToIRole(assoc.getRoles()));
 		reifier = (ITopic) assoc.getReifier();
 		scope = CollectionFactory.createSet();
@@ -84,7 +86,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 		super(id, tm, IConstant.ASSOCIATION, tm, iids, rev);
 		this.type = type;
 		this.reifier = reifier;
-		this.roles = roles;
+		this.roles = new ConstructSet<IRole>(this, IConstant.ROLE, roles);
 		this.scope = scope;
 		this.parent = tm;
 		loaded = true;
@@ -95,7 +97,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 		super(id, tm, IConstant.ASSOCIATION, true);
 		this.type = type;
 		this.scope = scope;
-		this.roles = CollectionFactory.createIdentitySet(IConstant.ASSOC_ROLE_SIZE);
+		this.roles = new ConstructSet<IRole>(this, IConstant.ROLE);
 		this.parent = tm;
 		this.reifier = null;
 		loaded = true;
@@ -201,6 +203,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 	public Set<Role> getRoles() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getRoles();
+		tmom.hydrate(roles);
 		return Collections.unmodifiableSet(Converter.setIRoleToRole(roles));
 	}
 
@@ -349,7 +352,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 		}
 		ITopic rmTheme = null;
 		for(ITopic theme2 : scope) {
-			if(theme2.getId().equals(theme.getId())) {
+			if(ConstructId.same(theme2, theme)) {
 				rmTheme = theme2;
 				break;
 			}
@@ -435,17 +438,43 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 	 */
 	@Override
 	protected void load() {
-		IAssociation assoc = tmom.getAssociation(id);
+		if(loaded) return;
+		load(tmom.getAssociation(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		IAssociation assoc = (IAssociation) construct;
 		if(parent == null) parent = (ITopicMap) assoc.getParent();
 		if(type == null) type = (ITopic) assoc.getType();
 		if(scope == null || scope.size() < 1) scope = Converter.setTopicToITopic(assoc.getScope());
-		if(roles == null || roles.size() < 1) roles = Converter.setRoleToIRole(assoc.getRoles());
+		if(roles == null || roles.size() < 1) roles = new ConstructSet<IRole>(this, IConstant.ROLE, Converter.setRoleToIRole(assoc.getRoles()));
 		if(reifier == null) reifier = (ITopic) assoc.getReifier();
 		loaded = true;
 		super.load(assoc);
 		tmom.addConstruct(this);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		IAssociation assoc = (IAssociation) construct;
+		type = (ITopic) assoc.getType();
+		scope = Converter.setTopicToITopic(assoc.getScope());
+		roles = new ConstructSet<IRole>(this, IConstant.ROLE, Converter.setRoleToIRole(assoc.getRoles()));
+		reifier = (ITopic) assoc.getReifier();
+		loaded = true;
+		super.refresh(assoc);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#asJSONObject()
@@ -512,7 +541,7 @@ public class AssociationImpl extends ConstructImpl implements IAssociation, IRei
 		if(mergedIn != null) mergedIn.removeRole(role);
 		IRole rmRole = null;
 		for(IRole role2 : roles) {
-			if(role2.getId().equals(role.getId())) {
+			if(ConstructId.same(role2, role)) {
 				rmRole = role2;
 				break;
 			}
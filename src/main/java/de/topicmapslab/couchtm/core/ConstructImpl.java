@@ -28,6 +28,7 @@ import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
 import de.topicmapslab.couchtm.internal.utils.TopicMapEventManager;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
 import de.topicmapslab.couchtm.internal.api.IConstruct;
 import de.topicmapslab.couchtm.internal.api.Event;
 import de.topicmapslab.couchtm.internal.api.ITopicMap;
@@ -35,7 +36,6 @@ import de.topicmapslab.couchtm.internal.api.IConstant;
 
 import java.util.Set;
 import java.util.Collections;
-import java.util.UUID;
 
 /**
  * {@link IConstruct} implementation, base class for topic map constructs.
@@ -44,7 +44,7 @@ import java.util.UUID;
  */
 public class ConstructImpl implements IConstruct{
 	
-	protected String id;
+	protected ConstructId id;
 	private String rev;
 	private String documentType;
 	private Construct parent;
@@ -57,7 +57,7 @@ public class ConstructImpl implements IConstruct{
 	
 	//new topic map without rev
 	public ConstructImpl(String id, TopicMapObjectManager tmom, Set<Locator> iids) {
-		this.id = id;
+		this.id = ConstructId.valueOf(id);
 		this.tmom = tmom;
 		this.iids = iids;
 		this.documentType = IConstant.TOPIC_MAP;
@@ -75,7 +75,7 @@ public class ConstructImpl implements IConstruct{
 	}
 
 	public ConstructImpl(String id, ITopicMap tm) {
-		this.id = id;
+		this.id = ConstructId.valueOf(id);
 		this.tm = tm;
 		tmom = tm.getTopicMapObjectManager();
 		tmem = tm.getTopicMapEventManager();
@@ -86,7 +86,7 @@ public class ConstructImpl implements IConstruct{
 	}
 
 	public ConstructImpl(String id, ITopicMap tm, String documentType, IConstruct parent, boolean loaded) {
-		this.id = id;
+		this.id = ConstructId.valueOf(id);
 		this.documentType = documentType;
 		this.tm = tm;
 		this.parent = parent;
@@ -103,7 +103,7 @@ public class ConstructImpl implements IConstruct{
 	}
 	
 	public ConstructImpl(String id, ITopicMap tm, String documentType) {
-		this.id = id;
+		this.id = ConstructId.valueOf(id);
 		this.documentType = documentType;
 		this.tm = tm;
 		tmom = tm.getTopicMapObjectManager();
@@ -122,7 +122,7 @@ public class ConstructImpl implements IConstruct{
 	}
 
 	public ConstructImpl(IConstruct construct) {
-		id = construct.getId();
+		id = construct.getConstructId();
 		rev = construct.getRev();
 		documentType = construct.getDocumentType();
 		parent = construct.getParent();
@@ -146,7 +146,7 @@ public class ConstructImpl implements IConstruct{
 			mergedIn.setMergedIn(construct);
 			return;
 		}
-		this.id = construct.getId();
+		this.id = construct.getConstructId();
 		mergedIn = construct;
 	}
 	
@@ -315,6 +315,16 @@ public class ConstructImpl implements IConstruct{
 	@Override
 	public String getId() {
 		if(mergedIn != null) return mergedIn.getId();
+		return id.toString();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#getConstructId()
+	 */
+	@Override
+	public ConstructId getConstructId() {
+		if(mergedIn != null) return mergedIn.getConstructId();
 		return id;
 	}
 
@@ -426,11 +436,27 @@ public class ConstructImpl implements IConstruct{
 	
 	protected void load() {
 		if(loaded) return;
-		IConstruct construct = tmom.getConstruct(id);
+		IConstruct construct = tmom.getConstruct(id.toString());
 		load(construct);
 	}
 	
-	protected void load(IConstruct construct) {
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	public void refresh(IConstruct construct) {
+		Set<Locator> iids = CollectionFactory.createSet(IConstant.CONSTRUCT_IID_SIZE);
+		iids.addAll(construct.getItemIdentifiers());
+		this.iids = iids;
+		rev = construct.getRev();
+		loaded = true;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	public void load(IConstruct construct) {
 		if(loaded) return;
 		if(parent == null) parent = construct.getParent();
 		if(iids == null || iids.size() < 1) iids.addAll(construct.getItemIdentifiers());
@@ -502,7 +528,7 @@ public class ConstructImpl implements IConstruct{
 	@Override
 	public boolean equals(IConstruct second) {
 		if(mergedIn != null) return mergedIn.equals(second);
-		return(id.equals(second.getId()));
+		return(id.equals(second.getConstructId()));
 	}
 	
 	/*
@@ -512,7 +538,7 @@ public class ConstructImpl implements IConstruct{
 	@Override
 	public int hashCode() {
 		if(mergedIn != null) return mergedIn.hashCode();
-		return UUID.fromString(id.substring(4)).hashCode();
+		return id.hashCode();
 	}
 	
 	/*
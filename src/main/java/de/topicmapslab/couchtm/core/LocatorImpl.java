@@ -21,8 +21,13 @@ import org.tmapi.core.MalformedIRIException;
 import org.tmapi.core.TMAPIRuntimeException;
 
 import java.io.UnsupportedEncodingException;
+import java.lang.ref.WeakReference;
 import java.net.URI;
 import java.net.URLDecoder;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+import de.topicmapslab.couchtm.internal.api.IConstant;
 
 /**
  * {@link Locator} implementation.
@@ -32,30 +37,178 @@ import java.net.URLDecoder;
 public class LocatorImpl implements Locator{
 	
 	private static final String _EMPTY = "";
-	private final URI uri;
-	private final String reference;
+	
+	//interned locators, entries are dropped with the last locator
+	private static final Map<LocatorImpl, WeakReference<LocatorImpl>> _POOL = new WeakHashMap<LocatorImpl, WeakReference<LocatorImpl>>();
+	
+	//shared prefixes of the references, entries are dropped with the last locator using them
+	private static final Map<String, WeakReference<String>> _PREFIXES = new WeakHashMap<String, WeakReference<String>>();
+	
+	public static final LocatorImpl XSD_STRING = valueOf(IConstant.XSD_STRING);
+	public static final LocatorImpl XSD_ANY_URI = valueOf(IConstant.XSD_ANY_URI);
+	public static final LocatorImpl XSD_DECIMAL = valueOf(IConstant.XSD_DECIMAL);
+	public static final LocatorImpl XSD_INTEGER = valueOf(IConstant.XSD_INTEGER);
+	public static final LocatorImpl XSD_INT = valueOf(IConstant.XSD_INT);
+	public static final LocatorImpl XSD_LONG = valueOf(IConstant.XSD_LONG);
+	public static final LocatorImpl XSD_FLOAT = valueOf(IConstant.XSD_FLOAT);
+	
+	//characters which are never allowed in an IRI reference
+	private static final String _ILLEGAL = "\"<>\\^`{|}";
+	
+	//built on first use by resolve, toExternalForm and toString, the syntax is checked on creation
+	private volatile URI uri;
+	//the reference is split after the last '/', '#' or ':' into a shared prefix and a suffix
+	private final String prefix;
+	private final String suffix;
+	private final int hash;
+	//reference as given if it differs from the decoded one, used to create the uri
+	private final String source;
 	
 	public LocatorImpl(String reference) {
         if (_EMPTY.equals(reference) || reference.charAt(0) == '#') {
             throw new MalformedIRIException("Illegal absolute IRI: '" + reference + "'");
         }
-        try {
-            this.reference = URLDecoder.decode(reference, "utf-8");
-        }
-        catch (UnsupportedEncodingException ex) {
-            throw new TMAPIRuntimeException(ex);
+        _checkSyntax(reference);
+        String decoded;
+        if (reference.indexOf('%') < 0 && reference.indexOf('+') < 0) {
+        	decoded = reference;
+        } else {
+        	try {
+        		decoded = URLDecoder.decode(reference, "utf-8");
+        	}
+        	catch (UnsupportedEncodingException ex) {
+        		throw new TMAPIRuntimeException(ex);
+        	}
         }
-        uri = URI.create(reference.replace(" ", "%20").replace("+", "%20"));
+        source = decoded.equals(reference) ? null : reference;
+        int split = _split(decoded);
+        prefix = _prefix(decoded.substring(0, split));
+        suffix = new String(decoded.substring(split));
+        hash = decoded.hashCode();
     }
 
     public LocatorImpl(URI uri) {
+    	String decoded;
         try {
-            reference = URLDecoder.decode(uri.toString(), "utf-8");
+            decoded = URLDecoder.decode(uri.toString(), "utf-8");
         }
         catch (UnsupportedEncodingException ex) {
             throw new TMAPIRuntimeException(ex);
         }
         this.uri = uri;
+        source = null;
+        int split = _split(decoded);
+        prefix = _prefix(decoded.substring(0, split));
+        suffix = new String(decoded.substring(split));
+        hash = decoded.hashCode();
+    }
+    
+    //checks the syntax of the reference in a single pass, the uri itself is built on first use
+    private static void _checkSyntax(String reference) {
+    	int length = reference.length();
+    	int fragment = -1;
+    	int query = -1;
+    	int authorityEnd = -1;
+    	//a scheme ends at the first ':' before any '/', '?' or '#'
+    	int colon = -1;
+    	for(int i = 0; i < length; i++) {
+    		char c = reference.charAt(i);
+    		if(c == '/' || c == '?' || c == '#') break;
+    		if(c == ':') {
+    			colon = i;
+    			break;
+    		}
+    	}
+    	if(colon >= 0) {
+    		if(colon == 0 || !_isAlpha(reference.charAt(0))) _illegal(reference);
+    		//a '+' is replaced by a space like in the decoded reference
+    		for(int i = 1; i < colon; i++) {
+    			char c = reference.charAt(i);
+    			if(!(_isAlpha(c) || c >= '0' && c <= '9' || c == '-' || c == '.')) _illegal(reference);
+    		}
+    		if(colon + 1 == length || reference.charAt(colon + 1) == '#') _illegal(reference);
+    	}
+    	int start = colon + 1;
+    	//the scheme specific part of an opaque IRI like a mail address is not split
+    	boolean opaque = colon >= 0 && reference.charAt(start) != '/';
+    	if(reference.startsWith("//", start)) {
+    		authorityEnd = start + 2;
+    		while(authorityEnd < length && "/?#".indexOf(reference.charAt(authorityEnd)) < 0) authorityEnd++;
+    	}
+    	for(int i = 0; i < length; i++) {
+    		char c = reference.charAt(i);
+    		if(c == '%') {
+    			if(i + 2 >= length || Character.digit(reference.charAt(i + 1), 16) < 0 || Character.digit(reference.charAt(i + 2), 16) < 0) _illegal(reference);
+    		} else if(c == '#') {
+    			if(fragment >= 0) _illegal(reference);
+    			fragment = i;
+    		} else if(c == '?') {
+    			if(query < 0) query = i;
+    		} else if(c == '[' || c == ']') {
+    			//allowed in the host, the query, the fragment and opaque IRIs
+    			if(!opaque && i >= authorityEnd && query < 0 && fragment < 0) _illegal(reference);
+    		} else if(c != ' ' && (Character.isISOControl(c) || Character.isSpaceChar(c) || _ILLEGAL.indexOf(c) >= 0)) {
+    			_illegal(reference);
+    		}
+    	}
+    }
+    
+    private static boolean _isAlpha(char c) {
+    	return c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z';
+    }
+    
+    private static void _illegal(String reference) {
+    	throw new MalformedIRIException("Illegal IRI: '" + reference + "'");
+    }
+    
+    //index after the last '/', '#' or ':'
+    private static int _split(String reference) {
+    	return Math.max(reference.lastIndexOf('/'), Math.max(reference.lastIndexOf('#'), reference.lastIndexOf(':'))) + 1;
+    }
+    
+    //returns the shared instance of the prefix
+    private static String _prefix(String prefix) {
+    	if(prefix.length() == 0) return _EMPTY;
+    	synchronized(_PREFIXES) {
+    		WeakReference<String> ref = _PREFIXES.get(prefix);
+    		String shared = ref == null ? null : ref.get();
+    		if(shared == null) {
+    			shared = new String(prefix);
+    			_PREFIXES.put(shared, new WeakReference<String>(shared));
+    		}
+    		return shared;
+    	}
+    }
+    
+    /**
+     * Returns the interned locator for the reference. Equal references share one 
+     * locator as long as it is in use.
+     * 
+     * @param reference reference
+     * @return locator
+     */
+    public static LocatorImpl valueOf(String reference) {
+    	LocatorImpl loc = new LocatorImpl(reference);
+    	synchronized(_POOL) {
+    		WeakReference<LocatorImpl> ref = _POOL.get(loc);
+    		LocatorImpl existing = ref == null ? null : ref.get();
+    		if(existing != null) return existing;
+    		_POOL.put(loc, new WeakReference<LocatorImpl>(loc));
+    	}
+    	return loc;
+    }
+    
+    //builds the uri on first use
+    private URI _uri() {
+    	if(uri == null) {
+    		String reference = source == null ? getReference() : source;
+    		try {
+    			uri = URI.create(reference.replace(" ", "%20").replace("+", "%20"));
+    		} catch(IllegalArgumentException e) {
+    			throw new MalformedIRIException("Illegal IRI: '" + reference + "'");
+    		}
+    	}
+    	return uri;
     }
 	
     /*
@@ -64,7 +217,7 @@ public class LocatorImpl implements Locator{
      */
 	@Override
 	public String getReference() {
-		return reference;
+		return prefix.length() == 0 ? suffix : prefix.concat(suffix);
 	}
 
 	/*
@@ -75,7 +228,7 @@ public class LocatorImpl implements Locator{
 	public Locator resolve(String reference) {
 		Locator loc = null;
 		try{
-			loc = new LocatorImpl(uri.resolve(reference.replaceAll("[ ]","%20")));
+			loc = new LocatorImpl(_uri().resolve(reference.replaceAll("[ ]","%20")));
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -89,7 +242,7 @@ public class LocatorImpl implements Locator{
 	 */
 	@Override
 	public String toExternalForm() {
-		return uri.toASCIIString();
+		return _uri().toASCIIString();
 	}
 	
 	/*
@@ -98,7 +251,7 @@ public class LocatorImpl implements Locator{
 	 */
 	@Override
     public int hashCode() {
-        return reference.hashCode();
+        return hash;
     }
 	
 	/*
@@ -107,7 +260,7 @@ public class LocatorImpl implements Locator{
 	 */
 	@Override
     public String toString() {
-        return uri.toString();
+        return _uri().toString();
     }
 	
 	/*
@@ -116,7 +269,10 @@ public class LocatorImpl implements Locator{
 	 */
 	@Override
     public boolean equals(Object obj) {
-        return this == obj || (obj instanceof LocatorImpl && reference.equals(((LocatorImpl) obj).reference));
+        if (this == obj) return true;
+        if (!(obj instanceof LocatorImpl)) return false;
+        LocatorImpl other = (LocatorImpl) obj;
+        return hash == other.hash && suffix.equals(other.suffix) && (prefix == other.prefix || prefix.equals(other.prefix));
     }
 
 }
@@ -39,6 +39,8 @@ import de.topicmapslab.couchtm.internal.api.ITyped;
 import de.topicmapslab.couchtm.internal.api.IConstruct;
 
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
+import de.topicmapslab.couchtm.internal.utils.ConstructSet;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.MergeCheck;
@@ -63,7 +65,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 	public NameImpl(String id, ITopicMap tm) {
 		super(id, tm, IConstant.NAME);
 		scope = CollectionFactory.createSet();
-		variants = CollectionFactory.createIdentitySet(IConstant.NAME_VARIANT_SIZE);
+		variants = new ConstructSet<IVariant>(this, IConstant.VARIANT);
 		loaded = false;
 		mergedIn = null;
 	}
@@ -75,7 +77,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		this.parent = parent;
 		this.type = type;
 		this.reifier = null;
-		variants = CollectionFactory.createIdentitySet(IConstant.NAME_VARIANT_SIZE);
+		variants = new ConstructSet<IVariant>(this, IConstant.VARIANT);
 		loaded = true;
 		mergedIn = null;
 	}
@@ -87,7 +89,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		type = (ITopic) name.getType();
 		scope = CollectionFactory.createSet();
 		scope.addAll(Converter.setTopicToITopic(name.getScope()));
-		variants = CollectionFactory.createSet();
+		variants = new ConstructSet<IVariant>(this, IConstant.VARIANT);
 		variants.addAll(Converter.setVariantToIVariant(name.getVariants()));
 		reifier = (ITopic) name.getReifier();
 		loaded = name.getLoaded();
@@ -100,7 +102,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		this.parent = parent;
 		this.type = type;
 		this.scope = scope;
-		this.variants = variants;
+		this.variants = new ConstructSet<IVariant>(this, IConstant.VARIANT, variants);
 		this.reifier = reifier;
 		loaded = true;
 		mergedIn = null;
@@ -172,7 +174,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.createVariant(value, scope);
 		Check.valueNotNull(this, value);
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#string");
+		Locator datatype = LocatorImpl.XSD_STRING;
 		return createVariant(value, datatype, scope);
 	}
 
@@ -200,7 +202,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.createVariant(value, scope);
 		Check.valueNotNull(this, value);
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#anyURI");
+		Locator datatype = LocatorImpl.XSD_ANY_URI;
 		return createVariant(value.getReference(), datatype, scope);
 	}
 
@@ -262,6 +264,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 	public Set<Variant> getVariants() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getVariants();
+		tmom.hydrate(variants);
 		return Collections.unmodifiableSet(Converter.setIVariantToVariant(variants));
 	}
 
@@ -363,7 +366,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		}
 		ITopic rmTheme = null;
 		for(ITopic theme2 : scope) {
-			if(theme2.getId().equals(theme.getId())) {
+			if(ConstructId.same(theme2, theme)) {
 				rmTheme = theme2;
 				break;
 			}
@@ -470,18 +473,44 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 	@Override
 	protected void load() {
 		if(loaded) return;
-		IName name = tmom.getName(id);
+		load(tmom.getName(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		IName name = (IName) construct;
 		if(parent == null) parent = (ITopic) name.getParent();
 		if(value == null) value = name.getValue();
 		if(reifier == null) reifier = (ITopic) name.getReifier();
 		if(type == null) type = (ITopic) name.getType();
 		if(scope == null || scope.size() < 1) scope = Converter.setTopicToITopic(name.getScope());
-		if(variants == null || variants.size() < 1) variants = Converter.setVariantToIVariant(name.getVariants());
+		if(variants == null || variants.size() < 1) variants = new ConstructSet<IVariant>(this, IConstant.VARIANT, Converter.setVariantToIVariant(name.getVariants()));
 		loaded = true;
 		super.load(name);
 		tmom.addConstruct(this);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		IName name = (IName) construct;
+		value = name.getValue();
+		reifier = (ITopic) name.getReifier();
+		type = (ITopic) name.getType();
+		scope = Converter.setTopicToITopic(name.getScope());
+		variants = new ConstructSet<IVariant>(this, IConstant.VARIANT, Converter.setVariantToIVariant(name.getVariants()));
+		loaded = true;
+		super.refresh(name);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#asJSONObject()
@@ -570,7 +599,7 @@ public class NameImpl extends ConstructImpl implements IName, IReifiable, IScope
 		}
 		IVariant rmVariant = null;
 		for(IVariant variant2 : variants) {
-			if(variant2.getId().equals(variant.getId())) {
+			if(ConstructId.same(variant2, variant)) {
 				rmVariant = variant2;
 				break;
 			}
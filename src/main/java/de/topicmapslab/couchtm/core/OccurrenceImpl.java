@@ -39,6 +39,7 @@ import de.topicmapslab.couchtm.internal.api.IConstruct;
 
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.MergeUtils;
 
@@ -321,7 +322,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_STRING);
+		datatype = LocatorImpl.XSD_STRING;
 		this.value = value;
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -342,7 +343,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_ANY_URI);
+		datatype = LocatorImpl.XSD_ANY_URI;
 		this.value = value.getReference();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -363,7 +364,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_DECIMAL);
+		datatype = LocatorImpl.XSD_DECIMAL;
 		this.value = value.toPlainString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -384,7 +385,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_INTEGER);
+		datatype = LocatorImpl.XSD_INTEGER;
 		this.value = value.toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -404,7 +405,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_LONG);
+		datatype = LocatorImpl.XSD_LONG;
 		this.value = (new Long(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -424,7 +425,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_FLOAT);
+		datatype = LocatorImpl.XSD_FLOAT;
 		this.value = (new Float(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -444,7 +445,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_INT);
+		datatype = LocatorImpl.XSD_INT;
 		this.value = (new Integer(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -571,7 +572,7 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 		}
 		ITopic rmTheme = null;
 		for(ITopic theme2 : scope) {
-			if(theme2.getId().equals(theme.getId())) {
+			if(ConstructId.same(theme2, theme)) {
 				rmTheme = theme2;
 				break;
 			}
@@ -622,7 +623,18 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 	 */
 	@Override
 	protected void load() {
-		IOccurrence occ = tmom.getOccurrence(id);
+		if(loaded) return;
+		load(tmom.getOccurrence(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		IOccurrence occ = (IOccurrence) construct;
 		if(parent == null) parent = (ITopic) occ.getParent();
 		if(value == null) value = occ.getValue();
 		if(datatype == null) datatype = occ.getDatatype();
@@ -634,6 +646,22 @@ public class OccurrenceImpl extends ConstructImpl implements IOccurrence, ITyped
 		tmom.addConstruct(this);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		IOccurrence occ = (IOccurrence) construct;
+		value = occ.getValue();
+		datatype = occ.getDatatype();
+		type = (ITopic) occ.getType();
+		reifier = (ITopic) occ.getReifier();
+		scope = Converter.setTopicToITopic(occ.getScope());
+		loaded = true;
+		super.refresh(occ);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#asJSONObject()
@@ -315,7 +315,18 @@ public class RoleImpl extends ConstructImpl implements IRole, ITyped, IReifiable
 	 */
 	@Override
 	protected void load() {
-		IRole role = tmom.getRole(id);
+		if(loaded) return;
+		load(tmom.getRole(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		IRole role = (IRole) construct;
 		if(parent == null) parent = (IAssociation) role.getParent();
 		if(player == null) player = (ITopic) role.getPlayer();
 		if(type == null) type = (ITopic) role.getType();
@@ -325,6 +336,20 @@ public class RoleImpl extends ConstructImpl implements IRole, ITyped, IReifiable
 		tmom.addConstruct(this);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		IRole role = (IRole) construct;
+		player = (ITopic) role.getPlayer();
+		type = (ITopic) role.getType();
+		reifier = (ITopic) role.getReifier();
+		loaded = true;
+		super.refresh(role);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#asJSONObject()
@@ -50,8 +50,11 @@ import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.IReifiable;
 
 import de.topicmapslab.couchtm.internal.utils.MergeCheck;
+import de.topicmapslab.couchtm.internal.utils.IdGenerator;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
+import de.topicmapslab.couchtm.internal.utils.ConstructSet;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.MergeUtils;
 
@@ -65,6 +68,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	private ITopicMap parent;
 	private Set<IName> names;
 	private Set<IOccurrence> occurrences;
+	//derived from the getrolesbyplayer view when first needed, null until then
 	private Set<IRole> rolesPlayed;
 	private Set<ITopic> types;
 	private IReifiable reified;
@@ -76,9 +80,8 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public TopicImpl(String id, ITopicMap tm) {
 		super(id, tm, IConstant.TOPIC);
 		subjectIdentifiers = CollectionFactory.createSet(IConstant.TOPIC_SID_SIZE);
-        occurrences = CollectionFactory.createIdentitySet(IConstant.TOPIC_OCCURRENCE_SIZE);
-        names = CollectionFactory.createIdentitySet(IConstant.TOPIC_NAME_SIZE);
-        rolesPlayed = CollectionFactory.createIdentitySet(IConstant.TOPIC_ROLE_SIZE);
+        occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE);
+        names = new ConstructSet<IName>(this, IConstant.NAME);
         subjectLocators = CollectionFactory.createSet(IConstant.TOPIC_SLO_SIZE);
         types = CollectionFactory.createIdentitySet(IConstant.TOPIC_TYPE_SIZE);
         loaded = false;
@@ -88,9 +91,9 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public TopicImpl(String id, String rev, ITopicMap tm, Set<Locator> iids, Set<IName> names, Set<IOccurrence> occs, Set<IRole> roles, IReifiable reified, Set<Locator> sids, Set<Locator> slos, Set<ITopic> types) {
 		super(id, tm, IConstant.TOPIC, tm, iids, rev);
 		this.parent = tm;	
-		this.names = names; 
-		occurrences = occs; 
-		rolesPlayed = roles;
+		this.names = new ConstructSet<IName>(this, IConstant.NAME, names);
+		occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE, occs);
+		rolesPlayed = roles == null ? null : new ConstructSet<IRole>(this, IConstant.ROLE, roles);
 		this.reified = reified;	
 		subjectIdentifiers = sids;	
 		subjectLocators = slos;	
@@ -103,9 +106,9 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public TopicImpl(String id, ITopicMap tm, Locator iid, Locator sid, Locator slo) {
 		super(id, tm, IConstant.TOPIC, true);
 		subjectIdentifiers = CollectionFactory.createSet(IConstant.TOPIC_SID_SIZE);
-        occurrences = CollectionFactory.createIdentitySet(IConstant.TOPIC_OCCURRENCE_SIZE);
-        names = CollectionFactory.createIdentitySet(IConstant.TOPIC_NAME_SIZE);
-        rolesPlayed = CollectionFactory.createIdentitySet(IConstant.TOPIC_ROLE_SIZE);
+        occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE);
+        names = new ConstructSet<IName>(this, IConstant.NAME);
+        rolesPlayed = new ConstructSet<IRole>(this, IConstant.ROLE);
         subjectLocators = CollectionFactory.createSet(IConstant.TOPIC_SLO_SIZE);
         types = CollectionFactory.createIdentitySet(IConstant.TOPIC_TYPE_SIZE);
 		if(iid != null) super.iids.add(iid);
@@ -119,11 +122,11 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public TopicImpl(ITopic topic) {
 		super(topic);
 		parent = (ITopicMap) topic.getParent();
-		names = CollectionFactory.createSet();
+		names = new ConstructSet<IName>(this, IConstant.NAME);
 		names.addAll(Converter.setNameToIName(topic.getNames()));
-		occurrences = CollectionFactory.createIdentitySet(IConstant.TOPIC_OCCURRENCE_SIZE);
+		occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE);
 		occurrences.addAll(Converter.setOccurrenceToIOccurrence(topic.getOccurrences()));
-		rolesPlayed = CollectionFactory.createIdentitySet(IConstant.TOPIC_ROLE_SIZE);
+		rolesPlayed = new ConstructSet<IRole>(this, IConstant.ROLE);
 		rolesPlayed.addAll(Converter.setRoleToIRole(topic.getRolesPlayed()));
 		types = CollectionFactory.createIdentitySet(IConstant.TOPIC_TYPE_SIZE);
 		types.addAll(Converter.setTopicToITopic(topic.getTypes()));
@@ -151,22 +154,22 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		for(IName name : Converter.setNameToIName(topic.getNames())) {
 			name.setParent(this);
 			boolean flag = true;
-			for(Name name2 :names) if(name.getId().equals(name2.getId())) flag = false;
+			for(Name name2 :names) if(ConstructId.same(name, name2)) flag = false;
 			if(flag) names.add(name);
 		}
 
 		for(IOccurrence occ : Converter.setOccurrenceToIOccurrence(topic.getOccurrences())) {
 			occ.setParent(this);
 			boolean flag = true;
-			for(Occurrence occ2 :occurrences) if(occ.getId().equals(occ2.getId())) flag = false;
+			for(Occurrence occ2 :occurrences) if(ConstructId.same(occ, occ2)) flag = false;
 			if(flag) occurrences.add(occ);
 		}
 		
 		for(IRole role : Converter.setRoleToIRole(topic.getRolesPlayed())) {
 			role.setPlayer(this);
 			boolean flag = true;
-			for(Role role2 :rolesPlayed) if(role.getId().equals(role2.getId())) flag = false;
-			if(flag) rolesPlayed.add(role);
+			for(Role role2 : rolesPlayed()) if(ConstructId.same(role, role2)) flag = false;
+			if(flag) rolesPlayed().add(role);
 		}
 		
 		for(ITopic type : Converter.setTopicToITopic(topic.getTypes())) {
@@ -219,7 +222,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		for(Role role : typedRoles) {
 			if(!checked.contains(role.getId())) {
 				for(Role role2 : typedRoles) {
-					if(!checked.contains(role2.getId()) && !role.getId().equals(role2.getId()) && role.getPlayer().getId().equals(role2.getPlayer().getId()) && !role.getParent().getId().equals(role2.getParent().getId())) {
+					if(!checked.contains(role2.getId()) && !ConstructId.same(role, role2) && ConstructId.same(role.getPlayer(), role2.getPlayer()) && !ConstructId.same(role.getParent(), role2.getParent())) {
 						IAssociation assoc1 = (IAssociation) role.getParent();
 						IAssociation assoc2 = (IAssociation) role2.getParent();
 						checked.add(role.getId());
@@ -238,7 +241,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		for(Role role : rolesByPlayer) {
 			if(!checked.contains(role.getId())) {
 				for(Role role2 : rolesByPlayer) {
-					if(!checked.contains(role2.getId()) && !role.getId().equals(role2.getId()) && role.getType().getId().equals(role2.getType().getId()) && !role.getParent().getId().equals(role2.getParent().getId())) {
+					if(!checked.contains(role2.getId()) && !ConstructId.same(role, role2) && ConstructId.same(role.getType(), role2.getType()) && !ConstructId.same(role.getParent(), role2.getParent())) {
 						IAssociation assoc1 = (IAssociation) role.getParent();
 						IAssociation assoc2 = (IAssociation) role2.getParent();
 						checked.add(role.getId());
@@ -429,7 +432,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
         if(types == null) types = CollectionFactory.createIdentitySet(IConstant.TOPIC_TYPE_SIZE);
         boolean flag = true;
         for(Topic _type : types) {
-        	if(_type.getId().equals(type.getId())) flag = false;
+        	if(ConstructId.same(_type, type)) flag = false;
         }
         if(flag) {
         	types.add((ITopic) type);
@@ -498,7 +501,19 @@ public class TopicImpl extends ConstructImpl implements ITopic{
         Check.sameTopicMap(this, scope);
         Set<ITopic> _scope= CollectionFactory.createSet();
 		for(Topic topic : scope) _scope.add((ITopic) topic);
-		IName name = MergeCheck.createCheckName((ITopic) type, value, _scope, this, tmom);
+		IName name = null;
+		if(tmom.hasContentIds()) {
+			IName created = new NameImpl(IdGenerator.contentId(IConstant.NAME, type.getId(), value, IdGenerator.sortedIds(_scope), getId()), tm, value, this, (ITopic) type, _scope);
+			if(tmom.createConstruct(created)) {
+				names.add(created);
+				tmom.saveConstruct(this);
+				return created;
+			}
+			//taken by an equal name created concurrently or by a name which was changed since
+			IName existing = tmom.getName(created.getId());
+			if(MergeCheck.matchesName(existing, (ITopic) type, value, _scope, this)) name = existing;
+		}
+		if(name == null) name = MergeCheck.createCheckName((ITopic) type, value, _scope, this, tmom);
         if(name == null) {
         	name = new NameImpl(tm.getSystem().getNewId(), tm, value, this, (ITopic) type, _scope);
         	tmom.saveConstruct(name);
@@ -507,7 +522,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
         } else {
         	boolean flag = true;
         	for(IName _name : names) {
-        		if(_name.getId().equals(name.getId())) flag = false;
+        		if(ConstructId.same(_name, name)) flag = false;
         	}
         	if(flag) {
         		names.add(name);
@@ -530,7 +545,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		for(Topic topic : scope) {
 			_scope.add(topic);
 		}
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#string");
+		Locator datatype = LocatorImpl.XSD_STRING;
 		return createOccurrence(type, value, datatype, _scope);
 	}
 
@@ -543,7 +558,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 			Collection<Topic> scope) {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.createOccurrence(type, value, scope);
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#string");
+		Locator datatype = LocatorImpl.XSD_STRING;
 		return createOccurrence(type, value, datatype, scope);
 	}
 
@@ -561,7 +576,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		for(Topic topic : scope) {
 			_scope.add(topic);
 		}
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#anyURI");
+		Locator datatype = LocatorImpl.XSD_ANY_URI;
 		return createOccurrence(type, value.getReference(), datatype, _scope);
 	}
 
@@ -575,7 +590,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		if(!loaded) load();
 		if(mergedIn != null) mergedIn.createOccurrence(type, value, scope);
 		Check.valueNotNull(this, value);
-		Locator datatype = new LocatorImpl("http://www.w3.org/2001/XMLSchema#anyURI");
+		Locator datatype = LocatorImpl.XSD_ANY_URI;
 		return createOccurrence(type, value.getReference(), datatype, scope);
 	}
 
@@ -614,7 +629,19 @@ public class TopicImpl extends ConstructImpl implements ITopic{
         Check.sameTopicMap(this, scope);
         Set<ITopic> _scope= CollectionFactory.createSet();
 		for(Topic topic : scope) _scope.add((ITopic) topic);
-        IOccurrence occ = MergeCheck.createCheckOccurrence((ITopic) type, value, datatype, _scope, this, tmom);
+        IOccurrence occ = null;
+        if(tmom.hasContentIds()) {
+        	IOccurrence created = new OccurrenceImpl(IdGenerator.contentId(IConstant.OCCURRENCE, type.getId(), value, datatype.getReference(), IdGenerator.sortedIds(_scope), getId()), tm, this, (ITopic) type, _scope, datatype, value);
+        	if(tmom.createConstruct(created)) {
+        		occurrences.add(created);
+        		tmom.saveConstruct(this);
+        		return created;
+        	}
+        	//taken by an equal occurrence created concurrently or by an occurrence which was changed since
+        	IOccurrence existing = tmom.getOccurrence(created.getId());
+        	if(MergeCheck.matchesOccurrence(existing, (ITopic) type, value, datatype, _scope, this)) occ = existing;
+        }
+        if(occ == null) occ = MergeCheck.createCheckOccurrence((ITopic) type, value, datatype, _scope, this, tmom);
         if(occ == null) {
         	occ = new OccurrenceImpl(tm.getSystem().getNewId(), tm, this, (ITopic) type, _scope, datatype, value);
         	tmom.saveConstruct(occ);
@@ -623,7 +650,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
         } else {
         	boolean flag = true;
         	for(Occurrence _occ : occurrences) {
-        		if(_occ.getId().equals(occ.getId())) flag = false;
+        		if(ConstructId.same(_occ, occ)) flag = false;
         	}
         	if(flag) {
         		occurrences.add(occ);
@@ -641,6 +668,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public Set<Name> getNames() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getNames();
+		tmom.hydrate(names);
 		return Collections.unmodifiableSet(Converter.setINameToName(names));
 	}
 
@@ -655,7 +683,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		Check.typeNotNull(type);
         Set<Name> _names = CollectionFactory.createSet();
         for (Name name: names) {
-            if (type.getId().equals(name.getType().getId())) {
+            if (ConstructId.same(type, name.getType())) {
                 _names.add(name);
             }
         }
@@ -670,6 +698,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public Set<Occurrence> getOccurrences() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getOccurrences();
+		tmom.hydrate(occurrences);
 		return Collections.unmodifiableSet(Converter.setIOccurrenceToOccurrence(occurrences));
 	}
 
@@ -684,7 +713,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		Check.typeNotNull(type);
 		Set<Occurrence> occs = CollectionFactory.createSet();
         for (Occurrence occ: occurrences) {
-            if (type.getId().equals(occ.getType().getId())) {
+            if (ConstructId.same(type, occ.getType())) {
                 occs.add(occ);
             }
         }
@@ -710,8 +739,23 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public Set<Role> getRolesPlayed() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getRolesPlayed();
+		tmom.hydrate(rolesPlayed());
 		return Collections.unmodifiableSet(Converter.setIRoleToRole(rolesPlayed));
 	}
+	
+	/**
+	 * Returns the roles played by this topic. They are not stored in the topic 
+	 * document but retrieved from the getrolesbyplayer view the first time 
+	 * they are needed.
+	 * 
+	 * @return roles
+	 */
+	private Set<IRole> rolesPlayed() {
+		if(rolesPlayed == null) {
+			rolesPlayed = new ConstructSet<IRole>(this, IConstant.ROLE, tmom.getRolesByPlayer(this));
+		}
+		return rolesPlayed;
+	}
 
 	/*
 	 * (non-Javadoc)
@@ -722,12 +766,12 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getRolesPlayed(type);
 		Check.typeNotNull(type);
-        if (rolesPlayed == null || rolesPlayed.size() < 1) {
+        if (rolesPlayed().size() < 1) {
             return Collections.emptySet();
         }
         Set<Role> roles = CollectionFactory.createSet(rolesPlayed.size());
         for (Role role: rolesPlayed) {
-            if (type.getId().equals(role.getType().getId())) {
+            if (ConstructId.same(type, role.getType())) {
                 roles.add(role);
             }
         }
@@ -746,10 +790,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		if (assoc == null) {
             throw new IllegalArgumentException("The association type must not be null");
         }
-        if (rolesPlayed == null) {
-            return Collections.emptySet();
-        }
-        Set<Role> roles = CollectionFactory.createSet(rolesPlayed.size());
+        Set<Role> roles = CollectionFactory.createSet(rolesPlayed().size());
         for (Role role: rolesPlayed) {
             if (type.equals(role.getType()) && assoc.equals(role.getParent().getType())) {
                 roles.add(role);
@@ -788,6 +829,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	public Set<Topic> getTypes() {
 		if(!loaded) load();
 		if(mergedIn != null) return mergedIn.getTypes();
+		if(types != null) tmom.hydrate(types);
 		return types == null ? Collections.<Topic>emptySet() : Collections.unmodifiableSet(Converter.setITopicToTopic(types));
 	}
 
@@ -874,7 +916,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		}
 		ITopic rmType = null;
 		for(ITopic type2 : types) {
-			if(type2.getId().equals(type.getId())) {
+			if(ConstructId.same(type2, type)) {
 				rmType = type2;
 				break;
 			}
@@ -936,12 +978,21 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	@Override
 	protected void load() {
 		if(loaded) return;
-		ITopic topic = tmom.getTopic(id);
+		load(tmom.getTopic(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		ITopic topic = (ITopic) construct;
 		if(parent == null) parent = (ITopicMap) topic.getParent();
 		if(reified == null) reified = (IReifiable) topic.getReified();
-		if(names == null || names.size() < 1) names = Converter.setNameToIName(topic.getNames());
-		if(occurrences == null || occurrences.size() < 1) occurrences = Converter.setOccurrenceToIOccurrence(topic.getOccurrences());
-		if(rolesPlayed == null || rolesPlayed.size() < 1) rolesPlayed = Converter.setRoleToIRole(topic.getRolesPlayed());
+		if(names == null || names.size() < 1) names = new ConstructSet<IName>(this, IConstant.NAME, Converter.setNameToIName(topic.getNames()));
+		if(occurrences == null || occurrences.size() < 1) occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE, Converter.setOccurrenceToIOccurrence(topic.getOccurrences()));
 		if(types == null || types.size() < 1) types = Converter.setTopicToITopic(topic.getTypes());
 		if(subjectIdentifiers == null || subjectIdentifiers.size() < 1) subjectIdentifiers.addAll(topic.getSubjectIdentifiers());
 		if(subjectLocators == null || subjectLocators.size() < 1) subjectLocators.addAll(topic.getSubjectLocators());
@@ -950,6 +1001,29 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		tmom.addConstruct(this);
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		ITopic topic = (ITopic) construct;
+		reified = (IReifiable) topic.getReified();
+		names = new ConstructSet<IName>(this, IConstant.NAME, Converter.setNameToIName(topic.getNames()));
+		occurrences = new ConstructSet<IOccurrence>(this, IConstant.OCCURRENCE, Converter.setOccurrenceToIOccurrence(topic.getOccurrences()));
+		types = Converter.setTopicToITopic(topic.getTypes());
+		Set<Locator> subjectIdentifiers = CollectionFactory.createSet(IConstant.TOPIC_SID_SIZE);
+		subjectIdentifiers.addAll(topic.getSubjectIdentifiers());
+		this.subjectIdentifiers = subjectIdentifiers;
+		Set<Locator> subjectLocators = CollectionFactory.createSet(IConstant.TOPIC_SLO_SIZE);
+		subjectLocators.addAll(topic.getSubjectLocators());
+		this.subjectLocators = subjectLocators;
+		//derived again from the roles in the database when they are read next
+		rolesPlayed = null;
+		loaded = true;
+		super.refresh(topic);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#asJSONObject()
@@ -981,11 +1055,6 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 				for(IOccurrence occ : occurrences) occs.put(occ.getId());
 				topic.put("occurrences", occs);
 			}
-			if(rolesPlayed.size() > 0) {
-				JSONArray roles = new JSONArray();
-				for(IRole role : rolesPlayed) roles.put(role.getId());
-				topic.put("roles", roles);
-			}
 			if(types.size() > 0) {
 				JSONArray _types = new JSONArray();
 				for(ITopic type : types) _types.put(type.getId());
@@ -1013,8 +1082,9 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 	 */
 	@Override
 	public void addRolePlayed(IRole role) {
+		//not derived yet, the view will contain the role
+		if(rolesPlayed == null) return;
 		rolesPlayed.add(role);
-		tmom.saveConstruct(this);
 	}
 
 	/*
@@ -1028,15 +1098,15 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 			mergedIn.removeRolePlayed(role);
 			return;
 		}
+		if(rolesPlayed == null) return;
 		Role rmRole = null;
 		for(Role role2 : rolesPlayed) {
-			if(role2.getId().equals(role.getId())) {
+			if(ConstructId.same(role2, role)) {
 				rmRole = role2;
 				break;
 			}
 		}
 		rolesPlayed.remove(rmRole);
-		tmom.saveConstruct(this);
 	}
 
 	/*
@@ -1052,7 +1122,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		}
 		IOccurrence rmOcc = null;
 		for(IOccurrence occ2 : occurrences) {
-			if(occ2.getId().equals(occ.getId())) {
+			if(ConstructId.same(occ2, occ)) {
 				rmOcc = occ2;
 				break;
 			}
@@ -1074,7 +1144,7 @@ public class TopicImpl extends ConstructImpl implements ITopic{
 		}
 		IName rmName = null;
 		for(IName name2 : names) {
-			if(name2.getId().equals(name2.getId())){
+			if(ConstructId.same(name2, name)){
 				rmName = name2;
 				break;
 			}
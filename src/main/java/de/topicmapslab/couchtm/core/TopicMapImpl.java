@@ -17,6 +17,7 @@
 package de.topicmapslab.couchtm.core;
 
 import java.util.Collection;
+import java.util.Map;
 import java.util.Set;
 
 import org.json.*;
@@ -25,6 +26,7 @@ import org.tmapi.core.Association;
 import org.tmapi.core.Construct;
 import org.tmapi.core.Locator;
 import org.tmapi.core.ModelConstraintException;
+import org.tmapi.core.TMAPIException;
 import org.tmapi.core.TMAPIRuntimeException;
 import org.tmapi.core.Topic;
 import org.tmapi.core.TopicMap;
@@ -42,12 +44,15 @@ import de.topicmapslab.couchtm.internal.api.IRole;
 import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.IConstruct;
 import de.topicmapslab.couchtm.internal.api.IReifiable;
+import de.topicmapslab.couchtm.internal.api.IUnitOfWork;
 import de.topicmapslab.couchtm.internal.utils.MergeUtils;
 import de.topicmapslab.couchtm.internal.utils.TopicMapEventManager;
 import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.MergeCheck;
+import de.topicmapslab.couchtm.internal.utils.IdGenerator;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.DB;
 
@@ -68,7 +73,7 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 	private boolean removed;
 	
 	public TopicMapImpl(String id, ITopicMapSystem sys, Set<Locator> iids, Locator locator, DB db) {
-		super(id, new TopicMapObjectManager(1000000, db), iids);
+		super(id, new TopicMapObjectManager(sys, db), iids);
 		this.sys = sys;
 		tmem = new TopicMapEventManager(this);
 		this.locator = locator;
@@ -79,7 +84,7 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 	}
 	
 	public TopicMapImpl(ITopicMapSystem sys, String id, String rev, Set<Locator> iids, Locator locator, DB db) {
-		super(id, new TopicMapObjectManager(1000000, db), iids, rev);
+		super(id, new TopicMapObjectManager(sys, db), iids, rev);
 		this.sys = sys;
 		tmem = new TopicMapEventManager(this);
 		this.locator = locator;
@@ -107,6 +112,41 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 		return tmem;
 	}
 	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.ITopicMap#flush()
+	 */
+	@Override
+	public void flush() {
+		tmom.flush();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.ITopicMap#executeBatch(de.topicmapslab.couchtm.internal.api.IUnitOfWork, boolean)
+	 */
+	@Override
+	public void executeBatch(IUnitOfWork work, boolean allOrNothing) throws TMAPIException {
+		Map<String, String> failed = null;
+		tmom.beginBatch();
+		try {
+			work.execute(this);
+			failed = tmom.commitBatch(allOrNothing);
+		} finally {
+			if(failed == null || !failed.isEmpty()) tmom.discardBatch();
+		}
+		if(!failed.isEmpty()) throw new TMAPIException("The batch could not be written to the database: "+failed);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.ITopicMap#executeBatch(de.topicmapslab.couchtm.internal.api.IUnitOfWork)
+	 */
+	@Override
+	public void executeBatch(IUnitOfWork work) throws TMAPIException {
+		executeBatch(work, false);
+	}
+	
 	/*
 	 * (non-Javadoc)
 	 * @see de.topicmapslab.couchtm.internal.api.ITopicMap#getSystem()
@@ -182,7 +222,7 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 	 */
 	@Override
 	public Locator createLocator(String reference) {
-		Locator loc = new LocatorImpl(reference);
+		Locator loc = LocatorImpl.valueOf(reference);
 		Check.locatorAbsolute(loc);
 		return loc;
 	}
@@ -225,6 +265,13 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 	@Override
 	public Topic createTopicBySubjectIdentifier(Locator sid) {
 		Check.itemIdentifierNotNull(this, sid);
+		if(tmom.hasContentIds()) {
+			ITopic created = new TopicImpl(IdGenerator.contentId(IConstant.TOPIC, sid.getReference()), this, null, sid, null);
+			if(tmom.createConstruct(created)) return created;
+			//taken by a topic created concurrently or by a topic whose subject identifier was removed since
+			ITopic existing = tmom.getTopic(created.getId());
+			if(MergeCheck.matchesTopic(existing, sid)) return existing;
+		}
 		ITopic topic = MergeCheck.createCheckTopicSID(sid, tmom);
 		if(topic == null) {
 			topic = new TopicImpl(sys.getNewId(), this, null, sid, null);
@@ -337,7 +384,7 @@ public class TopicMapImpl extends ConstructImpl implements ITopicMap, IReifiable
 	 */
 	@Override
 	public void mergeIn(TopicMap topicMap) {
-		if(this.id.equals(topicMap.getId())) return;
+		if(this.id.equals(ConstructId.of(topicMap))) return;
 		try {
 			MergeUtils.merge(this, (ITopicMap) topicMap);
 		} catch(Exception e) {
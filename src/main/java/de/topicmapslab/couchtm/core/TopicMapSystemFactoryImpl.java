@@ -57,6 +57,36 @@ public class TopicMapSystemFactoryImpl extends TopicMapSystemFactory {
         _properties.put("DB", "localhost");
         _properties.put("PORT", "5984");
         _properties.put("printflag", "false");
+        //http connection pool
+        _properties.put("MAX_CONNECTIONS", "20");
+        _properties.put("MAX_CONNECTIONS_PER_ROUTE", "20");
+        _properties.put("IDLE_CONNECTION_TIMEOUT", "30000");
+        //construct cache size in bytes per topic map, CACHE_SIZE_<DOCUMENTTYPE> overrides single budgets
+        _properties.put("CACHE_SIZE", "67108864");
+        //write-behind mode, saves are collected and written with _bulk_docs before reads, on close and
+        //by a save once WRITE_BEHIND_SIZE documents are pending or the oldest is WRITE_BEHIND_DELAY ms old
+        _properties.put("WRITE_BEHIND", "false");
+        _properties.put("WRITE_BEHIND_SIZE", "100");
+        _properties.put("WRITE_BEHIND_DELAY", "1000");
+        //layout of new topic maps, names, variants and occurrences are embedded in the topic document
+        _properties.put("AGGREGATE_TOPICS", "false");
+        //layout of new topic maps, roles are embedded in the association document
+        _properties.put("EMBEDDED_ROLES", "false");
+        //content derived IDs for topics by subject identifier, names and occurrences, created with one PUT
+        _properties.put("DETERMINISTIC_IDS", "false");
+        //ID strategy, random, time (time ordered, appended to the B-tree) or an IIdGenerator class name
+        _properties.put("ID_GENERATOR", "random");
+        //refreshes cached constructs changed by other nodes in place, follows the _changes feed of each topic map
+        _properties.put("CHANGES_FEED", "false");
+        //node name for the last read sequence of the _changes feed, defaults to the host name
+        _properties.put("CHANGES_NODE", "");
+        //Bloom filter over the identity locators, a definite miss skips the view query, needs CHANGES_FEED
+        _properties.put("LOCATOR_FILTER", "false");
+        _properties.put("LOCATOR_FILTER_SIZE", "100000");
+        //directory of the memory-mapped disk cache of documents which survives restarts, empty for none
+        _properties.put("DISK_CACHE_DIR", "");
+        //size of the disk cache in bytes per topic map
+        _properties.put("DISK_CACHE_SIZE", "268435456");
     }
 	
 	/*
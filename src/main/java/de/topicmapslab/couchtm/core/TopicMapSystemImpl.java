@@ -28,7 +28,9 @@ import org.tmapi.core.TMAPIException;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
 import de.topicmapslab.couchtm.internal.utils.SysDB;
 import de.topicmapslab.couchtm.internal.utils.DB;
+import de.topicmapslab.couchtm.internal.utils.HttpTransport;
 import de.topicmapslab.couchtm.internal.utils.IdGenerator;
+import de.topicmapslab.couchtm.internal.api.IIdGenerator;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
 import de.topicmapslab.couchtm.internal.api.ITopicMap;
@@ -44,20 +46,39 @@ public class TopicMapSystemImpl implements ITopicMapSystem {
     protected final Map<String, Object> _properties;
     protected Map<Locator, ITopicMap> locToTopicMap;
     protected final SysDB db;
+    protected final HttpTransport transport;
+    protected final IIdGenerator idGenerator;
 
     protected TopicMapSystemImpl(Map<String, Boolean> features, Map<String, Object> properties) throws TMAPIException {
-        _features = features;
-        _properties = properties;
-        db = new SysDB((String) _properties.get("DB"), Integer.valueOf((String) _properties.get("PORT")));
-        locToTopicMap = CollectionFactory.createMap();
+        this(features, properties, (String) properties.get("DB"), Integer.valueOf((String) properties.get("PORT")));
     }
     
     protected TopicMapSystemImpl(Map<String, Boolean> features, Map<String, Object> properties, String db, int port) throws TMAPIException {
     	_features = features;
     	_properties = properties;
-    	this.db = new SysDB(db, port);
+    	idGenerator = IdGenerator.createGenerator((String) _properties.get("ID_GENERATOR"));
+    	transport = new HttpTransport(getIntProperty("MAX_CONNECTIONS", HttpTransport.DEFAULT_MAX_CONNECTIONS), 
+    			getIntProperty("MAX_CONNECTIONS_PER_ROUTE", HttpTransport.DEFAULT_MAX_CONNECTIONS_PER_ROUTE), 
+    			getIntProperty("IDLE_CONNECTION_TIMEOUT", (int) HttpTransport.DEFAULT_IDLE_TIMEOUT));
+    	try {
+    		this.db = new SysDB(db, port, transport);
+    	} catch(TMAPIException e) {
+    		transport.shutdown();
+    		throw e;
+    	}
         locToTopicMap = CollectionFactory.createMap();
     }
+    
+    //reads an integer property, falls back to the default value if not set
+    private int getIntProperty(String name, int defaultValue) {
+    	Object value = _properties.get(name);
+    	if(value == null) return defaultValue;
+    	try {
+    		return Integer.valueOf(value.toString());
+    	} catch(NumberFormatException e) {
+    		return defaultValue;
+    	}
+    }
    
     /*
      * (non-Javadoc)
@@ -71,6 +92,7 @@ public class TopicMapSystemImpl implements ITopicMapSystem {
         	locToTopicMap.get(loc).close();
         }
         db.releaseConnection();
+        transport.shutdown();
 	}
 
 	/*
@@ -79,7 +101,7 @@ public class TopicMapSystemImpl implements ITopicMapSystem {
 	 */
 	@Override
 	public Locator createLocator(String reference) {
-		return (Locator) (new LocatorImpl(reference));
+		return LocatorImpl.valueOf(reference);
 	}
 
 	/*
@@ -176,7 +198,7 @@ public class TopicMapSystemImpl implements ITopicMapSystem {
 	 * @see de.topicmapslab.couchtm.internal.api.ITopicMapSystem#getNewId()
 	 */
 	public String getNewId() {
-		return IdGenerator.nextId();
+		return idGenerator.nextId();
 	}
 
 	/*
@@ -197,5 +219,13 @@ public class TopicMapSystemImpl implements ITopicMapSystem {
 	public void removeMap(ITopicMap tm) {
 		locToTopicMap.remove(tm.getLocator());
 	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.ITopicMapSystem#getTransport()
+	 */
+	public HttpTransport getTransport() {
+		return transport;
+	}
 
 }
@@ -40,6 +40,7 @@ import de.topicmapslab.couchtm.internal.api.IConstruct;
 import de.topicmapslab.couchtm.internal.utils.Check;
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
 import de.topicmapslab.couchtm.internal.utils.MergeUtils;
 
 /**
@@ -296,7 +297,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_STRING);
+		datatype = LocatorImpl.XSD_STRING;
 		this.value = value;
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -317,7 +318,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_ANY_URI);
+		datatype = LocatorImpl.XSD_ANY_URI;
 		this.value = value.getReference();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -338,7 +339,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_DECIMAL);
+		datatype = LocatorImpl.XSD_DECIMAL;
 		this.value = value.toPlainString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -359,7 +360,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			return;
 		}
 		Check.valueNotNull(this, value);
-		datatype = new LocatorImpl(IConstant.XSD_INTEGER);
+		datatype = LocatorImpl.XSD_INTEGER;
 		this.value = value.toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -379,7 +380,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_LONG);
+		datatype = LocatorImpl.XSD_LONG;
 		this.value = (new Long(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -399,7 +400,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_FLOAT);
+		datatype = LocatorImpl.XSD_FLOAT;
 		this.value = (new Float(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -419,7 +420,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 			mergedIn.setValue(value);
 			return;
 		}
-		datatype = new LocatorImpl(IConstant.XSD_INT);
+		datatype = LocatorImpl.XSD_INT;
 		this.value = (new Integer(value)).toString();
 		try {
 			_fireEvent(Event.VALUE_CHANGED, null, value);
@@ -535,7 +536,7 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 		}
 		ITopic rmTheme = null;
 		for(ITopic theme2 : scope) {
-			if(theme2.getId().equals(theme.getId())) {
+			if(ConstructId.same(theme2, theme)) {
 				rmTheme = theme2;
 				break;
 			}
@@ -556,7 +557,17 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 	@Override
 	protected void load() {
 		if(loaded) return;
-		IVariant variant = tmom.getVariant(id);
+		load(tmom.getVariant(id.toString()));
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IConstruct#load(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void load(IConstruct construct) {
+		if(loaded || construct == this) return;
+		IVariant variant = (IVariant) construct;
 		if(parent == null) parent = (IName) variant.getParent();
 		if(value == null) value = variant.getValue();
 		if(reifier == null) reifier = (ITopic) variant.getReifier();
@@ -566,6 +577,21 @@ public class VariantImpl extends ConstructImpl implements IVariant, IScoped, IRe
 		super.load(variant);
 		tmom.addConstruct(this);
 	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.core.ConstructImpl#refresh(de.topicmapslab.couchtm.internal.api.IConstruct)
+	 */
+	@Override
+	public void refresh(IConstruct construct) {
+		IVariant variant = (IVariant) construct;
+		value = variant.getValue();
+		reifier = (ITopic) variant.getReifier();
+		datatype = variant.getDatatype();
+		scope = Converter.setTopicToITopic(variant.getScope());
+		loaded = true;
+		super.refresh(variant);
+	}
 
 	/*
 	 * (non-Javadoc)
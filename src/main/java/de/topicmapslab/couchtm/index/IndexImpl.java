@@ -16,6 +16,10 @@
 
 package de.topicmapslab.couchtm.index;
 
+import java.util.Collection;
+import java.util.Set;
+
+import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
 import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
 
 import org.tmapi.index.Index;
@@ -74,5 +78,34 @@ public class IndexImpl implements Index{
 	public void reindex() {
 		//nothing to do	
 	}
+	
+	/**
+	 * Joins the results of a lookup with several keys. If <tt>matchall</tt> is 
+	 * true only the constructs contained in every result are returned, otherwise
+	 * the union of the results.
+	 * 
+	 * @param results results
+	 * @param matchall matchall
+	 * @return joined result
+	 */
+	protected static <T> Set<T> join(Collection<Set<T>> results, boolean matchall) {
+		Set<T> joined = CollectionFactory.createSet();
+		if(!matchall) {
+			for(Set<T> set : results) joined.addAll(set);
+			return joined;
+		}
+		//hash join starting with the smallest result
+		Set<T> smallest = null;
+		for(Set<T> set : results) {
+			if(smallest == null || set.size() < smallest.size()) smallest = set;
+		}
+		if(smallest == null) return joined;
+		joined.addAll(smallest);
+		for(Set<T> set : results) {
+			if(joined.isEmpty()) break;
+			if(set != smallest) joined.retainAll(set);
+		}
+		return joined;
+	}
 
 }
@@ -27,7 +27,6 @@ import java.lang.IllegalArgumentException;
 
 import de.topicmapslab.couchtm.internal.utils.Converter;
 import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
-import de.topicmapslab.couchtm.internal.api.IConstant;
 import de.topicmapslab.couchtm.core.LocatorImpl;
 
 /**
@@ -56,7 +55,7 @@ public class LiteralIndexImpl extends IndexImpl implements LiteralIndex {
 	@Override
 	public Collection<Occurrence> getOccurrences(String value) {
 		if(value == null) throw new IllegalArgumentException("getOccurrences((String)null) is illegal");
-		return Converter.setIOccurrenceToOccurrence(tmom.getOccurrencesByValue(value, new LocatorImpl(IConstant.XSD_STRING)));
+		return Converter.setIOccurrenceToOccurrence(tmom.getOccurrencesByValue(value, LocatorImpl.XSD_STRING));
 	}
 
 	/* (non-Javadoc)
@@ -65,7 +64,7 @@ public class LiteralIndexImpl extends IndexImpl implements LiteralIndex {
 	@Override
 	public Collection<Occurrence> getOccurrences(Locator value) {
 		if(value == null) throw new IllegalArgumentException("getOccurrences((Locator)null) is illegal");
-		return Converter.setIOccurrenceToOccurrence(tmom.getOccurrencesByValue(value, new LocatorImpl(IConstant.XSD_ANY_URI)));
+		return Converter.setIOccurrenceToOccurrence(tmom.getOccurrencesByValue(value, LocatorImpl.XSD_ANY_URI));
 	}
 
 	/* (non-Javadoc)
@@ -83,7 +82,7 @@ public class LiteralIndexImpl extends IndexImpl implements LiteralIndex {
 	@Override
 	public Collection<Variant> getVariants(String value) {
 		if(value == null) throw new IllegalArgumentException("getVariants((String)null) is illegal");
-		return Converter.setIVariantToVariant(tmom.getVariantsByValue(value, new LocatorImpl(IConstant.XSD_STRING)));
+		return Converter.setIVariantToVariant(tmom.getVariantsByValue(value, LocatorImpl.XSD_STRING));
 	}
 
 	/* (non-Javadoc)
@@ -92,7 +91,7 @@ public class LiteralIndexImpl extends IndexImpl implements LiteralIndex {
 	@Override
 	public Collection<Variant> getVariants(Locator value) {
 		if(value == null) throw new IllegalArgumentException("getVariants((Locator)null) is illegal");
-		return Converter.setIVariantToVariant(tmom.getVariantsByValue(value, new LocatorImpl(IConstant.XSD_ANY_URI)));
+		return Converter.setIVariantToVariant(tmom.getVariantsByValue(value, LocatorImpl.XSD_ANY_URI));
 	}
 
 	/* (non-Javadoc)
@@ -73,24 +73,9 @@ public class ScopedIndexImpl extends IndexImpl implements ScopedIndex {
 	@Override
 	public Collection<Association> getAssociations(Topic[] theme, boolean matchall) {
 		if(theme == null) throw new IllegalArgumentException("getAssociations(null, boolean) is illegal");
-		Set<IAssociation> returnSet = CollectionFactory.createSet();
-		Set<Set<IAssociation>> results = CollectionFactory.createSet();
-		for(Topic topic : theme) {
-			results.add(tmom.getAssociationsByTheme((ITopic) topic));
-		}
-		Set<IAssociation> removeAll = CollectionFactory.createSet();
-		for(Set<IAssociation> set : results) returnSet.addAll(set);
-		if(matchall) {
-			for(IAssociation assoc : returnSet) {
-				boolean flag = true;
-				for(Set<IAssociation> set : results) {
-					if(!set.contains(assoc)) flag = false;
-				}
-				if(!flag) removeAll.add(assoc);
-			}
-			returnSet.removeAll(removeAll);
-		}
-		return Converter.setIAssociationToAssociation(returnSet);
+		Set<ITopic> themes = CollectionFactory.createSet(theme.length);
+		for(Topic topic : theme) themes.add((ITopic) topic);
+		return Converter.setIAssociationToAssociation(join(tmom.getAssociationsByThemes(themes), matchall));
 	}
 
 	/* (non-Javadoc)
@@ -115,24 +100,9 @@ public class ScopedIndexImpl extends IndexImpl implements ScopedIndex {
 	@Override
 	public Collection<Name> getNames(Topic[] theme, boolean matchall) {
 		if(theme == null) throw new IllegalArgumentException("getNames(null, boolean) is illegal");
-		Set<IName> returnSet = CollectionFactory.createSet();
-		Set<Set<IName>> results = CollectionFactory.createSet();
-		for(Topic topic : theme) {
-			results.add(tmom.getNamesByTheme((ITopic) topic));
-		}
-		Set<IName> removeAll = CollectionFactory.createSet();
-		for(Set<IName> set : results) returnSet.addAll(set);
-		if(matchall) {
-			for(IName name : returnSet) {
-				boolean flag = true;
-				for(Set<IName> set : results) {
-					if(!set.contains(name)) flag = false;
-				}
-				if(!flag) removeAll.add(name);
-			}
-			returnSet.removeAll(removeAll);
-		}
-		return Converter.setINameToName(returnSet);
+		Set<ITopic> themes = CollectionFactory.createSet(theme.length);
+		for(Topic topic : theme) themes.add((ITopic) topic);
+		return Converter.setINameToName(join(tmom.getNamesByThemes(themes), matchall));
 	}
 
 	/* (non-Javadoc)
@@ -157,24 +127,9 @@ public class ScopedIndexImpl extends IndexImpl implements ScopedIndex {
 	@Override
 	public Collection<Occurrence> getOccurrences(Topic[] theme, boolean matchall) {
 		if(theme == null) throw new IllegalArgumentException("getOccurrences(null, boolean) is illegal");
-		Set<IOccurrence> returnSet = CollectionFactory.createSet();
-		Set<Set<IOccurrence>> results = CollectionFactory.createSet();
-		for(Topic topic : theme) {
-			results.add(tmom.getOccurrencesByTheme((ITopic) topic));
-		}
-		Set<IOccurrence> removeAll = CollectionFactory.createSet();
-		for(Set<IOccurrence> set : results) returnSet.addAll(set);
-		if(matchall) {
-			for(IOccurrence occ : returnSet) {
-				boolean flag = true;
-				for(Set<IOccurrence> set : results) {
-					if(!set.contains(occ)) flag = false;
-				}
-				if(!flag) removeAll.add(occ);
-			}
-			returnSet.removeAll(removeAll);
-		}
-		return Converter.setIOccurrenceToOccurrence(returnSet);
+		Set<ITopic> themes = CollectionFactory.createSet(theme.length);
+		for(Topic topic : theme) themes.add((ITopic) topic);
+		return Converter.setIOccurrenceToOccurrence(join(tmom.getOccurrencesByThemes(themes), matchall));
 	}
 
 	/* (non-Javadoc)
@@ -127,24 +127,9 @@ public class TypeInstanceIndexImpl extends IndexImpl implements TypeInstanceInde
      */
 	@Override
 	public Collection<Topic> getTopics(Topic[] types, boolean matchall) {
-		Set<ITopic> returnSet = CollectionFactory.createSet();
-		Set<Set<ITopic>> results = CollectionFactory.createSet();
-		for(Topic type : types) {
-			results.add(tmom.getTopicsByType((ITopic) type));
-		}
-		Set<ITopic> removeAll = CollectionFactory.createSet();
-		for(Set<ITopic> set : results) returnSet.addAll(set);
-		if(matchall) {
-			for(ITopic type : returnSet) {
-				boolean flag = true;
-				for(Set<ITopic> set : results) {
-					if(!set.contains(type)) flag = false;
-				}
-				if(!flag) removeAll.add(type);
-			}
-			returnSet.removeAll(removeAll);
-		}
-		return Converter.setITopicToTopic(returnSet);
+		Set<ITopic> typeSet = CollectionFactory.createSet(types.length);
+		for(Topic type : types) typeSet.add((ITopic) type);
+		return Converter.setITopicToTopic(join(tmom.getTopicsByTypes(typeSet), matchall));
 	}
 
 }
@@ -23,6 +23,7 @@ import org.tmapi.core.TMAPIException;
 import org.tmapi.core.IdentityConstraintException;
 import org.json.*;
 
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
 import de.topicmapslab.couchtm.internal.utils.TopicMapEventManager;
 import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
 
@@ -48,6 +49,13 @@ public interface IConstruct extends Construct {
 	 */
 	public String getDocumentType();
 	
+	/**
+	 * Returns the compact form of the ID used for comparisons and cache keys.
+	 * 
+	 * @return id
+	 */
+	public ConstructId getConstructId();
+	
 	/**
 	 * Sets the revision of the construct.
 	 * 
@@ -199,6 +207,23 @@ public interface IConstruct extends Construct {
      */
     public boolean getLoaded();
     
+    /**
+     * Loads the unloaded construct from the given loaded construct with the same id.
+     * Nothing is changed if the construct is already loaded.
+     * 
+     * @param construct loaded construct
+     */
+    public void load(IConstruct construct);
+    
+    /**
+     * Replaces the state of the construct with the state of the given construct with 
+     * the same id, which was built from a newer revision of its document. The parent 
+     * is kept.
+     * 
+     * @param construct construct built from the newer revision
+     */
+    public void refresh(IConstruct construct);
+    
     /**
      * Merges the construct with the given construct.
      * 
@@ -0,0 +1,36 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.api;
+
+/**
+ * Strategy to generate construct IDs.
+ * <p>
+ * Implementations must be thread-safe and provide a default constructor.
+ * </p>
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public interface IIdGenerator {
+
+	/**
+	 * Generates a new ID.
+	 * 
+	 * @return ID
+	 */
+	public String nextId();
+	
+}
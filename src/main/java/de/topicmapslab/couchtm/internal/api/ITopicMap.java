@@ -19,6 +19,8 @@ package de.topicmapslab.couchtm.internal.api;
 import org.tmapi.core.TopicMap;
 import org.tmapi.core.Locator;
 import org.tmapi.core.Topic;
+import org.tmapi.core.TMAPIException;
+import org.tmapi.core.TMAPIRuntimeException;
 
 import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
 import de.topicmapslab.couchtm.internal.utils.TopicMapEventManager;
@@ -62,6 +64,35 @@ public interface ITopicMap extends TopicMap, IConstruct, IReifiable{
 	 */
 	public Locator getLocator();
 	
+	/**
+	 * Writes all pending saves of the write-behind mode to the database.
+	 * 
+	 * @throws TMAPIRuntimeException if documents written since the last flush could 
+	 * not be saved, the message contains their ids and errors
+	 */
+	public void flush();
+	
+	/**
+	 * Executes the work as a batch. Every construct changed by the work is saved 
+	 * at most once and all changes are written with a single request after the
+	 * work is done. If the work fails or the changes could not be written, the 
+	 * constructs changed by the work are dropped from the cache. The batch belongs 
+	 * to the calling thread, changes of other threads are written as usual.
+	 * 
+	 * @param work work
+	 * @param allOrNothing <tt>true</tt> if either all or none of the changes should be written
+	 * @throws TMAPIException if the work failed or the changes could not be written
+	 */
+	public void executeBatch(IUnitOfWork work, boolean allOrNothing) throws TMAPIException;
+	
+	/**
+	 * Executes the work as a batch.
+	 * 
+	 * @param work work
+	 * @throws TMAPIException if the work failed or the changes could not be written
+	 */
+	public void executeBatch(IUnitOfWork work) throws TMAPIException;
+	
 	/**
 	 * Sets the variant's reifier.
 	 * 
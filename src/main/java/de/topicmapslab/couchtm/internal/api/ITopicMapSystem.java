@@ -19,6 +19,8 @@ package de.topicmapslab.couchtm.internal.api;
 import org.tmapi.core.TopicMapSystem;
 import org.tmapi.core.Locator;
 
+import de.topicmapslab.couchtm.internal.utils.HttpTransport;
+
 /**
  * {@link TopicMapSystem} interface for CouchTM.
  * 
@@ -46,4 +48,11 @@ public interface ITopicMapSystem extends TopicMapSystem{
 	 * @param tm
 	 */
 	public void removeMap(ITopicMap tm);
+	
+	/**
+	 * Returns the HTTP transport shared by all databases of the system.
+	 * 
+	 * @return transport
+	 */
+	public HttpTransport getTransport();
 }
@@ -0,0 +1,188 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import org.apache.http.client.HttpClient;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import de.topicmapslab.couchtm.internal.api.IRowMapper;
+
+/**
+ * Follows the <tt>_changes</tt> feed of a topic map database in a background thread 
+ * and refreshes the cached constructs changed by other writers. Their locators
+ * are added to the identity filter of the object manager. The last read sequence 
+ * is kept in a local document per node, so a restarted node resumes with the 
+ * changes it has not seen yet. With a disk cache the feed resumes from the 
+ * sequence stored with the cached documents instead, whatever node used the 
+ * directory before. The feed is read with a connection of its own, so it does 
+ * not hold one of the pooled connections.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class ChangesFeed implements Runnable {
+	
+	//time in milliseconds without changes after which the server ends a feed request
+	private static final int FEED_TIMEOUT = 30000;
+	//longest wait in milliseconds before a failed feed request is repeated
+	private static final long MAX_RETRY_DELAY = 30000;
+	
+	private final TopicMapObjectManager tmom;
+	private final DB db;
+	//name of the local document holding the last read sequence
+	private final String checkpoint;
+	private final Thread thread;
+	//client with a connection of its own, outside the pool
+	private final HttpClient client;
+	private volatile boolean closed = false;
+	//last read sequence and last saved sequence
+	private volatile Object seq;
+	private Object savedSeq;
+	private String checkpointRev;
+	
+	/**
+	 * Creates a feed and reads the checkpoint, the feed is followed after <tt>start()</tt>.
+	 * Without checkpoint the feed starts with the current update sequence of the database.
+	 * 
+	 * @param tmom object manager whose cache is kept up to date
+	 * @param db database
+	 * @param node name of this node, nodes with the same name share the checkpoint
+	 */
+	public ChangesFeed(TopicMapObjectManager tmom, DB db, String node) {
+		this.tmom = tmom;
+		this.db = db;
+		checkpoint = "couchtm-changes-"+node.replaceAll("[^A-Za-z0-9_.-]", "_");
+		thread = new Thread(this, "couchtm-changes-"+node);
+		thread.setDaemon(true);
+		//the server ends a feed request without changes after FEED_TIMEOUT, a connection silent for longer is broken
+		client = db.createDedicatedClient(2 * FEED_TIMEOUT);
+		JSONObject doc = db.getLocalDocument(checkpoint);
+		if(doc != null) {
+			checkpointRev = doc.optString("_rev");
+			seq = doc.opt("seq");
+			savedSeq = seq;
+		}
+		//the documents on disk have to see every change after their own sequence
+		Object diskSeq = db.getDiskSequence();
+		if(diskSeq != null) seq = diskSeq;
+		if(seq == null) seq = db.getUpdateSequence();
+	}
+	
+	/**
+	 * Starts following the feed.
+	 */
+	public void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stops following the feed and saves the last read sequence.
+	 */
+	public void close() {
+		closed = true;
+		thread.interrupt();
+		//aborts a running feed request
+		client.getConnectionManager().shutdown();
+		save();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		long delay = 1000;
+		IRowMapper<Object> invalidator = new IRowMapper<Object>() {
+			public Object mapRow(JSONObject change) {
+				String id = change.optString("id");
+				//design and local documents are no constructs
+				if(id.length() == 0 || id.startsWith("_")) return null;
+				String rev = null;
+				JSONArray changes = change.optJSONArray("changes");
+				if(changes != null && changes.length() > 0) rev = changes.optJSONObject(0).optString("rev", null);
+				tmom.invalidate(id, change.optBoolean("deleted") ? null : rev);
+				JSONObject doc = change.optJSONObject("doc");
+				if(doc != null) addIdentities(tmom.getIdentityFilter(), doc);
+				seq = change.opt("seq");
+				return null;
+			}
+		};
+		while(!closed) {
+			try {
+				seq = db.followChanges(client, seq, FEED_TIMEOUT, tmom.getIdentityFilter() != null, invalidator);
+				if(closed) return;
+				delay = 1000;
+				save();
+			} catch(Exception e) {
+				if(closed) return;
+				e.printStackTrace();
+				try {
+					Thread.sleep(delay);
+				} catch(InterruptedException ie) {
+					return;
+				}
+				delay = Math.min(delay * 2, MAX_RETRY_DELAY);
+			}
+		}
+	}
+	
+	//adds the locators of the document and its embedded documents to the filter
+	private static void addIdentities(LocatorFilter filter, JSONObject doc) {
+		if(filter == null) return;
+		addIdentities(filter, LocatorFilter.ITEM_IDENTIFIER, doc.optJSONArray("itemidentifiers"));
+		addIdentities(filter, LocatorFilter.SUBJECT_IDENTIFIER, doc.optJSONArray("subjectidentifiers"));
+		addIdentities(filter, LocatorFilter.SUBJECT_LOCATOR, doc.optJSONArray("subjectlocators"));
+		JSONArray embedded = doc.optJSONArray("embedded");
+		if(embedded == null) return;
+		for(int i = 0; i < embedded.length(); i++) {
+			JSONObject child = embedded.optJSONObject(i);
+			if(child != null) addIdentities(filter, child);
+		}
+	}
+	
+	private static void addIdentities(LocatorFilter filter, char kind, JSONArray locators) {
+		if(locators == null) return;
+		for(int i = 0; i < locators.length(); i++) filter.add(kind, locators.optString(i));
+	}
+	
+	//saves the last read sequence if it changed since the last save
+	private synchronized void save() {
+		Object current = seq;
+		if(current == null || current.equals(savedSeq)) return;
+		db.setDiskSequence(current);
+		try {
+			JSONObject doc = new JSONObject();
+			doc.put("_id", "_local/"+checkpoint);
+			if(checkpointRev != null && checkpointRev.length() > 0) doc.put("_rev", checkpointRev);
+			doc.put("seq", current);
+			String rev = db.saveLocalDocument(checkpoint, doc);
+			if(rev.length() == 0) {
+				//written by another instance, read the revision again
+				JSONObject saved = db.getLocalDocument(checkpoint);
+				checkpointRev = saved == null ? null : saved.optString("_rev");
+				return;
+			}
+			checkpointRev = rev;
+			savedSeq = current;
+		} catch(JSONException e) {
+			e.printStackTrace();
+		}
+	}
+	
+}
@@ -251,11 +251,11 @@ public final class Check {
      * @param second
      */
     public static void sameTopicMap(TopicMap first, TopicMap second) {
-    	if(first.getId().equals(second.getId())) _reportModelConstraintViolation(first, "Can not merge the TopicMap with itself");
+    	if(ConstructId.same(first, second)) _reportModelConstraintViolation(first, "Can not merge the TopicMap with itself");
     }
 
     private static void _sameTopicMap(Construct sender, TopicMap tm, Construct other) {
-    	if(!tm.getId().equals(other.getTopicMap().getId())){
+    	if(!ConstructId.same(tm, other.getTopicMap())){
     		_reportModelConstraintViolation(sender, "All constructs must belong to the same topic map");
         }
     }
@@ -316,7 +316,7 @@ public final class Check {
      */
     
     public static void reifierFree(IConstruct sender, Topic _reifier) {
-    	if(_reifier != null && _reifier.getReified() != null && !(_reifier.getReified().getId().equals(sender.getId()))) {
+    	if(_reifier != null && _reifier.getReified() != null && !(ConstructId.same(_reifier.getReified(), sender))) {
     		throw new ModelConstraintException(sender, "The reifier reifies already another construct");
     	}
     }
@@ -0,0 +1,161 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import org.tmapi.core.Construct;
+
+import de.topicmapslab.couchtm.internal.api.IConstruct;
+
+/**
+ * Compact construct ID. IDs in the UUID format, optionally with a prefix like the 
+ * <tt>ctm-</tt> of topic map IDs, are held as two longs, all other IDs as string. 
+ * The string is rendered on demand for the JSON documents.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public final class ConstructId {
+	
+	private static final int UUID_LENGTH = 36;
+	private static final char[] DIGITS = "0123456789abcdef".toCharArray();
+	
+	//prefix of a UUID or the whole ID if it is no UUID
+	private final String prefix;
+	private final long msb;
+	private final long lsb;
+	private final boolean uuid;
+	private final int hash;
+	
+	private ConstructId(String prefix, long msb, long lsb, boolean uuid) {
+		this.prefix = prefix;
+		this.msb = msb;
+		this.lsb = lsb;
+		this.uuid = uuid;
+		hash = uuid ? 31 * prefix.hashCode() + (int) (msb ^ (msb >>> 32) ^ lsb ^ (lsb >>> 32)) : prefix.hashCode();
+	}
+	
+	/**
+	 * Returns the compact form of the ID.
+	 * 
+	 * @param id ID
+	 * @return compact ID or <tt>null</tt> if the ID is <tt>null</tt>
+	 */
+	public static ConstructId valueOf(String id) {
+		if(id == null) return null;
+		int start = id.length() - UUID_LENGTH;
+		if(start >= 0 && isUUID(id, start)) {
+			long msb = parse(id, start, 0, 18);
+			long lsb = parse(id, start, 19, UUID_LENGTH);
+			return new ConstructId(start == 0 ? "" : id.substring(0, start).intern(), msb, lsb, true);
+		}
+		return new ConstructId(id, 0, 0, false);
+	}
+	
+	/**
+	 * Returns the compact ID of the construct.
+	 * 
+	 * @param construct construct
+	 * @return compact ID
+	 */
+	public static ConstructId of(Construct construct) {
+		return ((IConstruct) construct).getConstructId();
+	}
+	
+	/**
+	 * Returns <tt>true</tt> if both constructs have the same ID.
+	 * 
+	 * @param first first construct
+	 * @param second second construct
+	 * @return <tt>true</tt> if the IDs are equal
+	 */
+	public static boolean same(Construct first, Construct second) {
+		return of(first).equals(of(second));
+	}
+	
+	//parses the hex digits in the range, skipping dashes
+	private static long parse(String id, int start, int from, int to) {
+		long value = 0;
+		for(int i = from; i < to; i++) {
+			char c = id.charAt(start + i);
+			if(c != '-') value = (value << 4) | Character.digit(c, 16);
+		}
+		return value;
+	}
+	
+	//checks the dashes and digits of a lower case UUID starting at the given index
+	private static boolean isUUID(String id, int start) {
+		for(int i = 0; i < UUID_LENGTH; i++) {
+			char c = id.charAt(start + i);
+			if(i == 8 || i == 13 || i == 18 || i == 23) {
+				if(c != '-') return false;
+			} else if(!(c >= '0' && c <= '9' || c >= 'a' && c <= 'f')) return false;
+		}
+		return true;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#equals(java.lang.Object)
+	 */
+	@Override
+	public boolean equals(Object obj) {
+		if(this == obj) return true;
+		if(!(obj instanceof ConstructId)) return false;
+		ConstructId other = (ConstructId) obj;
+		return hash == other.hash && msb == other.msb && lsb == other.lsb && uuid == other.uuid && prefix.equals(other.prefix);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#hashCode()
+	 */
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		if(!uuid) return prefix;
+		char[] chars = new char[prefix.length() + UUID_LENGTH];
+		prefix.getChars(0, prefix.length(), chars, 0);
+		int pos = prefix.length();
+		pos = digits(chars, pos, msb >>> 32, 8);
+		chars[pos++] = '-';
+		pos = digits(chars, pos, msb >>> 16, 4);
+		chars[pos++] = '-';
+		pos = digits(chars, pos, msb, 4);
+		chars[pos++] = '-';
+		pos = digits(chars, pos, lsb >>> 48, 4);
+		chars[pos++] = '-';
+		digits(chars, pos, lsb, 12);
+		return new String(chars);
+	}
+	
+	//writes the lowest count hex digits of the value
+	private static int digits(char[] chars, int pos, long value, int count) {
+		for(int i = count - 1; i >= 0; i--) {
+			chars[pos + i] = DIGITS[(int) (value & 0xF)];
+			value >>>= 4;
+		}
+		return pos + count;
+	}
+	
+}
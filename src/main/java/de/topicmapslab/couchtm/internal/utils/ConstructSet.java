@@ -0,0 +1,168 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.lang.ref.WeakReference;
+import java.util.AbstractSet;
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.topicmapslab.couchtm.internal.api.IConstruct;
+import de.topicmapslab.couchtm.internal.api.ITopicMap;
+
+/**
+ * Set of child constructs held by their IDs. The elements are only weakly
+ * referenced and resolved through the {@link TopicMapObjectManager} of the owner
+ * once they were collected, so a loaded parent does not keep its children in 
+ * memory and evicted constructs can be reclaimed. The set may be read and 
+ * changed by several threads, its iterators are weakly consistent.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class ConstructSet<E extends IConstruct> extends AbstractSet<E> {
+	
+	private final IConstruct owner;
+	private final String documentType;
+	private final ConcurrentMap<ConstructId, WeakReference<E>> elements;
+	
+	/**
+	 * Creates an empty set.
+	 * 
+	 * @param owner construct holding the set
+	 * @param documentType document type of the elements
+	 */
+	public ConstructSet(IConstruct owner, String documentType) {
+		this.owner = owner;
+		this.documentType = documentType;
+		elements = new ConcurrentHashMap<ConstructId, WeakReference<E>>();
+	}
+	
+	/**
+	 * Creates a set containing the given elements.
+	 * 
+	 * @param owner construct holding the set
+	 * @param documentType document type of the elements
+	 * @param constructs elements
+	 */
+	public ConstructSet(IConstruct owner, String documentType, Collection<? extends E> constructs) {
+		this(owner, documentType);
+		if(constructs != null) addAll(constructs);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#add(java.lang.Object)
+	 */
+	@Override
+	public boolean add(E construct) {
+		WeakReference<E> old = elements.put(construct.getConstructId(), new WeakReference<E>(construct));
+		return old == null;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#contains(java.lang.Object)
+	 */
+	@Override
+	public boolean contains(Object obj) {
+		if(!(obj instanceof IConstruct)) return false;
+		return elements.containsKey(((IConstruct) obj).getConstructId()) || find(obj) != null;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#remove(java.lang.Object)
+	 */
+	@Override
+	public boolean remove(Object obj) {
+		if(!(obj instanceof IConstruct)) return false;
+		if(elements.remove(((IConstruct) obj).getConstructId()) != null) return true;
+		ConstructId key = find(obj);
+		return key != null && elements.remove(key) != null;
+	}
+	
+	//key of the element, constructs merged into others have changed their ID
+	private ConstructId find(Object obj) {
+		for(Map.Entry<ConstructId, WeakReference<E>> entry : elements.entrySet()) {
+			if(entry.getValue().get() == obj) return entry.getKey();
+		}
+		return null;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#size()
+	 */
+	@Override
+	public int size() {
+		return elements.size();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#clear()
+	 */
+	@Override
+	public void clear() {
+		elements.clear();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see java.util.AbstractCollection#iterator()
+	 */
+	@Override
+	public Iterator<E> iterator() {
+		final Iterator<Map.Entry<ConstructId, WeakReference<E>>> it = elements.entrySet().iterator();
+		return new Iterator<E>() {
+			
+			@Override
+			public boolean hasNext() {
+				return it.hasNext();
+			}
+			
+			@Override
+			public E next() {
+				Map.Entry<ConstructId, WeakReference<E>> entry = it.next();
+				WeakReference<E> ref = entry.getValue();
+				E construct = ref.get();
+				if(construct == null) {
+					construct = resolve(entry.getKey());
+					//only if the element was neither removed nor replaced meanwhile
+					elements.replace(entry.getKey(), ref, new WeakReference<E>(construct));
+				}
+				return construct;
+			}
+			
+			@Override
+			public void remove() {
+				it.remove();
+			}
+		};
+	}
+	
+	//returns the cached construct or the stub for the ID
+	@SuppressWarnings("unchecked")
+	private E resolve(ConstructId id) {
+		TopicMapObjectManager tmom = ((ITopicMap) owner.getTopicMap()).getTopicMapObjectManager();
+		return (E) tmom.getReference(id.toString(), documentType);
+	}
+	
+}
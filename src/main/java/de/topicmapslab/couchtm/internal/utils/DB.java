@@ -16,10 +16,30 @@
 
 package de.topicmapslab.couchtm.internal.utils;
 
+import java.io.File;
+import java.io.IOException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
+import org.apache.http.NameValuePair;
+import org.apache.http.message.BasicNameValuePair;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.tmapi.core.Construct;
 import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
 import org.tmapi.core.TMAPIException;
+import org.tmapi.core.TMAPIRuntimeException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.Variant;
 
 import de.topicmapslab.couchtm.internal.api.IConstruct;
 import de.topicmapslab.couchtm.internal.api.ITopic;
@@ -31,6 +51,7 @@ import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.ITopicMap;
 import de.topicmapslab.couchtm.internal.api.IConstant;
 import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
+import de.topicmapslab.couchtm.internal.api.IRowMapper;
 
 /**
  * This class provides access to a database representing a topic map.
@@ -40,63 +61,215 @@ import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
  */
 public class DB extends SysDB{	
 	
+	//pending saves in write-behind mode, null if constructs are saved immediately
+	private final WriteBuffer buffer;
+	
+	//held from draining a buffer until the new revisions are set, so flushes do not overlap
+	private final Object flushLock = new Object();
+	
+	//id and error of the documents of implicit flushes which could not be written
+	private final Map<String, String> failures;
+	
+	//batch of the current thread, null if the thread runs no batch
+	private final ThreadLocal<Batch> batches = new ThreadLocal<Batch>();
+	
+	//pending saves of the batches of all threads
+	private final Set<WriteBuffer> openBatches = Collections.newSetFromMap(new ConcurrentHashMap<WriteBuffer, Boolean>());
+	
+	//version of the design document, has to be increased whenever the views change
+	private static final String VIEW_VERSION = "4";
+	
+	//whether names, variants and occurrences are embedded in the topic document
+	private boolean aggregateTopics;
+	
+	//whether roles are embedded in the association document
+	private boolean embeddedRoles;
+	
+	//documents on disk which survive restarts, null if there is no disk cache
+	private DiskCache disk;
+	
+	//whether a document from the disk cache is checked against the database revision, 
+	//not needed if the changes feed drops changed documents
+	private boolean validateDisk;
+	
 	public DB(String url, int port, String dbName, ITopicMapSystem sys) throws TMAPIException{
 		super(url, port, dbName, sys);
-		setupDb();
+		setupDb(sys);
+		failures = CollectionFactory.createMap();
+		if(sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("WRITE_BEHIND")))) {
+			buffer = new WriteBuffer(Integer.valueOf((String) sys.getProperty("WRITE_BEHIND_SIZE")), 
+					Long.valueOf((String) sys.getProperty("WRITE_BEHIND_DELAY")));
+		} else {
+			buffer = null;
+		}
+		Object dir = (sys == null) ? null : sys.getProperty("DISK_CACHE_DIR");
+		if(dir != null && dir.toString().length() > 0) {
+			try {
+				Object size = sys.getProperty("DISK_CACHE_SIZE");
+				disk = new DiskCache(new File(dir.toString(), dbName), size == null ? DiskCache.DEFAULT_SIZE : Long.valueOf(size.toString()));
+				validateDisk = !Boolean.valueOf(String.valueOf(sys.getProperty("CHANGES_FEED")));
+				if(!validateDisk) checkDiskSequence();
+			} catch(IOException e) {
+				e.printStackTrace();
+			}
+		}
 	}
 	
 	/**
-	 * Creation of the database.
+	 * Without revision checks the documents on disk are only trusted up to the sequence
+	 * stored with them, the changes feed resumes from it. Without stored sequence, or 
+	 * with one the database has not reached because it was created again, the documents 
+	 * are dropped and the current sequence of the database is stored.
+	 */
+	private void checkDiskSequence() {
+		Object current = getUpdateSequence();
+		String seq = disk.getSequence();
+		if(seq != null && current != null && !isAhead(seq, current)) return;
+		disk.clear();
+		if(current != null) disk.setSequence(String.valueOf(current));
+	}
+	
+	//compares numeric sequences, other sequences are opaque and never ahead
+	private static boolean isAhead(String seq, Object current) {
+		try {
+			return Long.parseLong(seq) > Long.parseLong(String.valueOf(current));
+		} catch(NumberFormatException e) {
+			return false;
+		}
+	}
+	
+	/**
+	 * Returns the sequence up to which the documents of the disk cache are current.
+	 * The changes feed has to resume from it, so the documents see every later change.
+	 * 
+	 * @return sequence or <tt>null</tt> if there is no disk cache
 	 */
-	private void setupDb() {
+	public Object getDiskSequence() {
+		return disk == null ? null : disk.getSequence();
+	}
+	
+	/**
+	 * Stores the sequence up to which the changes were applied to the disk cache.
+	 * 
+	 * @param seq sequence
+	 */
+	public void setDiskSequence(Object seq) {
+		if(disk != null && seq != null) disk.setSequence(String.valueOf(seq));
+	}
+	
+	/**
+	 * Creation of the database. The layout of the documents is chosen when the
+	 * database is created and kept in the design document.
+	 * 
+	 * @param sys topic map system
+	 */
+	private void setupDb(ITopicMapSystem sys) {
 		if(!dbExists(dbName)) {
 			putMethod(dbName, "");
-			makeViews();
-		}
-	}
-	
-	/**
-	 * Creation of the needed views.
-	 */
-	private void makeViews() {
-		String views = "{ \"_id\" : \"_design/couchtm\", \"language\" : \"javascript\" , \"views\" : { "
-			//+ "\"getconstruct\" : { \"map\" : \"function(doc) { for(var i in doc.itemidentifiers) { emit(doc.itemidentifiers[i], doc) } }\" }, "
-			+ "\"getconstructbylocator\" : { \"map\" : \"function(doc) { for(var i in doc.itemidentifiers) { emit([doc.topicmap, doc.itemidentifiers[i]], doc) } }\" }, "
-			//+ "\"gettopicmaplocators\" : { \"map\" : \"function(doc) { if(doc.documenttype == '"+IConstant.TOPIC_MAP+"') { emit(doc.locator, doc) } }\" }, "
-			+ "\"gettopicbysubjectidentifier\" : { \"map\" : \"function(doc) { if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.subjectidentifiers) { emit([doc.topicmap, doc.subjectidentifiers[i]], doc) } } } \" }, "
-			+ "\"gettopicbysubjectlocator\" : { \"map\" : \"function(doc) { if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.subjectlocators) { emit([doc.topicmap, doc.subjectlocators[i]], doc) } } } \" }, "
-			+ "\"gettopicsbytm\" : { \"map\" : \"function(doc) { if(doc.documenttype == '"+IConstant.TOPIC+"') { emit(doc.topicmap, doc) } }\" }, "
-			+ "\"getassociationsbytm\" : { \"map\" : \"function(doc) { if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { emit(doc.topicmap, doc) } }\" }, "
-			+ "\"getassociationsbytypescope\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); emit([doc.topicmap, doc.type, scope], doc); } } \" }, "
-			+ "\"getconstructsbytm\" : { \"map\" : \" function(doc) { emit(doc.topicmap, doc) } \" }, "
-			+ "\"getnamesbytypevaluescope\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.NAME+"') { if(doc.scope) {scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort();} else {scope = new Array('none');} emit([doc.topicmap, doc.type, doc.value, scope, doc.parent], doc); } } \" }, "
-			+ "\"getoccurrencesbytypevaluedatatypescope\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { if(doc.scope) { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort();} else {scope = new Array('none');} emit([doc.topicmap, doc.type, doc.value, doc.datatype, scope, doc.parent], doc); } } \" }, "
-			+ "\"getassociationsbytheme\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { if(doc.scope == null) { emit('none', doc); } for(var i in doc.scope) { emit(doc.scope[i], doc); } } } \" }, "
-			+ "\"getnamesbytheme\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.NAME+"') { if(doc.scope == null) { emit('none', doc); } for(var i in doc.scope) { emit(doc.scope[i], doc); } } } \" }, "
-			+ "\"getvariantsbytheme\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.VARIANT+"') { if(doc.scope == null) { emit('none', doc); } for(var i in doc.scope) { emit(doc.scope[i], doc); } } } \" }, "
-			+ "\"getoccurrencesbytheme\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { if(doc.scope == null) { emit('none', doc); } for(var i in doc.scope) { emit(doc.scope[i], doc); } } } \" }, "
-			+ "\"getoccurrencesbytype\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { emit(doc.type, doc);  } } \" }, "
-			+ "\"getrolesbytype\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ROLE+"') { emit(doc.type, doc);  } } \" }, "
-			+ "\"getnamesbytype\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.NAME+"') { emit(doc.type, doc);  } } \" }, "
-			+ "\"getassociationsbytype\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { emit(doc.type, doc);  } } \" }, "
-			+ "\"gettopicsbytype\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.TOPIC+"') { if(doc.types == null) { emit('none', doc); } for(var i in doc.types) { emit(doc.types[i], doc); } } } \" }, "
-			+ "\"getnamesbyvalue\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.NAME+"') { emit([doc.topicmap, doc.value], doc); } } \" }, "
-			+ "\"getvariantsbydatatypevalue\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.VARIANT+"') { emit([doc.topicmap, doc.value, doc.datatype], doc); } } \" }, "
-			+ "\"getoccurrencesbydatatypevalue\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { emit([doc.topicmap, doc.value, doc.datatype], doc); } }  \" }, "
-			+ "\"getrolebytypeplayerparent\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ROLE+"') { emit([doc.type, doc.player, doc.parent], doc); } } \" }, "
-			+ "\"getvariantbyvaluedatatypescopeparent\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.VARIANT+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); emit([doc.value, doc.datatype, scope, doc.parent], doc); } } \" }, "
-			+ "\"getassociationbytypescoperoles\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); roles = new Array(doc.roles.length); for(var j = 0; j < doc.roles.length; j++) { roles[j] = doc.roles[j]; } roles.sort(); emit([doc.type, scope, roles], doc); } } \" }, "
-			+ "\"gettopicsbyreified\" : { \"map\" : \" function(doc) { if(doc.documenttyoe == '"+IConstant.TOPIC+"') { emit(doc.reified, doc); } } \" }, "
-			+ "\"gettopicbyitemidentifier\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.itemidentifiers) { emit([doc.topicmap, doc.itemidentifiers[i]], doc); } } } \" }, "
-			+ "\"getrolesbyplayer\" : { \"map\" : \" function(doc) { if(doc.documenttype == '"+IConstant.ROLE+"') { emit(doc.player, doc); } } \" }"
-			+"} }";
-		putMethod(dbName+"/_design/couchtm", views);
+			aggregateTopics = sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("AGGREGATE_TOPICS")));
+			embeddedRoles = sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("EMBEDDED_ROLES")));
+			makeViews("");
+		} else {
+			String design = getMethod("_design/couchtm", null);
+			aggregateTopics = Boolean.valueOf(JSONToObject.getField(design, "aggregatetopics"));
+			embeddedRoles = Boolean.valueOf(JSONToObject.getField(design, "embeddedroles"));
+			//replaces the views of databases created with an older version
+			if(!VIEW_VERSION.equals(JSONToObject.getField(design, "version"))) makeViews(JSONToObject.getField(design, "_rev"));
+		}
+	}
+	
+	/**
+	 * Creation of the needed views. The views only emit keys, the documents are
+	 * fetched with <tt>include_docs</tt>. Every map function also emits the constructs 
+	 * embedded in a document, see {@link #view(String, String)}.
+	 * 
+	 * @param rev revision of the existing design document or an empty string
+	 */
+	private void makeViews(String rev) {
+		try {
+			JSONObject design = new JSONObject();
+			design.put("_id", "_design/couchtm");
+			if(!rev.equals("")) design.put("_rev", rev);
+			design.put("version", VIEW_VERSION);
+			design.put("aggregatetopics", aggregateTopics);
+			design.put("embeddedroles", embeddedRoles);
+			design.put("language", "javascript");
+			JSONObject views = new JSONObject();
+			//views.put("getconstruct", view("for(var i in doc.itemidentifiers) { emit(doc.itemidentifiers[i], value) }"));
+			views.put("getconstructbylocator", view("for(var i in doc.itemidentifiers) { emit([doc.topicmap, doc.itemidentifiers[i]], value) }"));
+			//views.put("gettopicmaplocators", view("if(doc.documenttype == '"+IConstant.TOPIC_MAP+"') { emit(doc.locator, value) }"));
+			views.put("gettopicbysubjectidentifier", view("if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.subjectidentifiers) { emit([doc.topicmap, doc.subjectidentifiers[i]], value) } }"));
+			views.put("gettopicbysubjectlocator", view("if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.subjectlocators) { emit([doc.topicmap, doc.subjectlocators[i]], value) } }"));
+			views.put("gettopicsbytm", view("if(doc.documenttype == '"+IConstant.TOPIC+"') { emit(doc.topicmap, value) }"));
+			views.put("getassociationsbytm", view("if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { emit(doc.topicmap, value) }"));
+			views.put("getassociationsbytypescope", view("if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); emit([doc.topicmap, doc.type, scope], value); }"));
+			views.put("getconstructsbytm", view("emit(doc.topicmap, value)"));
+			views.put("getnamesbytypevaluescope", view("if(doc.documenttype == '"+IConstant.NAME+"') { if(doc.scope) {scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort();} else {scope = new Array('none');} emit([doc.topicmap, doc.type, doc.value, scope, doc.parent], value); }"));
+			views.put("getoccurrencesbytypevaluedatatypescope", view("if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { if(doc.scope) { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort();} else {scope = new Array('none');} emit([doc.topicmap, doc.type, doc.value, doc.datatype, scope, doc.parent], value); }"));
+			views.put("getassociationsbytheme", view("if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { if(doc.scope == null) { emit('none', value); } for(var i in doc.scope) { emit(doc.scope[i], value); } }", "_count"));
+			views.put("getnamesbytheme", view("if(doc.documenttype == '"+IConstant.NAME+"') { if(doc.scope == null) { emit('none', value); } for(var i in doc.scope) { emit(doc.scope[i], value); } }", "_count"));
+			views.put("getvariantsbytheme", view("if(doc.documenttype == '"+IConstant.VARIANT+"') { if(doc.scope == null) { emit('none', value); } for(var i in doc.scope) { emit(doc.scope[i], value); } }", "_count"));
+			views.put("getoccurrencesbytheme", view("if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { if(doc.scope == null) { emit('none', value); } for(var i in doc.scope) { emit(doc.scope[i], value); } }", "_count"));
+			views.put("getoccurrencesbytype", view("if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { emit(doc.type, value);  }", "_count"));
+			views.put("getrolesbytype", view("if(doc.documenttype == '"+IConstant.ROLE+"') { emit(doc.type, value);  }", "_count"));
+			views.put("getnamesbytype", view("if(doc.documenttype == '"+IConstant.NAME+"') { emit(doc.type, value);  }", "_count"));
+			views.put("getassociationsbytype", view("if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { emit(doc.type, value);  }", "_count"));
+			views.put("gettopicsbytype", view("if(doc.documenttype == '"+IConstant.TOPIC+"') { if(doc.types == null) { emit('none', value); } for(var i in doc.types) { emit(doc.types[i], value); } }", "_count"));
+			views.put("getnamesbyvalue", view("if(doc.documenttype == '"+IConstant.NAME+"') { emit([doc.topicmap, doc.value], value); }"));
+			views.put("getvariantsbydatatypevalue", view("if(doc.documenttype == '"+IConstant.VARIANT+"') { emit([doc.topicmap, doc.value, doc.datatype], value); }"));
+			views.put("getoccurrencesbydatatypevalue", view("if(doc.documenttype == '"+IConstant.OCCURRENCE+"') { emit([doc.topicmap, doc.value, doc.datatype], value); }"));
+			views.put("getrolebytypeplayerparent", view("if(doc.documenttype == '"+IConstant.ROLE+"') { emit([doc.type, doc.player, doc.parent], value); }"));
+			views.put("getvariantbyvaluedatatypescopeparent", view("if(doc.documenttype == '"+IConstant.VARIANT+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); emit([doc.value, doc.datatype, scope, doc.parent], value); }"));
+			views.put("getassociationbytypescoperoles", view("if(doc.documenttype == '"+IConstant.ASSOCIATION+"') { scope = new Array(doc.scope.length); for(var i = 0; i < doc.scope.length; i++) { scope[i] = doc.scope[i]; } scope.sort(); roles = new Array(doc.roles.length); for(var j = 0; j < doc.roles.length; j++) { roles[j] = doc.roles[j]; } roles.sort(); emit([doc.type, scope, roles], value); }"));
+			views.put("gettopicsbyreified", view("if(doc.documenttyoe == '"+IConstant.TOPIC+"') { emit(doc.reified, value); }"));
+			views.put("gettopicbyitemidentifier", view("if(doc.documenttype == '"+IConstant.TOPIC+"') { for(var i in doc.itemidentifiers) { emit([doc.topicmap, doc.itemidentifiers[i]], value); } }"));
+			views.put("getrolesbyplayer", view("if(doc.documenttype == '"+IConstant.ROLE+"') { emit(doc.player, value); }"));
+			//maps the id of an embedded construct to the document containing it
+			views.put("getembedded", new JSONObject().put("map", "function(doc) { if(doc.embedded) { "
+					+ "for(var e = 0; e < doc.embedded.length; e++) { emit(doc.embedded[e]._id, doc.embedded[e]._id); } } }"));
+			design.put("views", views);
+			putMethod(dbName+"/_design/couchtm", design.toString());
+		} catch(JSONException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Returns a view whose map function applies the given body to a document and to 
+	 * each construct embedded in it. The body sees the document or embedded construct 
+	 * as <tt>doc</tt> and emits <tt>value</tt>, which is <tt>null</tt> for the document 
+	 * itself and the id of the construct for an embedded construct.
+	 * 
+	 * @param body body of the map function
+	 * @return view
+	 * @throws JSONException
+	 */
+	private static JSONObject view(String body) throws JSONException {
+		return view(body, null);
+	}
+	
+	/**
+	 * Returns a view whose map function applies the given body to a document and to 
+	 * each construct embedded in it, see {@link #view(String)}.
+	 * 
+	 * @param body body of the map function
+	 * @param reduce reduce function or <tt>null</tt>
+	 * @return view
+	 * @throws JSONException
+	 */
+	private static JSONObject view(String body, String reduce) throws JSONException {
+		JSONObject view = new JSONObject();
+		view.put("map", "function(top) { var map = function(doc, value) { "+body+" }; map(top, null); "
+				+ "if(top.embedded) { for(var e = 0; e < top.embedded.length; e++) { map(top.embedded[e], top.embedded[e]._id); } } }");
+		if(reduce != null) view.put("reduce", reduce);
+		return view;
 	}
 	
 	/**
 	 * conmpacts the database.
 	 */
 	public void compactDB() {
+		writePending();
 		postMethod(dbName+"/"+"_compact", "");
 		postMethod(dbName+"/"+"_compact/couchtm", "");
 	}
@@ -126,8 +299,7 @@ public class DB extends SysDB{
 	 * @return tm saved topic map
 	 */
 	public ITopicMap saveTopicMap(ITopicMap tm) {
-		String result = putMethod(dbName+"/"+tm.getId(), tm.toJSON());
-		tm.setRev(JSONToObject.getRev(result));
+		save(tm);
 		return tm;
 	}
 	
@@ -138,8 +310,7 @@ public class DB extends SysDB{
 	 * @return topic saved topic
 	 */
 	public ITopic saveTopic(ITopic topic) {
-		String result = putMethod(dbName+"/"+topic.getId(), topic.toJSON());
-		topic.setRev(JSONToObject.getRev(result));
+		save(topic);
 		return topic;
 	}
 	
@@ -150,8 +321,7 @@ public class DB extends SysDB{
 	 * @return name saved name
 	 */
 	public IName saveName(IName name) {
-		String result = putMethod(dbName+"/"+name.getId(), name.toJSON());
-		name.setRev(JSONToObject.getRev(result));
+		save(name);
 		return name;
 	}
 	
@@ -162,8 +332,7 @@ public class DB extends SysDB{
 	 * @return variant saved variant
 	 */
 	public IVariant saveVariant(IVariant variant) {
-		String result = putMethod(dbName+"/"+variant.getId(), variant.toJSON());
-		variant.setRev(JSONToObject.getRev(result));
+		save(variant);
 		return variant;
 	}
 	
@@ -174,8 +343,7 @@ public class DB extends SysDB{
 	 * @return occurrence saved occurrence
 	 */
 	public IOccurrence saveOccurrence(IOccurrence occurrence) {
-		String result = putMethod(dbName+"/"+occurrence.getId(), occurrence.toJSON());
-		occurrence.setRev(JSONToObject.getRev(result));
+		save(occurrence);
 		return occurrence;
 	}
 	
@@ -186,8 +354,7 @@ public class DB extends SysDB{
 	 * @return role saved role
 	 */
 	public IRole saveRole(IRole role) {
-		String result = putMethod(dbName+"/"+role.getId(), role.toJSON());
-		role.setRev(JSONToObject.getRev(result));
+		save(role);
 		return role;
 	}
 	
@@ -198,8 +365,7 @@ public class DB extends SysDB{
 	 * @return association saved association
 	 */
 	public IAssociation saveAssociation(IAssociation association) {
-		String result = putMethod(dbName+"/"+association.getId(), association.toJSON());
-		association.setRev(JSONToObject.getRev(result));
+		save(association);
 		return association;
 	}
 	
@@ -211,19 +377,14 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return roles roles
 	 */
-	public Set<IRole> getRolesByPlayer(ITopic player, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getrolesbyplayer", "\""+player.getId()+"\"");
-		Set<IRole> roles = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IRole role = (IRole) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(role == null) i = -1;
-			else {
-				roles.add(role);
-				i++;
+	public Set<IRole> getRolesByPlayer(final ITopic player, ITopicMap tm) {
+		Set<IRole> roles = getConstructs("_design/couchtm/_view/getrolesbyplayer", "\""+player.getId()+"\"", tm);
+		return withBatch(roles, IConstant.ROLE, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				Topic rolePlayer = ((IRole) construct).getPlayer();
+				return rolePlayer != null && ConstructId.same(rolePlayer, player);
 			}
-		}
-		return roles;
+		});
 	}
 	
 	/**
@@ -236,19 +397,14 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return roles roles
 	 */
-	public Set<IRole> getRoleByTypePlayerParent(ITopic type, ITopic player, IAssociation parent, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getrolebytypeplayerparent", "[\""+type.getId()+"\", \""+player.getId()+"\",\""+parent.getId()+"\"]");
-		Set<IRole> roles = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IRole role = (IRole) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(role == null) i = -1;
-			else {
-				roles.add(role);
-				i++;
+	public Set<IRole> getRoleByTypePlayerParent(final ITopic type, final ITopic player, final IAssociation parent, ITopicMap tm) {
+		Set<IRole> roles = getConstructs("_design/couchtm/_view/getrolebytypeplayerparent", "[\""+type.getId()+"\", \""+player.getId()+"\",\""+parent.getId()+"\"]", tm);
+		return withBatch(roles, IConstant.ROLE, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IRole role = (IRole) construct;
+				return same(role.getType(), type.getId()) && same(role.getPlayer(), player.getId()) && same(role.getParent(), parent.getId());
 			}
-		}
-		return roles;
+		});
 	}
 	
 	/**
@@ -262,26 +418,193 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return variants variants
 	 */
-	public Set<IVariant> getVariantByValueDatatypeScopeParent(String value, Locator datatype, String[] scope, IName parent, ITopicMap tm) {
+	public Set<IVariant> getVariantByValueDatatypeScopeParent(final String value, final Locator datatype, final String[] scope, final IName parent, ITopicMap tm) {
 		String _scope = "";
 		for(String id : scope) {
 			_scope += "\""+id+"\", ";
 		}
 		_scope = _scope.substring(0, _scope.length() - 2);
-		String result = getMethod("_design/couchtm/_view/getvariantbyvaluedatatypescopeparent", "[\""+value+"\",\""+datatype.getReference()+"\",["+_scope+"],\""+parent.getId()+"\"]");
-		Set<IVariant> variants = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IVariant variant = (IVariant) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(variant == null) i = -1;
-			else {
-				variants.add(variant);
-				i++;
+		Set<IVariant> variants = getConstructs("_design/couchtm/_view/getvariantbyvaluedatatypescopeparent", "[\""+value+"\",\""+datatype.getReference()+"\",["+_scope+"],\""+parent.getId()+"\"]", tm);
+		return withBatch(variants, IConstant.VARIANT, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IVariant variant = (IVariant) construct;
+				return value.equals(variant.getValue()) && datatype.equals(variant.getDatatype()) 
+					&& same(variant.getScope(), scope) && same(variant.getParent(), parent.getId());
 			}
-		}
-		return variants;
+		});
 	}	
 
+	/**
+	 * Queries a view and builds the constructs of the result rows once they have 
+	 * been parsed and the connection is released.
+	 * 
+	 * @param view view
+	 * @param key key
+	 * @param tm topic map
+	 * @return constructs constructs
+	 */
+	private <T extends IConstruct> Set<T> getConstructs(String view, String key, ITopicMap tm) {
+		Set<T> constructs = CollectionFactory.createSet();
+		return getRows(view, parameters(key, true), this.<T>constructMapper(tm), constructs);
+	}
+	
+	/**
+	 * Returns a <tt>IRowMapper</tt> which builds an <tt>IConstruct</tt> from the 
+	 * included document of a row and adds the document to the disk cache.
+	 * 
+	 * @param tm topic map
+	 * @return mapper
+	 */
+	private <T extends IConstruct> IRowMapper<T> constructMapper(ITopicMap tm) {
+		final IRowMapper<T> mapper = JSONToObject.<T>constructMapper(tm, tm.getTopicMapObjectManager());
+		if(disk == null) return mapper;
+		return new IRowMapper<T>() {
+			public T mapRow(JSONObject row) {
+				JSONObject doc = row.optJSONObject("doc");
+				//rows of embedded constructs carry the document of their owner
+				if(doc != null && !(row.opt("value") instanceof String) && doc.has("_rev")) {
+					disk.put(doc.optString("_id"), doc.optString("_rev"), doc.toString());
+				}
+				return mapper.mapRow(row);
+			}
+		};
+	}
+	
+	/**
+	 * Returns a document from the disk cache. Without changes feed the revision of 
+	 * the document is checked with a HEAD request.
+	 * 
+	 * @param id document id
+	 * @return document or <tt>null</tt> if it is not cached or outdated
+	 */
+	private String readDisk(String id) {
+		if(disk == null) return null;
+		String rev = disk.getRevision(id);
+		if(rev == null) return null;
+		if(validateDisk && !rev.equals(getRevision(id))) {
+			disk.remove(id);
+			return null;
+		}
+		return disk.get(id);
+	}
+	
+	/**
+	 * Adds the constructs of the given IDs which are in the disk cache. Without changes 
+	 * feed the revisions of the documents are checked with a single request.
+	 * 
+	 * @param ids IDs
+	 * @param constructs target
+	 * @param tm topic map
+	 * @return IDs of the constructs which are not in the disk cache
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends IConstruct> List<String> readDisk(List<String> ids, Set<T> constructs, ITopicMap tm) {
+		if(disk == null) return ids;
+		final Map<String, String> revs = CollectionFactory.createMap(ids.size());
+		for(String id : ids) {
+			String rev = disk.getRevision(id);
+			if(rev != null) revs.put(id, rev);
+		}
+		if(revs.isEmpty()) return ids;
+		if(validateDisk) {
+			final Set<String> current = CollectionFactory.createSet(revs.size());
+			postRows("_all_docs", parameters(null, false), "{\"keys\" : "+new JSONArray(revs.keySet()).toString()+"}", new IRowMapper<Object>() {
+				public Object mapRow(JSONObject row) {
+					JSONObject value = row.optJSONObject("value");
+					String id = row.optString("id");
+					if(value != null && !value.optBoolean("deleted") && value.optString("rev").equals(revs.get(id))) current.add(id);
+					return null;
+				}
+			}, CollectionFactory.createList());
+			revs.keySet().retainAll(current);
+		}
+		List<String> remaining = CollectionFactory.createList(ids.size());
+		for(String id : ids) {
+			String doc = revs.containsKey(id) ? disk.get(id) : null;
+			IConstruct construct = (doc == null) ? null : JSONToObject.JSONDocumentToConstruct(doc, tm, tm.getTopicMapObjectManager());
+			if(construct != null) constructs.add((T) construct);
+			else remaining.add(id);
+		}
+		return remaining;
+	}
+	
+	/**
+	 * Drops a document changed by another writer from the disk cache.
+	 * 
+	 * @param id document id
+	 * @param rev revision of the change, <tt>null</tt> if the document was deleted
+	 */
+	public void invalidate(String id, String rev) {
+		if(disk != null && (rev == null || !rev.equals(disk.getRevision(id)))) disk.remove(id);
+	}
+	
+	/**
+	 * Reads the current revision of a document from the database and adds it to 
+	 * the disk cache.
+	 * 
+	 * @param id document id
+	 * @return document or <tt>null</tt> if it does not exist
+	 */
+	public JSONObject getDocument(String id) {
+		String result = getMethod(id, null);
+		try {
+			JSONObject doc = new JSONObject(result);
+			if(!doc.has("_id")) return null;
+			if(disk != null) disk.put(id, doc.optString("_rev"), result);
+			return doc;
+		} catch(JSONException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Queries a reduce view grouped by key and returns the distinct keys.
+	 * 
+	 * @param view view
+	 * @return keys keys
+	 */
+	private Set<String> getKeys(String view) {
+		Set<String> keys = CollectionFactory.createSet();
+		List<NameValuePair> parameters = parameters(null, false);
+		parameters.add(new BasicNameValuePair("group", "true"));
+		return getRows(view, parameters, JSONToObject.keyMapper(), "keys", keys);
+	}
+	
+	/**
+	 * Retrieves the <tt>IConstruct</tt> with the given IDs from the database
+	 * with a single request. IDs without a document are left out.
+	 * 
+	 * @param ids IDs
+	 * @param tm topic map
+	 * @return constructs constructs
+	 */
+	@SuppressWarnings("unchecked")
+	public <T extends IConstruct> Set<T> getConstructs(Collection<String> ids, ITopicMap tm) {
+		Set<T> constructs = CollectionFactory.createSet();
+		List<String> keys = CollectionFactory.createList(ids.size());
+		WriteBuffer batch = currentBatch();
+		for(String id : ids) {
+			//not yet written constructs of the batch
+			IConstruct pending = (batch == null) ? null : batch.get(id);
+			if(pending != null) constructs.add((T) pending);
+			else keys.add(id);
+		}
+		keys = readDisk(keys, constructs, tm);
+		if(keys.isEmpty()) return constructs;
+		IRowMapper<T> mapper = this.<T>constructMapper(tm);
+		List<NameValuePair> parameters = parameters(null, false);
+		parameters.add(new BasicNameValuePair("include_docs", "true"));
+		postRows("_all_docs", parameters, "{\"keys\" : "+new JSONArray(keys).toString()+"}", mapper, constructs);
+		if(!aggregateTopics && !embeddedRoles) return constructs;
+		//the remaining constructs are embedded in the document of their owner
+		Set<String> embedded = CollectionFactory.createSet(keys.size());
+		embedded.addAll(keys);
+		for(T construct : constructs) embedded.remove(construct.getId());
+		if(embedded.isEmpty()) return constructs;
+		return postRows("_design/couchtm/_view/getembedded", parameters(null, true), "{\"keys\" : "+new JSONArray(embedded).toString()+"}", mapper, constructs);
+	}
+	
 	/**
 	 * Retrieves an <tt>IConstruct</tt> with the given ID from the database.
 	 * 
@@ -290,8 +613,25 @@ public class DB extends SysDB{
 	 * @return construct construct
 	 */
 	public IConstruct getConstruct(String id, ITopicMap tm) {
-		String result = getMethod(id, null);
-		return JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), -1);
+		WriteBuffer batch = currentBatch();
+		if(batch != null) {
+			//not yet written constructs of the batch
+			IConstruct pending = batch.get(id);
+			if(pending != null) return pending;
+		}
+		String result = readDisk(id);
+		IConstruct construct = (result == null) ? null : JSONToObject.JSONDocumentToConstruct(result, tm, tm.getTopicMapObjectManager());
+		if(construct == null) {
+			result = getMethod(id, null);
+			construct = JSONToObject.JSONDocumentToConstruct(result, tm, tm.getTopicMapObjectManager());
+			if(construct != null && disk != null) disk.put(id, JSONToObject.getField(result, "_rev"), result);
+		}
+		if(construct == null && (aggregateTopics || embeddedRoles)) {
+			//embedded in the document of its owner
+			Set<IConstruct> embedded = getConstructs("_design/couchtm/_view/getembedded", "\""+id+"\"", tm);
+			if(!embedded.isEmpty()) construct = embedded.iterator().next();
+		}
+		return construct;
 	}
 	
 	/**
@@ -304,18 +644,7 @@ public class DB extends SysDB{
 	 * @return occs occurrences
 	 */
 	public Set<IOccurrence> getOccurrencesByValue(String value, Locator datatype, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbydatatypevalue", "[\""+tm.getId()+"\", \""+value+"\", \""+datatype.getReference()+"\"]");
-		Set<IOccurrence> occs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IOccurrence occ = (IOccurrence) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(occ == null) i = -1;
-			else {
-				occs.add(occ);
-				i++;
-			}
-		}
-		return occs;
+		return getConstructs("_design/couchtm/_view/getoccurrencesbydatatypevalue", "[\""+tm.getId()+"\", \""+value+"\", \""+datatype.getReference()+"\"]", tm);
 	}
 	
 	/**
@@ -328,18 +657,7 @@ public class DB extends SysDB{
 	 * @return variants variants
 	 */
 	public Set<IVariant> getVariantsByValue(String value, Locator datatype, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getvariantsbydatatypevalue", "[\""+tm.getId()+"\", \""+value+"\", \""+datatype.getReference()+"\"]");
-		Set<IVariant> variants = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IVariant variant = (IVariant) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(variant == null) i = -1;
-			else {
-				variants.add(variant);
-				i++;
-			}
-		}
-		return variants;
+		return getConstructs("_design/couchtm/_view/getvariantsbydatatypevalue", "[\""+tm.getId()+"\", \""+value+"\", \""+datatype.getReference()+"\"]", tm);
 	}
 	
 	/**
@@ -350,19 +668,7 @@ public class DB extends SysDB{
 	 * @return names names
 	 */
 	public Set<IName> getNamesByValue(String value, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getnamesbyvalue", "[\""+tm.getId()+"\", \""+value+"\"]");
-		Set<IName> names = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IName name = (IName) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(name == null) i = -1;
-			else {
-				names.add(name);
-				i++;
-			}
-			
-		}
-		return names;
+		return getConstructs("_design/couchtm/_view/getnamesbyvalue", "[\""+tm.getId()+"\", \""+value+"\"]", tm);
 	}
 	
 	/**
@@ -373,13 +679,7 @@ public class DB extends SysDB{
 	 * @return topics themes
 	 */
 	public Set<ITopic> getAssociationThemes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getassociationsbytheme", null);
-		Set<ITopic> themes = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			themes.add((ITopic) getConstruct(id, tm));
-		}	
-		return themes;
+		return getConstructs(getKeys("_design/couchtm/_view/getassociationsbytheme"), tm);
 	}
 	
 	/**
@@ -390,13 +690,7 @@ public class DB extends SysDB{
 	 * @return topics themes
 	 */
 	public Set<ITopic> getNameThemes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getnamesbytheme", null);
-		Set<ITopic> themes = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			themes.add((ITopic) getConstruct(id, tm));
-		}	
-		return themes;
+		return getConstructs(getKeys("_design/couchtm/_view/getnamesbytheme"), tm);
 	}
 	
 	/**
@@ -407,13 +701,7 @@ public class DB extends SysDB{
 	 * @return topics themes
 	 */
 	public Set<ITopic> getVariantThemes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getvariantsbytheme", null);
-		Set<ITopic> themes = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			themes.add((ITopic) getConstruct(id, tm));
-		}	
-		return themes;
+		return getConstructs(getKeys("_design/couchtm/_view/getvariantsbytheme"), tm);
 	}
 	
 	/**
@@ -424,13 +712,7 @@ public class DB extends SysDB{
 	 * @return topics themes
 	 */
 	public Set<ITopic> getOccurrenceThemes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbytheme", null);
-		Set<ITopic> themes = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			themes.add((ITopic) getConstruct(id, tm));
-		}	
-		return themes;
+		return getConstructs(getKeys("_design/couchtm/_view/getoccurrencesbytheme"), tm);
 	}
 	
 	/**
@@ -440,13 +722,7 @@ public class DB extends SysDB{
 	 * @return topics types
 	 */
 	public Set<ITopic> getOccurrenceTypes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbytype", null);
-		Set<ITopic> types = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			types.add((ITopic) getConstruct(id, tm));
-		}	
-		return types;
+		return getConstructs(getKeys("_design/couchtm/_view/getoccurrencesbytype"), tm);
 	}
 	
 	/**
@@ -456,13 +732,7 @@ public class DB extends SysDB{
 	 * @return topics types
 	 */
 	public Set<ITopic> getNameTypes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getnamesbytype", null);
-		Set<ITopic> types = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			types.add((ITopic) getConstruct(id, tm));
-		}	
-		return types;
+		return getConstructs(getKeys("_design/couchtm/_view/getnamesbytype"), tm);
 	}
 	
 	/**
@@ -472,13 +742,7 @@ public class DB extends SysDB{
 	 * @return topics types
 	 */
 	public Set<ITopic> getRoleTypes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getrolesbytype", null);
-		Set<ITopic> types = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			types.add((ITopic) getConstruct(id, tm));
-		}	
-		return types;
+		return getConstructs(getKeys("_design/couchtm/_view/getrolesbytype"), tm);
 	}
 	
 	/**
@@ -488,13 +752,7 @@ public class DB extends SysDB{
 	 * @return topics types
 	 */
 	public Set<ITopic> getAssociationTypes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getassociationsbytype", null);
-		Set<ITopic> types = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			types.add((ITopic) getConstruct(id, tm));
-		}	
-		return types;
+		return getConstructs(getKeys("_design/couchtm/_view/getassociationsbytype"), tm);
 	}
 	
 	/**
@@ -504,13 +762,7 @@ public class DB extends SysDB{
 	 * @return topics types
 	 */
 	public Set<ITopic> getTopicTypes(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/gettopicsbytype", null);
-		Set<ITopic> types = CollectionFactory.createSet();
-		Set<String> keyset = JSONToObject.getKeyset(result);
-		for(String id : keyset) {
-			types.add((ITopic) getConstruct(id, tm));
-		}	
-		return types;
+		return getConstructs(getKeys("_design/couchtm/_view/gettopicsbytype"), tm);
 	}
 	
 	/**
@@ -521,19 +773,7 @@ public class DB extends SysDB{
 	 */
 	public Set<IAssociation> getAssociationsByTheme(ITopic theme, ITopicMap tm) {
 		String themeId = theme == null ? "none" : theme.getId();
-		String result = getMethod("_design/couchtm/_view/getassociationsbytheme", "\""+themeId+"\"");
-		Set<IAssociation> assocs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IAssociation assoc = (IAssociation) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(assoc == null) i = -1;
-			else {
-				assocs.add(assoc);
-				i++;
-			}
-			
-		}
-		return assocs;
+		return getConstructs("_design/couchtm/_view/getassociationsbytheme", "\""+themeId+"\"", tm);
 	}
 	
 	/**
@@ -545,18 +785,7 @@ public class DB extends SysDB{
 	 */
 	public Set<IName> getNamesByTheme(ITopic theme, ITopicMap tm) {
 		String themeId = theme == null ? "none" : theme.getId();
-		String result = getMethod("_design/couchtm/_view/getnamesbytheme", "\""+themeId+"\"");
-		Set<IName> names = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IName name = (IName) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(name == null) i = -1;
-			else {
-				names.add(name);
-				i++;
-			}	
-		}
-		return names;
+		return getConstructs("_design/couchtm/_view/getnamesbytheme", "\""+themeId+"\"", tm);
 	}
 	
 	/**
@@ -568,18 +797,7 @@ public class DB extends SysDB{
 	 */
 	public Set<IVariant> getVariantsByTheme(ITopic theme, ITopicMap tm) {
 		String themeId = theme == null ? "none" : theme.getId();
-		String result = getMethod("_design/couchtm/_view/getvariantsbytheme", "\""+themeId+"\"");
-		Set<IVariant> variants = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IVariant variant = (IVariant) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(variant == null) i = -1;
-			else {
-				variants.add(variant);
-				i++;
-			}		
-		}
-		return variants;
+		return getConstructs("_design/couchtm/_view/getvariantsbytheme", "\""+themeId+"\"", tm);
 	}
 	
 	/**
@@ -591,18 +809,7 @@ public class DB extends SysDB{
 	 */
 	public Set<IOccurrence> getOccurrencesByTheme(ITopic theme, ITopicMap tm) {
 		String themeId = theme == null ? "none" : theme.getId();
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbytheme", "\""+themeId+"\"");
-		Set<IOccurrence> occs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IOccurrence occ = (IOccurrence) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(occ == null) i = -1;
-			else {
-				occs.add(occ);
-				i++;
-			}	
-		}
-		return occs;
+		return getConstructs("_design/couchtm/_view/getoccurrencesbytheme", "\""+themeId+"\"", tm);
 	}
 	
 	/**
@@ -613,18 +820,7 @@ public class DB extends SysDB{
 	 * @return occs occurrences
 	 */
 	public Set<IOccurrence> getOccurrencesByType(ITopic type, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbytype", "\""+type.getId()+"\"");
-		Set<IOccurrence> occs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IOccurrence occ = (IOccurrence) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(occ == null) i = -1;
-			else {
-				occs.add(occ);
-				i++;
-			}
-		}
-		return occs;
+		return getConstructs("_design/couchtm/_view/getoccurrencesbytype", "\""+type.getId()+"\"", tm);
 	}
 	
 	/**
@@ -641,18 +837,7 @@ public class DB extends SysDB{
 		} else {
 			typeId = "\""+type.getId()+"\"";
 		}
-		String result = getMethod("_design/couchtm/_view/getnamesbytype", typeId);
-		Set<IName> names = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IName name = (IName) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(name == null) i = -1;
-			else {
-				names.add(name);
-				i++;
-			}	
-		}
-		return names;
+		return getConstructs("_design/couchtm/_view/getnamesbytype", typeId, tm);
 	}
 	
 	/**
@@ -663,18 +848,7 @@ public class DB extends SysDB{
 	 * @return roles roles
 	 */
 	public Set<IRole> getRolesByType(ITopic type, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getrolesbytype", "\""+type.getId()+"\"");
-		Set<IRole> roles = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IRole role = (IRole) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(role == null) i = -1;
-			else {
-				roles.add(role);
-				i++;
-			}		
-		}
-		return roles;
+		return getConstructs("_design/couchtm/_view/getrolesbytype", "\""+type.getId()+"\"", tm);
 	}
 	
 	/**
@@ -685,18 +859,7 @@ public class DB extends SysDB{
 	 * @return assocs associations
 	 */
 	public Set<IAssociation> getAssociationsByType(ITopic type, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getassociationsbytype", "\""+type.getId()+"\"");
-		Set<IAssociation> assocs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IAssociation assoc = (IAssociation) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(assoc == null) i = -1;
-			else {
-				assocs.add(assoc);
-				i++;
-			}		
-		}
-		return assocs;
+		return getConstructs("_design/couchtm/_view/getassociationsbytype", "\""+type.getId()+"\"", tm);
 	}
 	
 	/**
@@ -708,18 +871,107 @@ public class DB extends SysDB{
 	 */
 	public Set<ITopic> getTopicsByType(ITopic type, ITopicMap tm) {
 		String typeId = type == null ? "none" : type.getId();
-		String result = getMethod("_design/couchtm/_view/gettopicsbytype", "\""+typeId+"\"");
-		Set<ITopic> topics = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
-			}	
-		}
-		return topics;
+		return getConstructs("_design/couchtm/_view/gettopicsbytype", "\""+typeId+"\"", tm);
+	}
+	
+	/**
+	 * Retrieves all <tt>IAssociation</tt> for each of the given themes from the 
+	 * database with a single request.
+	 * 
+	 * @param themes themes
+	 * @param tm topic map
+	 * @return map theme ID to associations
+	 */
+	public Map<String, Set<IAssociation>> getAssociationsByThemes(Collection<ITopic> themes, ITopicMap tm) {
+		return getConstructsByKeys("_design/couchtm/_view/getassociationsbytheme", getIds(themes), tm);
+	}
+	
+	/**
+	 * Retrieves all <tt>IName</tt> for each of the given themes from the 
+	 * database with a single request.
+	 * 
+	 * @param themes themes
+	 * @param tm topic map
+	 * @return map theme ID to names
+	 */
+	public Map<String, Set<IName>> getNamesByThemes(Collection<ITopic> themes, ITopicMap tm) {
+		return getConstructsByKeys("_design/couchtm/_view/getnamesbytheme", getIds(themes), tm);
+	}
+	
+	/**
+	 * Retrieves all <tt>IVariant</tt> for each of the given themes from the 
+	 * database with a single request.
+	 * 
+	 * @param themes themes
+	 * @param tm topic map
+	 * @return map theme ID to variants
+	 */
+	public Map<String, Set<IVariant>> getVariantsByThemes(Collection<ITopic> themes, ITopicMap tm) {
+		return getConstructsByKeys("_design/couchtm/_view/getvariantsbytheme", getIds(themes), tm);
+	}
+	
+	/**
+	 * Retrieves all <tt>IOccurrence</tt> for each of the given themes from the 
+	 * database with a single request.
+	 * 
+	 * @param themes themes
+	 * @param tm topic map
+	 * @return map theme ID to occurrences
+	 */
+	public Map<String, Set<IOccurrence>> getOccurrencesByThemes(Collection<ITopic> themes, ITopicMap tm) {
+		return getConstructsByKeys("_design/couchtm/_view/getoccurrencesbytheme", getIds(themes), tm);
+	}
+	
+	/**
+	 * Retrieves all <tt>ITopic</tt> for each of the given types from the 
+	 * database with a single request.
+	 * 
+	 * @param types types
+	 * @param tm topic map
+	 * @return map type ID to topics
+	 */
+	public Map<String, Set<ITopic>> getTopicsByTypes(Collection<ITopic> types, ITopicMap tm) {
+		return getConstructsByKeys("_design/couchtm/_view/gettopicsbytype", getIds(types), tm);
+	}
+	
+	/**
+	 * Returns the IDs of the given topics, "none" stands for <tt>null</tt>.
+	 * 
+	 * @param topics topics
+	 * @return ids IDs
+	 */
+	private Set<String> getIds(Collection<ITopic> topics) {
+		Set<String> ids = CollectionFactory.createSet(topics.size());
+		for(ITopic topic : topics) ids.add(topic == null ? "none" : topic.getId());
+		return ids;
+	}
+	
+	/**
+	 * Queries a view for several keys with a single request and builds the 
+	 * constructs of the result rows grouped by key.
+	 * 
+	 * @param view view
+	 * @param keys keys
+	 * @param tm topic map
+	 * @return map key to constructs
+	 */
+	private <T extends IConstruct> Map<String, Set<T>> getConstructsByKeys(String view, Collection<String> keys, ITopicMap tm) {
+		final Map<String, Set<T>> constructs = CollectionFactory.createMap(keys.size());
+		for(String key : keys) constructs.put(key, CollectionFactory.<T>createSet());
+		if(keys.isEmpty()) return constructs;
+		final IRowMapper<T> constructMapper = this.<T>constructMapper(tm);
+		IRowMapper<T> mapper = new IRowMapper<T>() {
+			public T mapRow(JSONObject row) {
+				Set<T> set = constructs.get(row.optString("key"));
+				T construct = constructMapper.mapRow(row);
+				if(set != null && construct != null) set.add(construct);
+				//the rows are collected in the map
+				return null;
+			}
+		};
+		String entity = "{\"keys\" : "+new JSONArray(keys).toString()+"}";
+		postRows(view, parameters(null, true), entity, mapper, CollectionFactory.<T>createList());
+		return constructs;
 	}
 	
 	/**
@@ -729,18 +981,7 @@ public class DB extends SysDB{
 	 * @return topics topics
 	 */
 	public Set<ITopic> getTopicsByTm(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/gettopicsbytm", "\""+tm.getId()+"\"");
-		Set<ITopic> topics = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
-			}	
-		}
-		return topics;
+		return getConstructs("_design/couchtm/_view/gettopicsbytm", "\""+tm.getId()+"\"", tm);
 	}
 	
 	/**
@@ -750,18 +991,7 @@ public class DB extends SysDB{
 	 * @return assocs associations
 	 */
 	public Set<IAssociation> getAssociationsByTm(ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getassociationsbytm", "\""+tm.getId()+"\"");
-		Set<IAssociation> associations = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IAssociation assoc = (IAssociation) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(assoc == null) i = -1;
-			else {
-				associations.add(assoc);
-				i++;
-			}
-		}
-		return associations;
+		return getConstructs("_design/couchtm/_view/getassociationsbytm", "\""+tm.getId()+"\"", tm);
 	}
 	
 	/**
@@ -772,24 +1002,19 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return assocs associations
 	 */
-	public Set<IAssociation> getAssociationsByTypeScope(String typeId, String[] scope, ITopicMap tm) {
+	public Set<IAssociation> getAssociationsByTypeScope(final String typeId, final String[] scope, ITopicMap tm) {
 		String _scope = "";
 		for(String str : scope) {
 			_scope += "\""+str+"\", ";
 		}
 		if(scope.length != 0) _scope = _scope.substring(0, _scope.length() - 2);
-		String result = getMethod("_design/couchtm/_view/getassociationsbytypescope", "[\""+tm.getId()+"\", \""+typeId+"\", ["+_scope+"]]");
-		Set<IAssociation> associations = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IAssociation assoc = (IAssociation) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(assoc == null) i = -1;
-			else {
-				associations.add(assoc);
-				i++;
+		Set<IAssociation> assocs = getConstructs("_design/couchtm/_view/getassociationsbytypescope", "[\""+tm.getId()+"\", \""+typeId+"\", ["+_scope+"]]", tm);
+		return withBatch(assocs, IConstant.ASSOCIATION, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IAssociation assoc = (IAssociation) construct;
+				return same(assoc.getType(), typeId) && same(assoc.getScope(), scope);
 			}
-		}
-		return associations;
+		});
 	}
 	
 	/**
@@ -800,7 +1025,7 @@ public class DB extends SysDB{
 	 * @param roles array of role IDs
 	 * @return assocs associations
 	 */
-	public Set<IAssociation> getAssociationsByTypeScopeRoles(ITopic type, String[] scope, String[] roles) {
+	public Set<IAssociation> getAssociationsByTypeScopeRoles(final ITopic type, final String[] scope, final String[] roles) {
 		String _scope = "";
 		for(String str : scope) {
 			_scope += "\""+str+"\", ";
@@ -811,19 +1036,14 @@ public class DB extends SysDB{
 			_roles += "\""+str+"\", ";
 		}
 		if(roles.length != 0) _scope = _roles.substring(0, _roles.length() - 2);
-		String result = getMethod("_design/couchtm/_view/getassociationbytypescoperoles", "[\""+type.getId()+"\", ["+_scope+"], ["+_roles+"]]");
 		ITopicMap tm = (ITopicMap) type.getParent();
-		Set<IAssociation> associations = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IAssociation assoc = (IAssociation) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(assoc == null) i = -1;
-			else {
-				associations.add(assoc);
-				i++;
+		Set<IAssociation> assocs = getConstructs("_design/couchtm/_view/getassociationbytypescoperoles", "[\""+type.getId()+"\", ["+_scope+"], ["+_roles+"]]", tm);
+		return withBatch(assocs, IConstant.ASSOCIATION, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IAssociation assoc = (IAssociation) construct;
+				return same(assoc.getType(), type.getId()) && same(assoc.getScope(), scope) && same(assoc.getRoles(), roles);
 			}
-		}
-		return associations;
+		});
 	}
 
 	/**
@@ -833,20 +1053,15 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return topic topic
 	 */
-	public Set<ITopic> getTopicsByReified(IConstruct reified, ITopicMap tm) {
+	public Set<ITopic> getTopicsByReified(final IConstruct reified, ITopicMap tm) {
 		Set<ITopic> topics = CollectionFactory.createSet();
 		if(reified == null) return topics;
-		String result = getMethod("_design/couchtm/_view/gettopicsbyreified","\""+reified.getId()+"\"");
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager());
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
+		topics = getConstructs("_design/couchtm/_view/gettopicsbyreified","\""+reified.getId()+"\"", tm);
+		return withBatch(topics, IConstant.TOPIC, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				return same(((ITopic) construct).getReified(), reified.getId());
 			}
-		}
-		return topics;
+		});
 	}
 	
 	/**
@@ -856,19 +1071,13 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return topic topic
 	 */
-	public Set<ITopic> getTopicsByItemIdentifier(Locator iid, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/gettopicbyitemidentifier","[\""+tm.getId()+"\", \""+iid.getReference()+"\"]");
-		Set<ITopic> topics = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
+	public Set<ITopic> getTopicsByItemIdentifier(final Locator iid, ITopicMap tm) {
+		Set<ITopic> topics = getConstructs("_design/couchtm/_view/gettopicbyitemidentifier","[\""+tm.getId()+"\", \""+iid.getReference()+"\"]", tm);
+		return withBatch(topics, IConstant.TOPIC, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				return construct.getItemIdentifiers().contains(iid);
 			}
-		}
-		return topics;
+		});
 	}
 	
 	/**
@@ -878,19 +1087,13 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return topic topic
 	 */
-	public Set<ITopic> getTopicsBySubjectIdentifier(Locator sid, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/gettopicbysubjectidentifier","[\""+tm.getId()+"\", \""+sid.getReference()+"\"]");
-		Set<ITopic> topics = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
+	public Set<ITopic> getTopicsBySubjectIdentifier(final Locator sid, ITopicMap tm) {
+		Set<ITopic> topics = getConstructs("_design/couchtm/_view/gettopicbysubjectidentifier","[\""+tm.getId()+"\", \""+sid.getReference()+"\"]", tm);
+		return withBatch(topics, IConstant.TOPIC, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				return ((ITopic) construct).getSubjectIdentifiers().contains(sid);
 			}
-		}
-		return topics;
+		});
 	}
 	
 	/**
@@ -900,19 +1103,28 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return topic topic
 	 */
-	public Set<ITopic> getTopicsBySubjectLocator(Locator slo, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/gettopicbysubjectlocator","[\""+tm.getId()+"\", \""+slo.getReference()+"\"]");
-		Set<ITopic> topics = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			ITopic topic = (ITopic) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(topic == null) i = -1;
-			else {
-				topics.add(topic);
-				i++;
+	public Set<ITopic> getTopicsBySubjectLocator(final Locator slo, ITopicMap tm) {
+		Set<ITopic> topics = getConstructs("_design/couchtm/_view/gettopicbysubjectlocator","[\""+tm.getId()+"\", \""+slo.getReference()+"\"]", tm);
+		return withBatch(topics, IConstant.TOPIC, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				return ((ITopic) construct).getSubjectLocators().contains(slo);
 			}
-		}
-		return topics;
+		});
+	}
+	
+	/**
+	 * Streams the rows of an identity view of the topic map into the mapper without 
+	 * keeping them. The key of each row contains the topic map ID and the locator.
+	 * 
+	 * @param view getconstructbylocator, gettopicbysubjectidentifier or gettopicbysubjectlocator
+	 * @param mapper row mapper
+	 * @param tm topic map
+	 */
+	public <T> void streamLocators(String view, IRowMapper<T> mapper, ITopicMap tm) {
+		List<NameValuePair> parameters = parameters(null, false);
+		parameters.add(new BasicNameValuePair("startkey", "[\""+tm.getId()+"\"]"));
+		parameters.add(new BasicNameValuePair("endkey", "[\""+tm.getId()+"\", {}]"));
+		streamRows("_design/couchtm/_view/"+view, parameters, mapper, CollectionFactory.<T>createList());
 	}
 	
 	/**
@@ -922,18 +1134,7 @@ public class DB extends SysDB{
 	 * @return constructs construct
 	 */
 	public Set<IConstruct> getConstructsByTm(ITopicMap tm) {
-		Set<IConstruct> constructs = CollectionFactory.createSet();
-		String result = getMethod("_design/couchtm/_view/getconstructsbytm", "\""+tm.getId()+"\"");
-		int i = 0;
-		while(i >= 0) {
-			IConstruct construct = (IConstruct) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(construct == null) i = -1;
-			else {
-				constructs.add(construct);
-				i++;
-			}
-		}
-		return constructs;
+		return getConstructs("_design/couchtm/_view/getconstructsbytm", "\""+tm.getId()+"\"", tm);
 	}
 	
 	/**
@@ -946,25 +1147,20 @@ public class DB extends SysDB{
 	 * @param parent parent
 	 * @return names names
 	 */
-	public Set<IName> getNamesByTypeValueScope(String type, String value, String[] scope, ITopicMap tm, String parent) {
+	public Set<IName> getNamesByTypeValueScope(final String type, final String value, final String[] scope, ITopicMap tm, final String parent) {
 		String _scope = "";
 		for(String str : scope) {
 			_scope += "\""+str+"\", ";
 		}
 		if(_scope.length() != 0) _scope = _scope.substring(0, _scope.length() - 2);
 		else _scope = "\"none\"";
-		String result = getMethod("_design/couchtm/_view/getnamesbytypevaluescope", "[\""+tm.getId()+"\", \""+type+"\", \""+value+"\", ["+_scope+"], \""+parent+"\"]");
-		Set<IName> names = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IName name = (IName) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(name == null) i = -1;
-			else {
-				names.add(name);
-				i++;
+		Set<IName> names = getConstructs("_design/couchtm/_view/getnamesbytypevaluescope", "[\""+tm.getId()+"\", \""+type+"\", \""+value+"\", ["+_scope+"], \""+parent+"\"]", tm);
+		return withBatch(names, IConstant.NAME, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IName name = (IName) construct;
+				return same(name.getType(), type) && value.equals(name.getValue()) && same(name.getScope(), scope) && same(name.getParent(), parent);
 			}
-		}
-		return names;
+		});
 	}
 	
 	/**
@@ -978,25 +1174,21 @@ public class DB extends SysDB{
 	 * @param parent parent
 	 * @return
 	 */
-	public Set<IOccurrence> getOccurrencesByTypeValueDatatypeScope(String type, String value, String datatype, String[] scope, ITopicMap tm, String parent) {
+	public Set<IOccurrence> getOccurrencesByTypeValueDatatypeScope(final String type, final String value, final String datatype, final String[] scope, ITopicMap tm, final String parent) {
 		String _scope = "";
 		for(String str : scope) {
 			_scope += "\""+str+"\", ";
 		}
 		if(scope.length != 0) _scope = _scope.substring(0, _scope.length() - 2);
 		else _scope = "\"none\"";
-		String result = getMethod("_design/couchtm/_view/getoccurrencesbytypevaluedatatypescope", "[\""+tm.getId()+"\", \""+type+"\", \""+value+"\", \""+datatype+"\", ["+_scope+"], \""+parent+"\"]");
-		Set<IOccurrence> occs = CollectionFactory.createSet();
-		int i = 0;
-		while(i >= 0) {
-			IOccurrence occ = (IOccurrence) JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager(), i);
-			if(occ == null) i = -1;
-			else {
-				occs.add(occ);
-				i++;
+		Set<IOccurrence> occs = getConstructs("_design/couchtm/_view/getoccurrencesbytypevaluedatatypescope", "[\""+tm.getId()+"\", \""+type+"\", \""+value+"\", \""+datatype+"\", ["+_scope+"], \""+parent+"\"]", tm);
+		return withBatch(occs, IConstant.OCCURRENCE, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				IOccurrence occ = (IOccurrence) construct;
+				return same(occ.getType(), type) && value.equals(occ.getValue()) && datatype.equals(occ.getDatatype().getReference()) 
+					&& same(occ.getScope(), scope) && same(occ.getParent(), parent);
 			}
-		}
-		return occs;
+		});
 	}
 	
 	/**
@@ -1006,9 +1198,73 @@ public class DB extends SysDB{
 	 * @param tm topic map
 	 * @return construct construct
 	 */
-	public IConstruct getConstructByTm(Locator locator, ITopicMap tm) {
-		String result = getMethod("_design/couchtm/_view/getconstructbylocator","[\""+tm.getId()+"\", \""+locator.getReference()+"\"]");
-		return JSONToObject.JSONToConstruct(result, tm, tm.getTopicMapObjectManager());	
+	public IConstruct getConstructByTm(final Locator locator, ITopicMap tm) {
+		Set<IConstruct> constructs = getConstructs("_design/couchtm/_view/getconstructbylocator","[\""+tm.getId()+"\", \""+locator.getReference()+"\"]", tm);
+		constructs = withBatch(constructs, null, new PendingMatcher() {
+			public boolean matches(IConstruct construct) {
+				return construct.getItemIdentifiers().contains(locator);
+			}
+		});
+		return constructs.isEmpty() ? null : constructs.iterator().next();	
+	}
+	
+	/**
+	 * Brings the result of a view query up to date with the batch of the current thread,
+	 * the views do not know its changes yet. Results whose document is changed or deleted 
+	 * by the batch are removed, the constructs of the batch which the matcher accepts are 
+	 * added. Identity checks inside a batch see the constructs created by it this way.
+	 * 
+	 * @param constructs result of the view query
+	 * @param documentType document type of the results, <tt>null</tt> for any
+	 * @param matcher decides whether a construct of the batch belongs to the result
+	 * @return constructs
+	 */
+	@SuppressWarnings("unchecked")
+	private <T extends IConstruct> Set<T> withBatch(Set<T> constructs, String documentType, PendingMatcher matcher) {
+		WriteBuffer batch = currentBatch();
+		if(batch == null) return constructs;
+		Iterator<T> it = constructs.iterator();
+		while(it.hasNext()) {
+			T construct = it.next();
+			IConstruct owner = isEmbedded(construct) ? getOwner(construct) : construct;
+			String id = (owner == null) ? construct.getId() : owner.getId();
+			if(batch.get(id) != null || batch.isDeleted(id)) it.remove();
+		}
+		for(IConstruct pending : batch.getPending()) {
+			List<IConstruct> candidates = CollectionFactory.createList();
+			candidates.add(pending);
+			//embedded constructs are saved with their owner
+			if(aggregateTopics && IConstant.TOPIC.equals(pending.getDocumentType())) {
+				for(Name name : ((ITopic) pending).getNames()) {
+					candidates.add((IConstruct) name);
+					for(Variant variant : name.getVariants()) candidates.add((IConstruct) variant);
+				}
+				for(Occurrence occ : ((ITopic) pending).getOccurrences()) candidates.add((IConstruct) occ);
+			} else if(embeddedRoles && IConstant.ASSOCIATION.equals(pending.getDocumentType())) {
+				for(Role role : ((IAssociation) pending).getRoles()) candidates.add((IConstruct) role);
+			}
+			for(IConstruct candidate : candidates) {
+				if(documentType != null && !documentType.equals(candidate.getDocumentType())) continue;
+				if(matcher.matches(candidate)) constructs.add((T) candidate);
+			}
+		}
+		return constructs;
+	}
+	
+	//whether the construct has the given id
+	private static boolean same(Construct construct, String id) {
+		return construct != null && construct.getId().equals(id);
+	}
+	
+	//whether the constructs have exactly the given ids
+	private static boolean same(Collection<? extends Construct> constructs, String[] ids) {
+		if(constructs.size() != ids.length) return false;
+		Set<String> remaining = CollectionFactory.createSet(ids.length);
+		for(String id : ids) remaining.add(id);
+		for(Construct construct : constructs) {
+			if(!remaining.remove(construct.getId())) return false;
+		}
+		return remaining.isEmpty();
 	}
 	
 	/**
@@ -1018,6 +1274,414 @@ public class DB extends SysDB{
 	 * @param rev revision
 	 */
 	public void deleteDocument(String id, String rev) {
+		if(disk != null) disk.remove(id);
+		WriteBuffer batch = currentBatch();
+		WriteBuffer target = (batch != null) ? batch : buffer;
+		if(target != null) {
+			target.delete(id, rev);
+			return;
+		}
 		deleteMethod(id, rev);
 	}
+	
+	/**
+	 * Saves a construct. In write-behind mode or inside a batch it is only
+	 * added to the buffer.
+	 * 
+	 * @param construct construct
+	 */
+	private void save(IConstruct construct) {
+		if(isEmbedded(construct)) {
+			//stored in the document of its topic or association
+			IConstruct owner = getOwner(construct);
+			if(owner != null) save(owner);
+			return;
+		}
+		if(disk != null) disk.remove(construct.getId());
+		WriteBuffer batch = currentBatch();
+		WriteBuffer target = (batch != null) ? batch : buffer;
+		if(target != null) {
+			if(target.add(construct)) writePending();
+			return;
+		}
+		try {
+			String result = putMethod(dbName+"/"+construct.getId(), document(construct).toString());
+			construct.setRev(JSONToObject.getRev(result));
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Creates the document of a new construct with a content derived ID. A PUT 
+	 * without revision either creates the document or fails with a conflict if
+	 * the construct already exists. Embedded and buffered constructs are checked 
+	 * for existence first.
+	 * 
+	 * @param construct construct
+	 * @param tm topic map
+	 * @return <tt>true</tt> if the construct was created, <tt>false</tt> if it exists
+	 * @throws TMAPIRuntimeException if the document could neither be created nor was found to exist
+	 */
+	public boolean create(IConstruct construct, ITopicMap tm) {
+		if(disk != null && !isEmbedded(construct)) disk.remove(construct.getId());
+		if(isEmbedded(construct) || currentBatch() != null || buffer != null) {
+			if(getConstruct(construct.getId(), tm) != null) return false;
+			save(construct);
+			return true;
+		}
+		String result;
+		try {
+			result = createMethod(dbName+"/"+construct.getId(), document(construct).toString());
+		} catch(JSONException e) {
+			throw new TMAPIRuntimeException(e);
+		}
+		if(result == null) return false;
+		String rev = JSONToObject.getRev(result);
+		if(rev.equals("")) throw new TMAPIRuntimeException("The document "+construct.getId()+" could not be created");
+		construct.setRev(rev);
+		return true;
+	}
+	
+	/**
+	 * Returns the document of a construct. In the aggregate layout the document of 
+	 * a topic contains its names, variants and occurrences, with embedded roles the
+	 * document of an association contains its roles.
+	 * 
+	 * @param construct construct
+	 * @return document
+	 * @throws JSONException
+	 */
+	private JSONObject document(IConstruct construct) throws JSONException {
+		JSONObject doc = construct.asJSONObject();
+		doc.put("_id", construct.getId());
+		if(aggregateTopics && construct.getDocumentType().equals(IConstant.TOPIC)) {
+			ITopic topic = (ITopic) construct;
+			JSONArray embedded = new JSONArray();
+			for(Name name : topic.getNames()) {
+				embedded.put(embeddedDocument((IConstruct) name));
+				for(Variant variant : name.getVariants()) embedded.put(embeddedDocument((IConstruct) variant));
+			}
+			for(Occurrence occ : topic.getOccurrences()) embedded.put(embeddedDocument((IConstruct) occ));
+			if(embedded.length() > 0) doc.put("embedded", embedded);
+		} else if(embeddedRoles && construct.getDocumentType().equals(IConstant.ASSOCIATION)) {
+			JSONArray embedded = new JSONArray();
+			for(Role role : ((IAssociation) construct).getRoles()) embedded.put(embeddedDocument((IConstruct) role));
+			if(embedded.length() > 0) doc.put("embedded", embedded);
+		}
+		return doc;
+	}
+	
+	/**
+	 * Returns the object of a construct which is embedded in the document of its owner.
+	 * 
+	 * @param construct construct
+	 * @return object
+	 * @throws JSONException
+	 */
+	private JSONObject embeddedDocument(IConstruct construct) throws JSONException {
+		JSONObject doc = construct.asJSONObject();
+		doc.remove("_rev");
+		doc.put("_id", construct.getId());
+		return doc;
+	}
+	
+	/**
+	 * Checks whether a construct is embedded in the document of another construct.
+	 * 
+	 * @param construct construct
+	 * @return boolean
+	 */
+	boolean isEmbedded(IConstruct construct) {
+		String documentType = construct.getDocumentType();
+		if(embeddedRoles && IConstant.ROLE.equals(documentType)) return true;
+		if(!aggregateTopics) return false;
+		return IConstant.NAME.equals(documentType) || IConstant.OCCURRENCE.equals(documentType) || IConstant.VARIANT.equals(documentType);
+	}
+	
+	/**
+	 * Returns the construct whose document contains the given embedded construct.
+	 * 
+	 * @param construct embedded construct
+	 * @return owner or <tt>null</tt>
+	 */
+	private IConstruct getOwner(IConstruct construct) {
+		Construct parent = construct.getParent();
+		if(parent != null && IConstant.VARIANT.equals(construct.getDocumentType())) parent = parent.getParent();
+		return (IConstruct) parent;
+	}
+	
+	/**
+	 * Deletes the document of a construct. Embedded constructs have no document
+	 * of their own, they are removed with the next save of their owner.
+	 * 
+	 * @param construct construct
+	 */
+	public void deleteConstruct(IConstruct construct) {
+		if(isEmbedded(construct)) return;
+		//waits for a flush of the construct, otherwise its new revision would be missed
+		synchronized(flushLock) {
+			deleteDocument(construct.getId(), construct.getRev());
+		}
+	}
+	
+	/**
+	 * Writes all pending constructs of the write-behind mode to the database and 
+	 * reports the documents which could not be written since the last flush.
+	 * 
+	 * @throws TMAPIRuntimeException if documents could not be written, the message
+	 * contains their ids and errors
+	 */
+	public void flush() {
+		writePending();
+		Map<String, String> failed;
+		synchronized(failures) {
+			if(failures.isEmpty()) return;
+			failed = CollectionFactory.createMap(failures);
+			failures.clear();
+		}
+		throw new TMAPIRuntimeException("Documents could not be written to the database: "+failed);
+	}
+	
+	/**
+	 * Writes all pending constructs of the write-behind mode to the database. 
+	 * Documents which could not be written are kept for the next <tt>flush</tt>.
+	 */
+	private void writePending() {
+		if(buffer == null) return;
+		Map<String, String> failed = write(buffer, false);
+		if(failed.isEmpty()) return;
+		synchronized(failures) {
+			failures.putAll(failed);
+		}
+	}
+	
+	/**
+	 * Starts a batch of the current thread. Until the batch is committed all saves 
+	 * and deletions of the thread are collected, other threads write as before. 
+	 * Nested batches are part of the outermost batch.
+	 */
+	public void beginBatch() {
+		Batch batch = batches.get();
+		if(batch != null) {
+			batch.depth++;
+			return;
+		}
+		writePending();
+		batch = new Batch();
+		batches.set(batch);
+		openBatches.add(batch.buffer);
+	}
+	
+	/**
+	 * Returns the pending saves of the batch of the current thread.
+	 * 
+	 * @return buffer or <tt>null</tt> if the thread runs no batch
+	 */
+	private WriteBuffer currentBatch() {
+		Batch batch = batches.get();
+		return batch == null ? null : batch.buffer;
+	}
+	
+	/**
+	 * Commits the current batch with a single <tt>_bulk_docs</tt> request. 
+	 * Nested batches are committed with the outermost batch.
+	 * 
+	 * @param allOrNothing <tt>true</tt> if either all or none of the documents should be saved
+	 * @return id and error of each document which could not be written, empty if all were written
+	 */
+	public Map<String, String> commitBatch(boolean allOrNothing) {
+		Batch batch = batches.get();
+		if(batch == null || --batch.depth > 0) return CollectionFactory.createMap();
+		batches.remove();
+		try {
+			return write(batch.buffer, allOrNothing);
+		} finally {
+			openBatches.remove(batch.buffer);
+		}
+	}
+	
+	/**
+	 * Discards the current batch including all outer batches.
+	 * 
+	 * @return ids of the documents the batch would have saved or deleted
+	 */
+	public Set<String> discardBatch() {
+		Set<String> ids = CollectionFactory.createSet();
+		Batch batch = batches.get();
+		if(batch == null) return ids;
+		batches.remove();
+		openBatches.remove(batch.buffer);
+		for(IConstruct construct : batch.buffer.drain()) ids.add(construct.getId());
+		ids.addAll(batch.buffer.drainDeletions().keySet());
+		return ids;
+	}
+	
+	//writes all pending documents of the buffer, returns the documents which could not be written
+	private Map<String, String> write(WriteBuffer writeBuffer, boolean allOrNothing) {
+		synchronized(flushLock) {
+			List<IConstruct> constructs;
+			Map<String, String> deletions;
+			synchronized(writeBuffer) {
+				if(writeBuffer.isEmpty()) return CollectionFactory.createMap();
+				constructs = writeBuffer.drain();
+				deletions = writeBuffer.drainDeletions();
+			}
+			return bulkSave(constructs, deletions, allOrNothing);
+		}
+	}
+	
+	/**
+	 * Saves the constructs and deletes the documents with a single <tt>_bulk_docs</tt> 
+	 * request and sets the new revisions.
+	 * 
+	 * @param constructs constructs
+	 * @param deletions map of document id to revision of the documents to be deleted 
+	 * @param allOrNothing <tt>true</tt> if either all or none of the documents should be saved 
+	 * @return id and error of each document which could not be written, empty if all were written
+	 */
+	public Map<String, String> bulkSave(Collection<? extends IConstruct> constructs, Map<String, String> deletions, boolean allOrNothing) {
+		Map<String, String> failed = CollectionFactory.createMap();
+		if(constructs.isEmpty() && deletions.isEmpty()) return failed;
+		String result = null;
+		try {
+			JSONArray docs = new JSONArray();
+			for(IConstruct construct : constructs) docs.put(document(construct));
+			for(Map.Entry<String, String> deletion : deletions.entrySet()) {
+				JSONObject doc = new JSONObject();
+				doc.put("_id", deletion.getKey());
+				doc.put("_rev", deletion.getValue());
+				doc.put("_deleted", true);
+				docs.put(doc);
+			}
+			JSONObject body = new JSONObject();
+			if(allOrNothing) body.put("all_or_nothing", true);
+			body.put("docs", docs);
+			result = postMethod(dbName+"/_bulk_docs", body.toString());
+		} catch(Exception e) {
+			e.printStackTrace();
+			result = "[]";
+		}
+		Map<String, String> revs = JSONToObject.getBulkRevs(result, failed);
+		for(IConstruct construct : constructs) {
+			String rev = revs.get(construct.getId());
+			if(rev != null) construct.setRev(rev);
+			else if(!failed.containsKey(construct.getId())) failed.put(construct.getId(), "not written");
+		}
+		for(String id : deletions.keySet()) {
+			if(!revs.containsKey(id) && !failed.containsKey(id)) failed.put(id, "not deleted");
+		}
+		return failed;
+	}
+	
+	/**
+	 * Checks whether the document has changes in the write-behind buffer or the
+	 * batch of any thread which are not yet written.
+	 * 
+	 * @param id document id
+	 * @return boolean
+	 */
+	public boolean isPending(String id) {
+		for(WriteBuffer batch : openBatches) {
+			if(batch.get(id) != null) return true;
+		}
+		return buffer != null && buffer.get(id) != null;
+	}
+	
+	/**
+	 * Returns the current update sequence of the database.
+	 * 
+	 * @return sequence or <tt>null</tt> if the database is not reachable
+	 */
+	public Object getUpdateSequence() {
+		String result = getTopLevel(dbName);
+		try {
+			return new JSONObject(result).opt("update_seq");
+		} catch(JSONException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Retrieves a local document. Local documents are neither replicated nor 
+	 * reported by the <tt>_changes</tt> feed.
+	 * 
+	 * @param name name of the document without <tt>_local/</tt>
+	 * @return document or <tt>null</tt> if there is none
+	 */
+	public JSONObject getLocalDocument(String name) {
+		String result = super.getMethod("_local/"+name, null, dbName);
+		try {
+			JSONObject doc = new JSONObject(result);
+			return doc.has("_id") ? doc : null;
+		} catch(JSONException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Writes a local document, the document has to contain the revision it replaces.
+	 * 
+	 * @param name name of the document without <tt>_local/</tt>
+	 * @param doc document
+	 * @return new revision or an empty string if the document was not written
+	 */
+	public String saveLocalDocument(String name, JSONObject doc) {
+		String result = putMethod(dbName+"/_local/"+name, doc.toString());
+		return JSONToObject.getField(result, "rev");
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.utils.SysDB#releaseConnection()
+	 */
+	@Override
+	public void releaseConnection() {
+		writePending();
+		if(disk != null) disk.close();
+		super.releaseConnection();
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.utils.SysDB#getMethod(java.lang.String, java.lang.String, java.lang.String)
+	 */
+	@Override
+	protected String getMethod(String query, String key, String db) {
+		writePending();
+		return super.getMethod(query, key, db);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.utils.SysDB#getRows(java.lang.String, java.util.List, de.topicmapslab.couchtm.internal.api.IRowMapper, java.lang.String, java.util.Collection)
+	 */
+	@Override
+	protected <T, C extends Collection<? super T>> C getRows(String query, List<NameValuePair> parameters, IRowMapper<T> mapper, String shared, C target) {
+		writePending();
+		return super.getRows(query, parameters, mapper, shared, target);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.utils.SysDB#postRows(java.lang.String, java.util.List, java.lang.String, de.topicmapslab.couchtm.internal.api.IRowMapper, java.util.Collection)
+	 */
+	@Override
+	protected <T, C extends Collection<? super T>> C postRows(String query, List<NameValuePair> parameters, String entity, IRowMapper<T> mapper, C target) {
+		writePending();
+		return super.postRows(query, parameters, entity, mapper, target);
+	}
+	
+	//pending saves of a batch and the number of nested batches
+	private static class Batch {
+		final WriteBuffer buffer = new WriteBuffer(Integer.MAX_VALUE, Long.MAX_VALUE);
+		int depth = 1;
+	}
+	
+	//decides whether a construct of a batch belongs to the result of a view query
+	private interface PendingMatcher {
+		boolean matches(IConstruct construct);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,390 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.CRC32;
+
+/**
+ * Second-level cache of documents on disk which survives restarts. The documents
+ * are appended with their revision to a fixed number of memory-mapped segment 
+ * files. When the last segment is full the oldest one is emptied and reused, all
+ * documents in it are dropped. The index is rebuilt from the segments on open.
+ * The sequence of the database up to which the documents are known to be current 
+ * is kept in the same directory, so it always belongs to these documents.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class DiskCache {
+	
+	public static final long DEFAULT_SIZE = 256L * 1024 * 1024;
+	
+	private static final int SEGMENTS = 8;
+	private static final int MAGIC = 0x43544d32;
+	//magic and generation
+	private static final int HEADER = 12;
+	//length and checksum of a record
+	private static final int RECORD_HEADER = 8;
+	private static final String SEQUENCE = "sequence";
+	
+	private final File dir;
+	private final Segment[] segments;
+	private final ConcurrentMap<String, Slot> index;
+	private final RandomAccessFile lockFile;
+	private final FileLock lock;
+	//segment documents are appended to, guarded by this
+	private Segment current;
+	private boolean closed = false;
+	
+	/**
+	 * Opens the cache in the given directory, which is created if it does not exist. 
+	 * A directory can only be used by one cache at a time.
+	 * 
+	 * @param dir directory
+	 * @param size size of all segment files in bytes
+	 * @throws IOException if the directory cannot be used
+	 */
+	public DiskCache(File dir, long size) throws IOException {
+		if(!dir.isDirectory() && !dir.mkdirs()) throw new IOException("Cannot create "+dir);
+		this.dir = dir;
+		lockFile = new RandomAccessFile(new File(dir, "lock"), "rw");
+		FileLock locked;
+		try {
+			locked = lockFile.getChannel().tryLock();
+		} catch(OverlappingFileLockException e) {
+			//locked by another cache of this VM
+			locked = null;
+		}
+		lock = locked;
+		if(lock == null) {
+			lockFile.close();
+			throw new IOException(dir+" is used by another cache");
+		}
+		int segmentSize = (int) Math.min(Math.max(size / SEGMENTS, HEADER + 4096), Integer.MAX_VALUE);
+		index = new ConcurrentHashMap<String, Slot>();
+		segments = new Segment[SEGMENTS];
+		for(int i = 0; i < SEGMENTS; i++) segments[i] = new Segment(new File(dir, "segment-"+i), segmentSize);
+		//replays the segments from the oldest to the newest
+		Segment[] ordered = segments.clone();
+		Arrays.sort(ordered, new Comparator<Segment>() {
+			public int compare(Segment first, Segment second) {
+				return first.generation < second.generation ? -1 : (first.generation == second.generation ? 0 : 1);
+			}
+		});
+		for(Segment segment : ordered) {
+			if(segment.generation > 0) scan(segment);
+		}
+		current = ordered[SEGMENTS - 1];
+		if(current.generation == 0) recycle(current, 1);
+	}
+	
+	/**
+	 * Returns the cached revision of a document.
+	 * 
+	 * @param id document id
+	 * @return revision or <tt>null</tt> if the document is not cached
+	 */
+	public String getRevision(String id) {
+		Slot slot = index.get(id);
+		return slot == null ? null : slot.rev;
+	}
+	
+	/**
+	 * Returns a cached document.
+	 * 
+	 * @param id document id
+	 * @return document or <tt>null</tt> if the document is not cached
+	 */
+	public String get(String id) {
+		Slot slot = index.get(id);
+		if(slot == null) return null;
+		byte[] bytes = new byte[slot.length];
+		ByteBuffer buffer = slot.segment.buffer.duplicate();
+		buffer.position(slot.offset);
+		buffer.get(bytes);
+		//the segment was reused while it was read
+		if(slot.segment.generation != slot.generation) return null;
+		return decode(bytes);
+	}
+	
+	/**
+	 * Appends a document to the cache.
+	 * 
+	 * @param id document id
+	 * @param rev revision
+	 * @param doc document
+	 */
+	public void put(String id, String rev, String doc) {
+		Slot slot = index.get(id);
+		if(slot != null && slot.rev.equals(rev)) return;
+		append(id, rev, encode(doc));
+	}
+	
+	/**
+	 * Removes a document from the cache.
+	 * 
+	 * @param id document id
+	 */
+	public void remove(String id) {
+		if(index.containsKey(id)) append(id, "", new byte[0]);
+	}
+	
+	/**
+	 * Drops all documents and the stored sequence.
+	 */
+	public synchronized void clear() {
+		if(closed) return;
+		long generation = current.generation;
+		for(Segment segment : segments) recycle(segment, ++generation);
+		current = segments[SEGMENTS - 1];
+		index.clear();
+		new File(dir, SEQUENCE).delete();
+	}
+	
+	/**
+	 * Returns the sequence of the database up to which the cached documents are 
+	 * known to be current.
+	 * 
+	 * @return sequence or <tt>null</tt> if none was stored
+	 */
+	public synchronized String getSequence() {
+		File file = new File(dir, SEQUENCE);
+		if(!file.isFile()) return null;
+		try {
+			RandomAccessFile in = new RandomAccessFile(file, "r");
+			try {
+				byte[] bytes = new byte[(int) in.length()];
+				in.readFully(bytes);
+				return bytes.length == 0 ? null : decode(bytes);
+			} finally {
+				in.close();
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Stores the sequence of the database up to which the cached documents are 
+	 * current. The documents are written to disk first, so the sequence never 
+	 * covers changes the segments do not have.
+	 * 
+	 * @param seq sequence
+	 */
+	public synchronized void setSequence(String seq) {
+		if(closed) return;
+		for(Segment segment : segments) segment.buffer.force();
+		File tmp = new File(dir, SEQUENCE+".tmp");
+		try {
+			RandomAccessFile out = new RandomAccessFile(tmp, "rw");
+			try {
+				byte[] bytes = encode(seq);
+				out.setLength(0);
+				out.write(bytes);
+				out.getFD().sync();
+			} finally {
+				out.close();
+			}
+			File file = new File(dir, SEQUENCE);
+			if(!tmp.renameTo(file)) {
+				file.delete();
+				if(!tmp.renameTo(file)) throw new IOException("Cannot write "+file);
+			}
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Writes the segments to disk and releases the directory.
+	 */
+	public synchronized void close() {
+		if(closed) return;
+		closed = true;
+		for(Segment segment : segments) segment.buffer.force();
+		try {
+			for(Segment segment : segments) segment.file.close();
+			lock.release();
+			lockFile.close();
+		} catch(IOException e) {
+			e.printStackTrace();
+		}
+	}
+	
+	/**
+	 * Returns the number of cached documents.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return index.size();
+	}
+	
+	//appends a record, a record without document removes the document
+	private synchronized void append(String id, String rev, byte[] doc) {
+		if(closed) return;
+		byte[] idBytes = encode(id);
+		byte[] revBytes = encode(rev);
+		int length = 12 + idBytes.length + revBytes.length + doc.length;
+		if(HEADER + RECORD_HEADER + length > current.capacity) {
+			//the older revision must not come back when the segments are scanned again
+			if(doc.length > 0 && index.containsKey(id)) append(id, "", new byte[0]);
+			return;
+		}
+		if(current.position + RECORD_HEADER + length > current.capacity) {
+			Segment oldest = current;
+			for(Segment segment : segments) {
+				if(segment.generation < oldest.generation) oldest = segment;
+			}
+			recycle(oldest, current.generation + 1);
+			current = oldest;
+		}
+		ByteBuffer record = ByteBuffer.allocate(RECORD_HEADER + length);
+		record.putInt(length);
+		record.putInt(0);
+		record.putInt(idBytes.length).put(idBytes);
+		record.putInt(revBytes.length).put(revBytes);
+		record.putInt(doc.length).put(doc);
+		record.putInt(4, checksum(current.generation, record.array(), RECORD_HEADER, length));
+		ByteBuffer buffer = current.buffer.duplicate();
+		buffer.position(current.position);
+		buffer.put(record.array());
+		int offset = current.position + RECORD_HEADER + length - doc.length;
+		current.position += RECORD_HEADER + length;
+		if(doc.length == 0) index.remove(id);
+		else index.put(id, new Slot(current, offset, doc.length, rev));
+	}
+	
+	//empties a segment and drops its documents from the index
+	private void recycle(Segment segment, long generation) {
+		segment.generation = generation;
+		for(Iterator<Slot> it = index.values().iterator(); it.hasNext();) {
+			if(it.next().segment == segment) it.remove();
+		}
+		segment.buffer.putInt(0, MAGIC);
+		segment.buffer.putLong(4, generation);
+		segment.position = HEADER;
+	}
+	
+	//adds the records of a segment to the index, stops at the first invalid record
+	private void scan(Segment segment) {
+		ByteBuffer buffer = segment.buffer.duplicate();
+		int position = HEADER;
+		while(position + RECORD_HEADER <= segment.capacity) {
+			int length = buffer.getInt(position);
+			if(length < 12 || position + RECORD_HEADER + length > segment.capacity) break;
+			byte[] record = new byte[length];
+			buffer.position(position + RECORD_HEADER);
+			buffer.get(record);
+			//records of an earlier use of the segment fail the checksum
+			if(checksum(segment.generation, record, 0, length) != buffer.getInt(position + 4)) break;
+			ByteBuffer fields = ByteBuffer.wrap(record);
+			String id = decode(field(fields));
+			String rev = decode(field(fields));
+			int docLength = fields.getInt();
+			if(docLength == 0) index.remove(id);
+			else index.put(id, new Slot(segment, position + RECORD_HEADER + fields.position(), docLength, rev));
+			position += RECORD_HEADER + length;
+		}
+		segment.position = position;
+	}
+	
+	private static byte[] field(ByteBuffer fields) {
+		byte[] bytes = new byte[fields.getInt()];
+		fields.get(bytes);
+		return bytes;
+	}
+	
+	private static int checksum(long generation, byte[] bytes, int offset, int length) {
+		CRC32 crc = new CRC32();
+		for(int i = 0; i < 8; i++) crc.update((int) (generation >>> (i * 8)));
+		crc.update(bytes, offset, length);
+		return (int) crc.getValue();
+	}
+	
+	private static byte[] encode(String str) {
+		try {
+			return str.getBytes("UTF-8");
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	private static String decode(byte[] bytes) {
+		try {
+			return new String(bytes, "UTF-8");
+		} catch(UnsupportedEncodingException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+	
+	//memory-mapped segment file
+	private static final class Segment {
+		
+		private final RandomAccessFile file;
+		private final MappedByteBuffer buffer;
+		private final int capacity;
+		//generation of the current use, 0 if the segment was never used
+		private volatile long generation;
+		//end of the last record, guarded by the cache
+		private int position;
+		
+		Segment(File path, int capacity) throws IOException {
+			file = new RandomAccessFile(path, "rw");
+			if(file.length() != capacity) file.setLength(capacity);
+			this.capacity = capacity;
+			buffer = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+			generation = buffer.getInt(0) == MAGIC ? buffer.getLong(4) : 0;
+			position = HEADER;
+		}
+		
+	}
+	
+	//location of a cached document
+	private static final class Slot {
+		
+		private final Segment segment;
+		private final long generation;
+		private final int offset;
+		private final int length;
+		private final String rev;
+		
+		Slot(Segment segment, int offset, int length, String rev) {
+			this.segment = segment;
+			generation = segment.generation;
+			this.offset = offset;
+			this.length = length;
+			this.rev = rev;
+		}
+		
+	}
+	
+}
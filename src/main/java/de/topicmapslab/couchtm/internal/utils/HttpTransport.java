@@ -0,0 +1,177 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.http.HttpVersion;
+import org.apache.http.client.HttpClient;
+import org.apache.http.conn.params.ConnManagerParams;
+import org.apache.http.conn.params.ConnPerRouteBean;
+import org.apache.http.conn.scheme.PlainSocketFactory;
+import org.apache.http.conn.scheme.Scheme;
+import org.apache.http.conn.scheme.SchemeRegistry;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.SingleClientConnManager;
+import org.apache.http.impl.conn.tsccm.ThreadSafeClientConnManager;
+import org.apache.http.params.BasicHttpParams;
+import org.apache.http.params.CoreProtocolPNames;
+import org.apache.http.params.HttpConnectionParams;
+import org.apache.http.params.HttpParams;
+
+/**
+ * Thread-safe HTTP transport with a pool of keep-alive connections.
+ * One instance is shared by all databases of a topic map system.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class HttpTransport {
+	
+	public static final int DEFAULT_MAX_CONNECTIONS = 20;
+	public static final int DEFAULT_MAX_CONNECTIONS_PER_ROUTE = 20;
+	public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+	
+	private final ThreadSafeClientConnManager connManager;
+	private final HttpClient client;
+	private final Thread evictor;
+	private volatile boolean shutdown = false;
+	//running reads by request, shared by concurrent identical requests
+	private final ConcurrentMap<String, FutureTask<?>> reads;
+	//number of completed writes, reads only join requests started after the last write
+	private final AtomicLong writes;
+	
+	public HttpTransport() {
+		this(DEFAULT_MAX_CONNECTIONS, DEFAULT_MAX_CONNECTIONS_PER_ROUTE, DEFAULT_IDLE_TIMEOUT);
+	}
+	
+	/**
+	 * Creates a transport.
+	 * 
+	 * @param maxConnections maximum number of pooled connections
+	 * @param maxConnectionsPerRoute maximum number of pooled connections per host
+	 * @param idleTimeout time in milliseconds after which idle connections are closed
+	 */
+	public HttpTransport(int maxConnections, int maxConnectionsPerRoute, final long idleTimeout) {
+		HttpParams params = new BasicHttpParams();
+		params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
+		ConnManagerParams.setMaxTotalConnections(params, maxConnections);
+		ConnManagerParams.setMaxConnectionsPerRoute(params, new ConnPerRouteBean(maxConnectionsPerRoute));
+		SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		reads = new ConcurrentHashMap<String, FutureTask<?>>();
+		writes = new AtomicLong();
+		connManager = new ThreadSafeClientConnManager(params, schemeRegistry);
+		client = new DefaultHttpClient(connManager, params);
+		evictor = new Thread("couchtm-idle-connection-evictor") {
+			public void run() {
+				try {
+					while(!shutdown) {
+						synchronized(this) {
+							wait(idleTimeout);
+						}
+						connManager.closeExpiredConnections();
+						connManager.closeIdleConnections(idleTimeout, TimeUnit.MILLISECONDS);
+					}
+				} catch(InterruptedException e) {
+					//shutdown
+				}
+			}
+		};
+		evictor.setDaemon(true);
+		evictor.start();
+	}
+	
+	/**
+	 * Returns the pooled client.
+	 * 
+	 * @return client
+	 */
+	public HttpClient getClient() {
+		return client;
+	}
+	
+	/**
+	 * Creates a client with a single connection of its own, outside the pool. Used 
+	 * for long running requests like the <tt>_changes</tt> feed, which would hold a 
+	 * pooled connection for their whole lifetime. The client has to be shut down by 
+	 * the caller, which also aborts a running request.
+	 * 
+	 * @param socketTimeout time in milliseconds without data after which a read fails, <tt>0</tt> for none
+	 * @return client
+	 */
+	public HttpClient createDedicatedClient(int socketTimeout) {
+		HttpParams params = new BasicHttpParams();
+		params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
+		HttpConnectionParams.setSoTimeout(params, socketTimeout);
+		SchemeRegistry schemeRegistry = new SchemeRegistry();
+		schemeRegistry.register(new Scheme("http", PlainSocketFactory.getSocketFactory(), 80));
+		return new DefaultHttpClient(new SingleClientConnManager(params, schemeRegistry), params);
+	}
+	
+	/**
+	 * Executes a read or joins an identical read which is already running and was 
+	 * started after the last write, all callers get the same result.
+	 * 
+	 * @param request method, URI and anything else identifying the request
+	 * @param read executes the request
+	 * @return result
+	 * @throws Exception exception of the read
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> T coalesce(String request, Callable<T> read) throws Exception {
+		String key = request + '\u0000' + writes.get();
+		FutureTask<T> task = new FutureTask<T>(read);
+		FutureTask<T> running = (FutureTask<T>) reads.putIfAbsent(key, task);
+		if(running == null) {
+			running = task;
+			try {
+				task.run();
+			} finally {
+				reads.remove(key, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof Exception) throw (Exception) e.getCause();
+			throw e;
+		}
+	}
+	
+	/**
+	 * Called after a write, later reads do not join reads started before.
+	 */
+	public void written() {
+		writes.incrementAndGet();
+	}
+	
+	/**
+	 * Closes all pooled connections and stops the idle connection evictor.
+	 */
+	public void shutdown() {
+		if(shutdown) return;
+		shutdown = true;
+		evictor.interrupt();
+		connManager.shutdown();
+	}
+}
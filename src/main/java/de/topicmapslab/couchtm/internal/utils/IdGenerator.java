@@ -16,8 +16,17 @@
 
 package de.topicmapslab.couchtm.internal.utils;
 
+import java.io.UnsupportedEncodingException;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
+import org.tmapi.core.TMAPIRuntimeException;
+
+import de.topicmapslab.couchtm.internal.api.IConstruct;
+import de.topicmapslab.couchtm.internal.api.IIdGenerator;
+
 /**
  * Class used to generate IDs.
  * 
@@ -34,4 +43,58 @@ public final class IdGenerator {
         return UUID.randomUUID().toString();
     }
     
+    /**
+     * Creates the ID generator for the given strategy, <tt>random</tt>, <tt>time</tt> 
+     * or the class name of an {@link IIdGenerator} with a public no-argument constructor.
+     * 
+     * @param strategy strategy
+     * @return ID generator
+     * @throws TMAPIRuntimeException if the class can not be found or instantiated, 
+     * or is no {@link IIdGenerator}
+     */
+    public static IIdGenerator createGenerator(String strategy) {
+        if(strategy == null || strategy.equals("random")) return new RandomIdGenerator();
+        if(strategy.equals("time")) return new TimeIdGenerator();
+        try {
+            return Class.forName(strategy).asSubclass(IIdGenerator.class).getDeclaredConstructor().newInstance();
+        } catch(Exception e) {
+            throw new TMAPIRuntimeException("Invalid ID_GENERATOR "+strategy, e);
+        }
+    }
+    
+    /**
+     * Generates an ID derived from the given parts. Equal parts always result 
+     * in the same ID.
+     * 
+     * @param parts parts
+     * @return ID
+     */
+    public static String contentId(String... parts) {
+        StringBuilder sb = new StringBuilder();
+        for(String part : parts) {
+            sb.append(part == null ? "" : part).append('\u0000');
+        }
+        try {
+            return UUID.nameUUIDFromBytes(sb.toString().getBytes("UTF-8")).toString();
+        } catch(UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+    
+    /**
+     * Returns the sorted IDs of the constructs as a single string, used for 
+     * scopes in content IDs.
+     * 
+     * @param constructs constructs
+     * @return IDs
+     */
+    public static String sortedIds(Collection<? extends IConstruct> constructs) {
+        List<String> ids = CollectionFactory.createList(constructs.size());
+        for(IConstruct construct : constructs) ids.add(construct.getId());
+        Collections.sort(ids);
+        StringBuilder sb = new StringBuilder();
+        for(String id : ids) sb.append(id).append(' ');
+        return sb.toString();
+    }
+    
 }
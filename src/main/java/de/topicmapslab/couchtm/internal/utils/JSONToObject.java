@@ -18,6 +18,10 @@ package de.topicmapslab.couchtm.internal.utils;
 
 import org.json.*;
 
+import java.io.Reader;
+import java.io.StringReader;
+import java.util.Collection;
+import java.util.List;
 import java.util.Set;
 import java.util.HashSet;
 import java.util.Map;
@@ -36,7 +40,7 @@ import de.topicmapslab.couchtm.internal.api.IRole;
 import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.IConstant;
 import de.topicmapslab.couchtm.internal.api.IReifiable;
-import de.topicmapslab.couchtm.core.ConstructImpl;
+import de.topicmapslab.couchtm.internal.api.IRowMapper;
 import de.topicmapslab.couchtm.core.LocatorImpl;
 import de.topicmapslab.couchtm.core.TopicImpl;
 import de.topicmapslab.couchtm.core.TopicMapImpl;
@@ -90,6 +94,23 @@ public class JSONToObject {
 		}
 	}
 	
+	/**
+	 * Returns a string field of a document.
+	 * 
+	 * @param result document string
+	 * @param field field name
+	 * @return value or an empty string
+	 */
+	public static String getField(String result, String field) {
+		String str = "";
+		try {
+			str = getObjectFromResult(result).optString(field);
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+		return str;
+	}
+	
 	/**
 	 * Returns the revision number from a <tt>JSONObject</tt>.
 	 * 
@@ -107,6 +128,30 @@ public class JSONToObject {
 		return str;
 	}
 
+	/**
+	 * Returns the new revisions from a <tt>_bulk_docs</tt> result. Documents
+	 * which could not be saved are left out and added to the failed documents.
+	 * 
+	 * @param result result string
+	 * @param failed gets the id and the error of each document which could not be saved
+	 * @return map id to revision
+	 */
+	public static Map<String, String> getBulkRevs(String result, Map<String, String> failed) {
+		Map<String, String> revs = CollectionFactory.createMap();
+		try {
+			JSONArray results = new JSONArray(new JSONTokener(result));
+			for(int i = 0; i < results.length(); i++) {
+				JSONObject obj = results.optJSONObject(i);
+				if(obj == null) continue;
+				if(obj.has("error")) failed.put(obj.optString("id"), obj.optString("error")+": "+obj.optString("reason"));
+				else if(!obj.optString("rev").equals("")) revs.put(obj.optString("id"), obj.getString("rev"));
+			}
+		} catch(Exception e) {
+			e.printStackTrace();
+		}
+		return revs;
+	}
+
 	private static JSONObject getObjectFromResult(String result) {
 		try {
 			return new JSONObject(new JSONTokener(result));
@@ -116,20 +161,145 @@ public class JSONToObject {
 		}
 	}
 	
-	private static JSONObject getConstructObjectFromResult(String result, int position) {
+	/**
+	 * Parses a view result once and passes each row to the given mapper.
+	 * Mapped objects which are not <tt>null</tt> are added to the target collection.
+	 * 
+	 * @param result result string
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	public static <T, C extends Collection<? super T>> C mapRows(String result, IRowMapper<T> mapper, C target) {
 		try {
-			JSONObject firstObject = null;
-			JSONArray rowsArray = null;
-			JSONObject firstObjectValue = null;
-			JSONObject resultObj = new JSONObject(new JSONTokener(result));
-			if(resultObj != null) rowsArray = resultObj.optJSONArray("rows");
-			if(rowsArray != null) firstObject = rowsArray.optJSONObject(position);
-			if(firstObject != null) firstObjectValue = firstObject.optJSONObject("value");
-			return firstObjectValue;
+			mapRows(new StringReader(result), mapper, target);
 		} catch(Exception e) {
 			e.printStackTrace();
-			return new JSONObject();
 		}
+		return target;
+	}
+	
+	/**
+	 * Passes each of the given rows to the mapper. Mapped objects which are not 
+	 * <tt>null</tt> are added to the target collection.
+	 * 
+	 * @param rows rows already read from a view result
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	public static <T, C extends Collection<? super T>> C mapRows(List<JSONObject> rows, IRowMapper<T> mapper, C target) {
+		for(JSONObject row : rows) {
+			T obj = mapper.mapRow(row);
+			if(obj != null) target.add(obj);
+		}
+		return target;
+	}
+	
+	/**
+	 * Reads a view result from the given reader and passes each row to the mapper 
+	 * as soon as it is read. Only a single row is held in memory at a time; 
+	 * all other members of the result object are skipped.
+	 * 
+	 * @param reader reader
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 * @throws JSONException
+	 */
+	public static <T, C extends Collection<? super T>> C mapRows(Reader reader, IRowMapper<T> mapper, C target) throws JSONException {
+		JSONTokener x = new JSONTokener(reader);
+		char c;
+		if(x.nextClean() != '{') throw x.syntaxError("A JSONObject text must begin with '{'");
+		if(x.nextClean() == '}') return target;
+		x.back();
+		while(true) {
+			String key = x.nextValue().toString();
+			if(x.nextClean() != ':') throw x.syntaxError("Expected a ':' after a key");
+			if(key.equals("rows")) {
+				if(x.nextClean() != '[') throw x.syntaxError("A JSONArray text must start with '['");
+				if(x.nextClean() != ']') {
+					x.back();
+					while(true) {
+						Object row = x.nextValue();
+						if(row instanceof JSONObject) {
+							T obj = mapper.mapRow((JSONObject) row);
+							if(obj != null) target.add(obj);
+						}
+						c = x.nextClean();
+						if(c == ']') break;
+						if(c != ',') throw x.syntaxError("Expected a ',' or ']'");
+					}
+				}
+			} else {
+				x.nextValue();
+			}
+			c = x.nextClean();
+			if(c == '}') return target;
+			if(c != ',') throw x.syntaxError("Expected a ',' or '}'");
+		}
+	}
+	
+	/**
+	 * Returns a <tt>IRowMapper</tt> which builds an <tt>IConstruct</tt> from the 
+	 * included document of a row. Rows of views which still emit the document as 
+	 * value are mapped as well.
+	 * 
+	 * @param tm topic map
+	 * @param tmom topic map object manager
+	 * @return mapper
+	 */
+	public static <T extends IConstruct> IRowMapper<T> constructMapper(final ITopicMap tm, final TopicMapObjectManager tmom) {
+		return new IRowMapper<T>() {
+			@SuppressWarnings("unchecked")
+			public T mapRow(JSONObject row) {
+				JSONObject doc = row.optJSONObject("doc");
+				//rows of embedded constructs carry the id of the construct as value
+				if(doc != null && row.opt("value") instanceof String) {
+					String id = row.optString("value");
+					//the owner is built first and caches its embedded constructs
+					if(JSONToConstruct(doc, tm, tmom) == null) return null;
+					IConstruct construct = tmom.getCachedConstruct(id);
+					if(construct != null) return (T) construct;
+					doc = getEmbedded(doc, id);
+					if(doc == null) return null;
+				}
+				if(doc == null) doc = row.optJSONObject("value");
+				if(doc == null) return null;
+				return (T) JSONToConstruct(doc, tm, tmom);
+			}
+		};
+	}
+	
+	/**
+	 * Returns the object of the construct with the given id which is embedded in
+	 * the document.
+	 * 
+	 * @param doc document
+	 * @param id id
+	 * @return object or <tt>null</tt>
+	 */
+	private static JSONObject getEmbedded(JSONObject doc, String id) {
+		JSONArray embedded = doc.optJSONArray("embedded");
+		if(embedded == null) return null;
+		for(int i = 0; i < embedded.length(); i++) {
+			JSONObject obj = embedded.optJSONObject(i);
+			if(obj != null && id.equals(obj.optString("_id"))) return obj;
+		}
+		return null;
+	}
+	
+	/**
+	 * Returns all <tt>IConstruct</tt> contained in the result object.
+	 * 
+	 * @param result result string
+	 * @param tm topic map
+	 * @param tmom topic map object manager
+	 * @return set constructs
+	 */
+	public static <T extends IConstruct> Set<T> JSONToConstructs(String result, ITopicMap tm, TopicMapObjectManager tmom) {
+		Set<T> constructs = CollectionFactory.createSet();
+		return mapRows(result, JSONToObject.<T>constructMapper(tm, tmom), constructs);
 	}
 	
 	/**
@@ -155,13 +325,13 @@ public class JSONToObject {
 		}
 		if(obj != null) {
 			reifierId = (obj.optString("reifier").equals("") ? null : obj.optString("reifier"));
-			locator = (obj.optString("locator").equals("") ? null : new LocatorImpl(obj.optString("locator")));
+			locator = (obj.optString("locator").equals("") ? null : LocatorImpl.valueOf(obj.optString("locator")));
 			id = (obj.optString("_id").equals("") ? null : obj.optString("_id"));
 			JSONArray _iids;
 			if((_iids = obj.optJSONArray("itemidentifiers")) != null) {
 				for(int i = 0; i < _iids.length(); i++) {
 					try{ 
-						iids.add(new LocatorImpl(_iids.getString(i)));		
+						iids.add(LocatorImpl.valueOf(_iids.getString(i)));		
 					} catch(Exception e) {
 						e.printStackTrace();
 					}
@@ -192,7 +362,14 @@ public class JSONToObject {
 	 * @return
 	 */
 	public static IConstruct JSONToConstruct(String result, ITopicMap tm, TopicMapObjectManager tmom) {
-		return JSONToConstruct(result, tm, tmom, 0);
+		try {
+			JSONArray rowsArray = new JSONObject(new JSONTokener(result)).optJSONArray("rows");
+			JSONObject row = (rowsArray == null) ? null : rowsArray.optJSONObject(0);
+			return (row == null) ? null : JSONToObject.<IConstruct>constructMapper(tm, tmom).mapRow(row);
+		} catch(Exception e) {
+			e.printStackTrace();
+			return null;
+		}
 	}
 	
 	/**
@@ -203,64 +380,106 @@ public class JSONToObject {
 	 */
 	public static Set<String> getKeyset(String result) {
 		Set<String> keyset = CollectionFactory.createSet();
+		return mapRows(result, KEY_MAPPER, keyset);
+	}
+	
+	/**
+	 * Returns a <tt>IRowMapper</tt> which keeps the row itself, to read the rows 
+	 * of a response before they are mapped.
+	 * 
+	 * @return mapper
+	 */
+	public static IRowMapper<JSONObject> rowMapper() {
+		return ROW_MAPPER;
+	}
+	
+	//keeps the row itself
+	private static final IRowMapper<JSONObject> ROW_MAPPER = new IRowMapper<JSONObject>() {
+		public JSONObject mapRow(JSONObject row) {
+			return row;
+		}
+	};
+	
+	/**
+	 * Returns a <tt>IRowMapper</tt> which maps a row to its key. Empty keys and
+	 * "none" are skipped.
+	 * 
+	 * @return mapper
+	 */
+	public static IRowMapper<String> keyMapper() {
+		return KEY_MAPPER;
+	}
+	
+	//maps a row to its key, skipping empty keys and "none"
+	private static final IRowMapper<String> KEY_MAPPER = new IRowMapper<String>() {
+		public String mapRow(JSONObject row) {
+			String key = row.optString("key");
+			if(key.equals("") || key.equals("none")) return null;
+			return key;
+		}
+	};
+	
+	/**
+	 * Returns the <tt>IConstruct</tt> represented by a single document. 
+	 * 
+	 * @param result document string
+	 * @param tm topic map
+	 * @param tmom topic map object manager
+	 * @return construct construct
+	 */
+	public static IConstruct JSONDocumentToConstruct(String result, ITopicMap tm, TopicMapObjectManager tmom) {
 		try {
-			JSONArray rowsArray = null;
-			JSONObject resultObj = new JSONObject(new JSONTokener(result));
-			if(resultObj != null) rowsArray = resultObj.optJSONArray("rows");
-			if(rowsArray != null) {
-				for(int i = 0; i < rowsArray.length(); i++) {
-					JSONObject obj = rowsArray.optJSONObject(i);
-					if(obj != null) {
-						String key = obj.optString("key");
-						if(!key.equals("") && !key.equals("none")) keyset.add(key);
-					}
-				}
-					
-			}
+			return JSONToConstruct(new JSONObject(new JSONTokener(result)), tm, tmom);
 		} catch(Exception e) {
 			e.printStackTrace();
+			return null;
 		}
-		return keyset;
 	}
 	
 	/**
-	 * Returns the <tt>IConstruct</tt> which is at the given position in the result object. 
+	 * Returns the <tt>IConstruct</tt> represented by the given document object. 
 	 * 
-	 * @param result result string
+	 * @param obj document object
+	 * @param tm topic map
+	 * @param tmom topic map object manager
+	 * @return construct construct
+	 */
+	public static IConstruct JSONToConstruct(JSONObject obj, ITopicMap tm, TopicMapObjectManager tmom) {
+		return JSONToConstruct(obj, tm, tmom, false);
+	}
+	
+	/**
+	 * Builds a copy of the construct represented by the given document object, which 
+	 * is neither looked up in nor added to the cache. Embedded constructs are not built.
+	 * Used to refresh a cached construct from a newer revision of its document.
+	 * 
+	 * @param obj document object
 	 * @param tm topic map
 	 * @param tmom topic map object manager
-	 * @param position position
 	 * @return construct construct
 	 */
-	public static IConstruct JSONToConstruct(String result, ITopicMap tm, TopicMapObjectManager tmom, int position) {
+	public static IConstruct JSONToDetachedConstruct(JSONObject obj, ITopicMap tm, TopicMapObjectManager tmom) {
+		return JSONToConstruct(obj, tm, tmom, true);
+	}
+	
+	private static IConstruct JSONToConstruct(JSONObject obj, ITopicMap tm, TopicMapObjectManager tmom, boolean detached) {
 		IConstruct construct = null;
 		try{
-			JSONObject obj;
-			if(position >= 0) obj = getConstructObjectFromResult(result, position);
-			else obj = new JSONObject(result);
 			if(obj != null) {
-				String parentId = "";
 				JSONArray _iids;
 				String id = null;
 				String rev = null;
 				Set<Locator> iids = CollectionFactory.createSet();
 				String documentType = null;
-				IConstruct parent = null;
 				String tmId = null;
 				id = (obj.optString("_id").equals("") ? null : obj.optString("_id"));
-				construct = tmom.getCachedConstruct(id);
+				construct = detached ? null : tmom.getCachedConstruct(id);
 				if(construct != null) {
 					return tmom.getConstruct(id);
 				}
-				if(!(parentId = obj.optString("parent")).equals("")) {
-					parent = tmom.getCachedConstruct(parentId);
-					if(parent == null) {
-						parent = new ConstructImpl(parentId, tm);
-					}
-				}
 				documentType = (obj.optString("documenttype").equals("") ? null : obj.optString("documenttype"));
 				if((_iids = obj.optJSONArray("itemidentifiers")) != null) {
-					for(int i = 0; i < _iids.length(); i++) iids.add(new LocatorImpl(_iids.getString(i)));
+					for(int i = 0; i < _iids.length(); i++) iids.add(LocatorImpl.valueOf(_iids.getString(i)));
 				}
 				rev = (obj.optString("_rev").equals("") ? null : obj.optString("_rev"));
 				tmId = (obj.optString("topicmap").equals("") ? null : obj.optString("topicmap"));
@@ -278,6 +497,15 @@ public class JSONToObject {
 				if(construct != null && !construct.getDocumentType().equals(IConstant.TOPIC_MAP) && !tmId.equals(tm.getId())) {
 					return null;
 				}
+				if(detached) return construct;
+				//a stub handed out for the id before becomes the decoded construct
+				if(construct != null && !construct.getDocumentType().equals(IConstant.TOPIC_MAP)) construct = tmom.promote(construct);
+				JSONArray embedded = obj.optJSONArray("embedded");
+				if(construct != null && embedded != null) {
+					//the owner is cached first, so the embedded constructs are built with it as parent
+					tmom.addConstruct(construct);
+					JSONToEmbedded(embedded, tm, tmom);
+				}
 			}
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -285,6 +513,25 @@ public class JSONToObject {
 		return construct;
 	}
 	
+	/**
+	 * Builds the constructs embedded in the document of their owner and caches them. 
+	 * Names are built before variants, so a variant gets its name as parent.
+	 * 
+	 * @param embedded embedded construct objects
+	 * @param tm topic map
+	 * @param tmom topic map object manager
+	 */
+	private static void JSONToEmbedded(JSONArray embedded, ITopicMap tm, TopicMapObjectManager tmom) {
+		for(int pass = 0; pass < 2; pass++) {
+			for(int i = 0; i < embedded.length(); i++) {
+				JSONObject obj = embedded.optJSONObject(i);
+				if(obj == null || IConstant.VARIANT.equals(obj.optString("documenttype")) != (pass == 1)) continue;
+				IConstruct child = JSONToConstruct(obj, tm, tmom);
+				if(child != null) tmom.addConstruct(child);
+			}
+		}
+	}
+	
 	//create occurrence
 	private static IOccurrence JSONToIOccurrence(JSONObject obj, String id, String rev, Set<Locator> iids, ITopicMap tm, TopicMapObjectManager tmom) {
 		IOccurrence occ = null;
@@ -293,46 +540,30 @@ public class JSONToObject {
 			ITopic parent = null;
 			parentId = (obj.optString("parent").equals("")) ? null : obj.optString("parent");
 			if(parentId != null) {
-				parent = (ITopic) tmom.getCachedConstruct(parentId);
-				if(parent == null) {
-					parent = new TopicImpl(parentId, tm);
-					//tmom.addConstruct(parent);
-				}
+				parent = (ITopic) tmom.getReference(parentId, IConstant.TOPIC);
 			}
 			String value = obj.optString("value").equals("") ? null : obj.optString("value");
 			String typeId = null;
 			ITopic type = null;
 			typeId = (obj.optString("type").equals("")) ? null : obj.optString("type");
 			if(typeId != null) {
-				type = (ITopic) tmom.getCachedConstruct(typeId);
-				if(type == null) {
-					type = new TopicImpl(typeId, tm);
-					//tmom.addConstruct(type);
-				}
+				type = (ITopic) tmom.getReference(typeId, IConstant.TOPIC);
 			}
 			String reifierId = null;
 			ITopic reifier = null;
 			reifierId = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
 			if(reifierId != null) {
-				reifier = (ITopic) tmom.getCachedConstruct(reifierId);
-				if(reifier == null) {
-					reifier = new TopicImpl(reifierId, tm);
-					//tmom.addConstruct(reifier);
-				}
+				reifier = (ITopic) tmom.getReference(reifierId, IConstant.TOPIC);
 			}
 			JSONArray _scope = null;
 			Set<ITopic> scope = CollectionFactory.createSet();
 			if((_scope = obj.optJSONArray("scope")) != null) {
 				for(int i = 0; i < _scope.length(); i++) {
-					ITopic topic = (ITopic) tmom.getCachedConstruct(_scope.getString(i));
-					if(topic == null) {
-						topic = new TopicImpl(_scope.getString(i), tm);
-						//tmom.addConstruct(topic);
-					}
+					ITopic topic = (ITopic) tmom.getReference(_scope.getString(i), IConstant.TOPIC);
 					scope.add(topic);
 				}
 			}
-			Locator datatype = obj.optString("datatype").equals("") ? null : new LocatorImpl(obj.optString("datatype"));
+			Locator datatype = obj.optString("datatype").equals("") ? null : LocatorImpl.valueOf(obj.optString("datatype"));
 			occ = new OccurrenceImpl(id, rev, tm, iids, parent, type, scope, datatype, value, reifier);
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -348,42 +579,26 @@ public class JSONToObject {
 			ITopic parent = null;
 			parentId = (obj.optString("parent").equals("")) ? null : obj.optString("parent");
 			if(parentId != null) {
-				parent = (ITopic) tmom.getCachedConstruct(parentId);
-				if(parent == null) {
-					parent = new TopicImpl(parentId, tm);
-					//tmom.addConstruct(parent);
-				}
+				parent = (ITopic) tmom.getReference(parentId, IConstant.TOPIC);
 			}
 			String value = obj.optString("value").equals("") ? null : obj.optString("value");
 			String typeId = null;
 			ITopic type = null;
 			typeId = (obj.optString("type").equals("")) ? null : obj.optString("type");
 			if(typeId != null) {
-				type = (ITopic) tmom.getCachedConstruct(typeId);
-				if(type == null) {
-					type = new TopicImpl(typeId, tm);
-					//tmom.addConstruct(type);
-				}
+				type = (ITopic) tmom.getReference(typeId, IConstant.TOPIC);
 			}
 			String reifierId = null;
 			ITopic reifier = null;
 			reifierId = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
 			if(reifierId != null) {
-				reifier = (ITopic) tmom.getCachedConstruct(reifierId);
-				if(reifier == null) {
-					reifier = new TopicImpl(reifierId, tm);
-					//tmom.addConstruct(reifier);
-				}
+				reifier = (ITopic) tmom.getReference(reifierId, IConstant.TOPIC);
 			}
 			JSONArray _scope = null;
 			Set<ITopic> scope = CollectionFactory.createSet();
 			if((_scope = obj.optJSONArray("scope")) != null) {
 				for(int i = 0; i < _scope.length(); i++) {
-					ITopic topic = (ITopic) tmom.getCachedConstruct(_scope.getString(i));
-					if(topic == null) {
-						topic = new TopicImpl(_scope.getString(i), tm);
-						//tmom.addConstruct(topic);
-					}
+					ITopic topic = (ITopic) tmom.getReference(_scope.getString(i), IConstant.TOPIC);
 					scope.add(topic);
 				}
 			}
@@ -391,11 +606,7 @@ public class JSONToObject {
 			Set<IVariant> variants = CollectionFactory.createSet();
 			if((_variants = obj.optJSONArray("variants")) != null) {
 				for(int i = 0; i < _variants.length(); i++) {
-					IVariant variant = (IVariant) tmom.getCachedConstruct(_variants.getString(i));
-					if(variant == null) {
-						variant = new VariantImpl(_variants.getString(i), tm);
-						//tmom.addConstruct(variant);
-					}
+					IVariant variant = (IVariant) tmom.getReference(_variants.getString(i), IConstant.VARIANT);
 					variants.add(variant);
 				}
 			}
@@ -414,41 +625,25 @@ public class JSONToObject {
 			IAssociation parent = null;
 			parentId = (obj.optString("parent").equals("")) ? null : obj.optString("parent");
 			if(parentId != null) {
-				parent = (IAssociation) tmom.getCachedConstruct(parentId);
-				if(parent == null) {
-					parent = new AssociationImpl(parentId, tm);
-					//tmom.addConstruct(parent);
-				}
+				parent = (IAssociation) tmom.getReference(parentId, IConstant.ASSOCIATION);
 			}
 			String playerId = null;
 			ITopic player = null;
 			playerId = (obj.optString("player").equals("")) ? null : obj.optString("player");
 			if(playerId != null) {
-				player = (ITopic) tmom.getCachedConstruct(playerId);
-				if(player == null) {
-					player = new TopicImpl(playerId, tm);
-					//tmom.addConstruct(player);
-				}
+				player = (ITopic) tmom.getReference(playerId, IConstant.TOPIC);
 			}
 			String reifierId = null;
 			ITopic reifier = null;
 			reifierId = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
 			if(reifierId != null) {
-				reifier = (ITopic) tmom.getCachedConstruct(reifierId);
-				if(reifier == null) {
-					reifier = new TopicImpl(reifierId, tm);
-					//tmom.addConstruct(reifier);
-				}
+				reifier = (ITopic) tmom.getReference(reifierId, IConstant.TOPIC);
 			}
 			String typeId = null;
 			ITopic type = null;
 			typeId = (obj.optString("type").equals("")) ? null : obj.optString("type");
 			if(typeId != null) {
-				type = (ITopic) tmom.getCachedConstruct(typeId);
-				if(type == null) {
-					type = new TopicImpl(typeId, tm);
-					//tmom.addConstruct(type);
-				}
+				type = (ITopic) tmom.getReference(typeId, IConstant.TOPIC);
 			}
 			role = new RoleImpl(id, rev, tm, iids, parent, player, type, reifier);
 		} catch(Exception e) {
@@ -465,22 +660,14 @@ public class JSONToObject {
 			IName parent = null;
 			parentId = (obj.optString("parent").equals("")) ? null : obj.optString("parent");
 			if(parentId != null) {
-				parent = (IName) tmom.getCachedConstruct(parentId);
-				if(parent == null) {
-					parent = new NameImpl(parentId, tm);
-					//tmom.addConstruct(parent);
-				}
+				parent = (IName) tmom.getReference(parentId, IConstant.NAME);
 			}
 			String value = obj.optString("value").equals("") ? null : obj.optString("value");
 			JSONArray _scope = null;
 			Set<ITopic> scope = CollectionFactory.createSet();
 			if((_scope = obj.optJSONArray("scope")) != null) {
 				for(int i = 0; i < _scope.length(); i++) {
-					ITopic topic = (ITopic) tmom.getCachedConstruct(_scope.getString(i));
-					if(topic == null) {
-						topic = new TopicImpl(_scope.getString(i), tm);
-						//tmom.addConstruct(topic);
-					}
+					ITopic topic = (ITopic) tmom.getReference(_scope.getString(i), IConstant.TOPIC);
 					scope.add(topic);
 				}
 			}
@@ -488,13 +675,9 @@ public class JSONToObject {
 			ITopic reifier = null;
 			reifierId = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
 			if(reifierId != null) {
-				reifier = (ITopic) tmom.getCachedConstruct(reifierId);
-				if(reifier == null) {
-					reifier = new TopicImpl(reifierId, tm);
-					//tmom.addConstruct(reifier);
-				}
+				reifier = (ITopic) tmom.getReference(reifierId, IConstant.TOPIC);
 			}
-			Locator datatype = obj.optString("datatype").equals("") ? null : new LocatorImpl(obj.optString("datatype"));
+			Locator datatype = obj.optString("datatype").equals("") ? null : LocatorImpl.valueOf(obj.optString("datatype"));
 			variant = new VariantImpl(id, rev, tm, iids, parent, value, reifier, scope, datatype);
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -510,31 +693,19 @@ public class JSONToObject {
 			ITopic type = null;
 			typeId = (obj.optString("type").equals("")) ? null : obj.optString("type");
 			if(typeId != null) {
-				type = (ITopic) tmom.getCachedConstruct(typeId);
-				if(type == null) {
-					type = new TopicImpl(typeId, tm);
-					//tmom.addConstruct(type);
-				}
+				type = (ITopic) tmom.getReference(typeId, IConstant.TOPIC);
 			}
 			String reifierId = null;
 			ITopic reifier = null;
 			reifierId = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
 			if(reifierId != null) {
-				reifier = (ITopic) tmom.getCachedConstruct(reifierId);
-				if(reifier == null) {
-					reifier = new TopicImpl(reifierId, tm);
-					//tmom.addConstruct(reifier);
-				}
+				reifier = (ITopic) tmom.getReference(reifierId, IConstant.TOPIC);
 			}
 			JSONArray _roles = null;
 			Set<IRole> roles = CollectionFactory.createSet();
 			if((_roles = obj.optJSONArray("roles")) != null) {
 				for(int i = 0; i < _roles.length(); i++) {
-					IRole role = (IRole) tmom.getCachedConstruct(_roles.getString(i));
-					if(role == null) {
-						role = new RoleImpl(_roles.getString(i), tm);
-						//tmom.addConstruct(role);
-					}
+					IRole role = (IRole) tmom.getReference(_roles.getString(i), IConstant.ROLE);
 					roles.add(role);
 				}
 			}
@@ -542,11 +713,7 @@ public class JSONToObject {
 			Set<ITopic> scope = CollectionFactory.createSet();
 			if((_scope = obj.optJSONArray("scope")) != null) {
 				for(int i = 0; i < _scope.length(); i++) {
-					ITopic topic = (ITopic) tmom.getCachedConstruct(_scope.getString(i));
-					if(topic == null) {
-						topic = new TopicImpl(_scope.getString(i), tm);
-						//tmom.addConstruct(topic);
-					}
+					ITopic topic = (ITopic) tmom.getReference(_scope.getString(i), IConstant.TOPIC);
 					scope.add(topic);
 				}
 			}
@@ -563,7 +730,7 @@ public class JSONToObject {
 		try{
 			String reifier = null;
 			reifier = (obj.optString("reifier").equals("")) ? null : obj.optString("reifier");
-			Locator locator = obj.optString("locator").equals("") ? null : new LocatorImpl(obj.optString("locator"));
+			Locator locator = obj.optString("locator").equals("") ? null : LocatorImpl.valueOf(obj.optString("locator"));
 			if((topicMap = (ITopicMap) sys.getTopicMap(locator)) != null) return topicMap;
 			DB db = null;
 			try {
@@ -597,22 +764,18 @@ public class JSONToObject {
 			JSONArray _sids;
 			Set<Locator> sids = CollectionFactory.createSet();
 			if((_sids = obj.optJSONArray("subjectidentifiers")) != null) {
-				for(int i = 0; i < _sids.length(); i++) sids.add((Locator) new LocatorImpl((String) _sids.get(i)));
+				for(int i = 0; i < _sids.length(); i++) sids.add((Locator) LocatorImpl.valueOf((String) _sids.get(i)));
 			}
 			JSONArray _slos;
 			Set<Locator> slos = CollectionFactory.createSet();
 			if((_slos = obj.optJSONArray("subjectlocators")) != null) {
-				for(int i = 0; i < _slos.length(); i++) slos.add((Locator) new LocatorImpl((String) _slos.get(i)));
+				for(int i = 0; i < _slos.length(); i++) slos.add((Locator) LocatorImpl.valueOf((String) _slos.get(i)));
 			}
 			JSONArray _names;
 			Set<IName> names = CollectionFactory.createSet();
 			if((_names = obj.optJSONArray("names")) != null) {
 				for(int i = 0; i < _names.length(); i++) {
-					IName name = (IName) tmom.getCachedConstruct((String) _names.get(i));
-					if(name == null) {
-						name = new NameImpl((String) _names.get(i), tm);
-						//tmom.addConstruct(name);
-					}
+					IName name = (IName) tmom.getReference((String) _names.get(i), IConstant.NAME);
 					names.add(name);
 				}
 			}
@@ -620,38 +783,21 @@ public class JSONToObject {
 			Set<IOccurrence> occs = CollectionFactory.createSet();
 			if((_occs = obj.optJSONArray("occurrences")) != null) {
 				for(int i = 0; i < _occs.length(); i++) {
-					IOccurrence occ = (IOccurrence) tmom.getCachedConstruct((String) _occs.get(i));
-					if(occ == null) {
-						occ = new OccurrenceImpl((String) _occs.getString(i), tm);
-						//tmom.addConstruct(occ);
-					}
+					IOccurrence occ = (IOccurrence) tmom.getReference((String) _occs.get(i), IConstant.OCCURRENCE);
 					occs.add(occ);
 				}
 			}
-			JSONArray _roles;
-			Set<IRole> roles = CollectionFactory.createSet();
-			if((_roles = obj.optJSONArray("roles")) != null) {
-				for(int i = 0; i < _roles.length(); i++) {
-					IRole role = (IRole) tmom.getCachedConstruct(_roles.getString(i));
-					if(role == null) {
-						role = new RoleImpl((String) _roles.getString(i), tm);
-						//tmom.addConstruct(role);
-					}
-					roles.add(role);
-				}
-			}
+			//the roles played are derived from the getrolesbyplayer view, a "roles"
+			//field of documents written by older versions is ignored
 			JSONArray _types;
 			Set<ITopic> types = CollectionFactory.createSet();
 			if((_types = obj.optJSONArray("types")) != null) {
 				for(int i = 0; i < _types.length(); i++) {
-					ITopic type = (ITopic) tmom.getCachedConstruct(_types.getString(i));
-					if(type == null) {
-						type = new TopicImpl(_types.getString(i), tm);
-					}
+					ITopic type = (ITopic) tmom.getReference(_types.getString(i), IConstant.TOPIC);
 					types.add(type);
 				}
 			}
-			topic = new TopicImpl(id, rev, tm, iids, names, occs, roles, reified, sids, slos, types);
+			topic = new TopicImpl(id, rev, tm, iids, names, occs, null, reified, sids, slos, types);
 		} catch(Exception e) {
 			e.printStackTrace();
 		}
@@ -676,7 +822,7 @@ public class JSONToObject {
 				if(names != null && names.length > 0) {
 					for(String name : names) {
 						if(!name.equals("_id") && !name.equals("_rev")) {
-							tms.put(((Locator) new LocatorImpl(name)), obj.getString(name));
+							tms.put(((Locator) LocatorImpl.valueOf(name)), obj.getString(name));
 						}
 					}
 				}
@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Bloom filter over the identity locators of a topic map. If the filter does not 
+ * contain a locator, no construct in the database has it and the view query can
+ * be skipped. Removed locators stay in the filter, they only cause a query. The 
+ * filter grows by adding stages of twice the capacity of the previous stage.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class LocatorFilter {
+	
+	public static final char ITEM_IDENTIFIER = 'i';
+	public static final char SUBJECT_IDENTIFIER = 's';
+	public static final char SUBJECT_LOCATOR = 'l';
+	
+	//false positive rate of the first stage, halved for every further stage
+	private static final double FALSE_POSITIVE_RATE = 0.01;
+	
+	private volatile Stage[] stages;
+	
+	/**
+	 * Creates a filter.
+	 * 
+	 * @param capacity number of locators of the first stage
+	 */
+	public LocatorFilter(long capacity) {
+		stages = new Stage[] {new Stage(Math.max(capacity, 1024), FALSE_POSITIVE_RATE)};
+	}
+	
+	/**
+	 * Adds a locator.
+	 * 
+	 * @param kind <tt>ITEM_IDENTIFIER</tt>, <tt>SUBJECT_IDENTIFIER</tt> or <tt>SUBJECT_LOCATOR</tt>
+	 * @param reference reference of the locator
+	 */
+	public void add(char kind, String reference) {
+		long hash = hash(kind, reference);
+		Stage[] current = stages;
+		Stage last = current[current.length - 1];
+		if(last.add(hash) >= last.capacity) grow(current);
+	}
+	
+	/**
+	 * Checks whether the locator may have been added.
+	 * 
+	 * @param kind <tt>ITEM_IDENTIFIER</tt>, <tt>SUBJECT_IDENTIFIER</tt> or <tt>SUBJECT_LOCATOR</tt>
+	 * @param reference reference of the locator
+	 * @return <tt>false</tt> if the locator was never added
+	 */
+	public boolean mightContain(char kind, String reference) {
+		long hash = hash(kind, reference);
+		for(Stage stage : stages) {
+			if(stage.mightContain(hash)) return true;
+		}
+		return false;
+	}
+	
+	//adds a new stage unless another thread already did
+	private synchronized void grow(Stage[] full) {
+		if(stages != full) return;
+		Stage last = full[full.length - 1];
+		Stage[] grown = new Stage[full.length + 1];
+		System.arraycopy(full, 0, grown, 0, full.length);
+		grown[full.length] = new Stage(last.capacity * 2, last.rate / 2);
+		stages = grown;
+	}
+	
+	//64 bit FNV-1a hash of the kind and the reference, finished with a mix step
+	private static long hash(char kind, String reference) {
+		long hash = 0xcbf29ce484222325L;
+		hash = (hash ^ kind) * 0x100000001b3L;
+		for(int i = 0; i < reference.length(); i++) {
+			hash = (hash ^ reference.charAt(i)) * 0x100000001b3L;
+		}
+		hash ^= hash >>> 33;
+		hash *= 0xff51afd7ed558ccdL;
+		hash ^= hash >>> 33;
+		return hash;
+	}
+	
+	//bit array sized for a capacity and a false positive rate
+	private static final class Stage {
+		
+		private final long capacity;
+		private final double rate;
+		private final AtomicLongArray words;
+		private final long bits;
+		private final int hashes;
+		private final AtomicLong size = new AtomicLong();
+		
+		Stage(long capacity, double rate) {
+			this.capacity = capacity;
+			this.rate = rate;
+			long m = (long) Math.ceil(-capacity * Math.log(rate) / (Math.log(2) * Math.log(2)));
+			words = new AtomicLongArray((int) Math.min((m + 63) / 64, Integer.MAX_VALUE));
+			bits = words.length() * 64L;
+			hashes = Math.max(1, (int) Math.round((double) bits / capacity * Math.log(2)));
+		}
+		
+		//sets the bits of the hash, returns the number of added locators which set a bit
+		long add(long hash) {
+			long h2 = (hash >>> 32) | 1;
+			boolean changed = false;
+			for(int i = 0; i < hashes; i++) {
+				long bit = ((hash + i * h2) & Long.MAX_VALUE) % bits;
+				int index = (int) (bit >>> 6);
+				long mask = 1L << bit;
+				long word;
+				do {
+					word = words.get(index);
+					if((word & mask) != 0) break;
+					changed = true;
+				} while(!words.compareAndSet(index, word, word | mask));
+			}
+			return changed ? size.incrementAndGet() : size.get();
+		}
+		
+		boolean mightContain(long hash) {
+			long h2 = (hash >>> 32) | 1;
+			for(int i = 0; i < hashes; i++) {
+				long bit = ((hash + i * h2) & Long.MAX_VALUE) % bits;
+				if((words.get((int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+			}
+			return true;
+		}
+		
+	}
+	
+}
@@ -21,6 +21,7 @@ import java.util.Iterator;
 
 import org.tmapi.core.Locator;
 import org.tmapi.core.ModelConstraintException;
+import org.tmapi.core.Topic;
 
 import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.IConstant;
@@ -53,11 +54,11 @@ public class MergeCheck {
 	public static boolean assocSuppressionCheck(IAssociation assoc1, IAssociation assoc2) {
 		boolean returnFlag = true;
 		IAssociation smaller = (assoc1.getRoles().size() >= assoc2.getRoles().size() ? assoc2 : assoc1);
-		IAssociation bigger = (smaller.getId().equals(assoc1.getId()) ? assoc2 : assoc1);
+		IAssociation bigger = (ConstructId.same(smaller, assoc1) ? assoc2 : assoc1);
 		for(IRole role : Converter.setRoleToIRole(smaller.getRoles())) {
 			boolean flag = false;
 			for(IRole role2 : Converter.setRoleToIRole(bigger.getRoles())) {
-				if(role.getPlayer().getId().equals(role2.getPlayer().getId()) || role.getType().getId().equals(role2.getType().getId())) flag = true;
+				if(ConstructId.same(role.getPlayer(), role2.getPlayer()) || ConstructId.same(role.getType(), role2.getType())) flag = true;
 			}
 			if(!flag) {
 				returnFlag = false;
@@ -188,7 +189,7 @@ public class MergeCheck {
 		IName name = null;
 		Set<IName> names = tmom.getNamesByTypeValueScope(type, value, scope, parent);
 		for(IName _name : names) {
-			if(_name.getParent().getId().equals(parent.getId())) {
+			if(ConstructId.same(_name.getParent(), parent)) {
 				name = _name;
 				break;
 			}
@@ -211,7 +212,7 @@ public class MergeCheck {
 		IOccurrence occ = null;
 		Set<IOccurrence> occs = tmom.getOccurrencesByTypeValueDatatypeScope(type, value, datatype, scope, parent);
 		for(IOccurrence _occ : occs) {
-			if(_occ.getParent().getId().equals(parent.getId())) {
+			if(ConstructId.same(_occ.getParent(), parent)) {
 				occ = _occ;
 				break;
 			}
@@ -219,6 +220,61 @@ public class MergeCheck {
 		return occ;
 	}
 	
+	/**
+	 * Returns whether the topic stored under the content derived id of the subject 
+	 * identifier still has that subject identifier.
+	 * 
+	 * @param topic topic or <tt>null</tt>
+	 * @param sid subject identifier
+	 * @return boolean
+	 */
+	public static boolean matchesTopic(ITopic topic, Locator sid) {
+		return topic != null && topic.getSubjectIdentifiers().contains(sid);
+	}
+	
+	/**
+	 * Returns whether the name stored under a content derived id still has the given values.
+	 * 
+	 * @param name name or <tt>null</tt>
+	 * @param type type
+	 * @param value value
+	 * @param scope scope
+	 * @param parent parent
+	 * @return boolean
+	 */
+	public static boolean matchesName(IName name, ITopic type, String value, Set<ITopic> scope, ITopic parent) {
+		return name != null && ConstructId.same(name.getType(), type) && value.equals(name.getValue()) 
+			&& sameScope(name.getScope(), scope) && ConstructId.same(name.getParent(), parent);
+	}
+	
+	/**
+	 * Returns whether the occurrence stored under a content derived id still has the given values.
+	 * 
+	 * @param occ occurrence or <tt>null</tt>
+	 * @param type type
+	 * @param value value
+	 * @param datatype datatype
+	 * @param scope scope
+	 * @param parent parent
+	 * @return boolean
+	 */
+	public static boolean matchesOccurrence(IOccurrence occ, ITopic type, String value, Locator datatype, Set<ITopic> scope, ITopic parent) {
+		return occ != null && ConstructId.same(occ.getType(), type) && value.equals(occ.getValue()) 
+			&& datatype.getReference().equals(occ.getDatatype().getReference())
+			&& sameScope(occ.getScope(), scope) && ConstructId.same(occ.getParent(), parent);
+	}
+	
+	//whether both scopes contain the same topics
+	private static boolean sameScope(Set<Topic> scope, Set<ITopic> expected) {
+		if(scope.size() != expected.size()) return false;
+		Set<String> ids = CollectionFactory.createSet(expected.size());
+		for(ITopic topic : expected) ids.add(topic.getId());
+		for(Topic topic : scope) {
+			if(!ids.contains(topic.getId())) return false;
+		}
+		return true;
+	}
+	
 	/**
 	 * Returns the <tt>ITopic</tt> that needs to be merged with the given topic.
 	 * 
@@ -233,7 +289,7 @@ public class MergeCheck {
 			topics.addAll(tmom.getTopicsBySubjectIdentifier(loc));
 			boolean flag = false;
 			for(ITopic tmp : topics) {
-				if(!tmp.getId().equals(topic.getId())) {
+				if(!ConstructId.same(tmp, topic)) {
 					existing = tmp;
 					flag = true;
 					break;
@@ -247,7 +303,7 @@ public class MergeCheck {
 				topics.addAll(tmom.getTopicsByItemIdentifier(loc));
 				boolean flag = false;
 				for(ITopic tmp : topics) {
-					if(!tmp.getId().equals(topic.getId())) {
+					if(!ConstructId.same(tmp, topic)) {
 						existing = tmp;
 						flag = true;
 						break;
@@ -261,7 +317,7 @@ public class MergeCheck {
 				Set<ITopic> topics = tmom.getTopicsBySubjectLocator(loc);
 				boolean flag = false;
 				for(ITopic tmp : topics) {
-					if(!tmp.getId().equals(topic.getId())) {
+					if(!ConstructId.same(tmp, topic)) {
 						existing = tmp;
 						flag = true;
 						break;
@@ -273,7 +329,7 @@ public class MergeCheck {
 		if(existing == null) {
 			Set<ITopic> topics = tmom.getTopicsByReified((IConstruct) topic.getReified());
 			for(ITopic tmp : topics) {
-				if(!tmp.getId().equals(topic.getId())) {
+				if(!ConstructId.same(tmp, topic)) {
 					existing = tmp;
 					break;
 				}
@@ -295,7 +351,7 @@ public class MergeCheck {
 		Iterator<IName> it = names.iterator();
 		while(it.hasNext()) {
 			IName tmp = it.next();
-			if(!tmp.getId().equals(name.getId())) _name = tmp;
+			if(!ConstructId.same(tmp, name)) _name = tmp;
 		}
 		return _name;
 	}
@@ -313,7 +369,7 @@ public class MergeCheck {
 		Iterator<IVariant> it = variants.iterator();
 		while(it.hasNext()) {
 			IVariant tmp = it.next();
-			if(!tmp.getId().equals(variant.getId())) _variant = tmp;
+			if(!ConstructId.same(tmp, variant)) _variant = tmp;
 		}return _variant;
 	}
 	
@@ -330,7 +386,7 @@ public class MergeCheck {
 		Iterator<IOccurrence> it = occs.iterator();
 		while(it.hasNext()) {
 			IOccurrence tmp = it.next();
-			if(!tmp.getId().equals(occ.getId())) _occ = tmp;
+			if(!ConstructId.same(tmp, occ)) _occ = tmp;
 		}
 		return _occ;
 	}
@@ -348,7 +404,7 @@ public class MergeCheck {
 		Iterator<IAssociation> it = assocs.iterator();
 		while(it.hasNext()) {
 			IAssociation tmp = it.next();
-			if(!tmp.getId().equals(assoc.getId())) _assoc = tmp;
+			if(!ConstructId.same(tmp, assoc)) _assoc = tmp;
 		}
 		return _assoc;
 	}
@@ -366,7 +422,7 @@ public class MergeCheck {
 		Iterator<IRole> it = roles.iterator();
 		while(it.hasNext()) {
 			IRole tmp = it.next();
-			if(!tmp.getId().equals(role.getId())) _role = tmp;
+			if(!ConstructId.same(tmp, role)) _role = tmp;
 		}
 		return _role; 
 	}
@@ -133,7 +133,7 @@ public class MergeUtils {
 	
 	//merge topics
 	private static void mergeTopics(ITopic first, ITopic second, int checkReified, boolean flag) throws ModelConstraintException {
-		if(first.getId().equals(second.getId())) return;
+		if(ConstructId.same(first, second)) return;
 		if( checkReified == 1 && first.getReified() != null && second.getReified() != null && first.getReified().getId() != second.getReified().getId()) {
 			throw new ModelConstraintException(first, "Mergen Topics not possible, different Reified items");
 		}
@@ -172,7 +172,7 @@ public class MergeUtils {
 			}
 			else if(doctype.equals(IConstant.TOPIC)) {
 				((ITopic) construct).setParent(first, true);
-				if(second.getReifier() != null && ((ITopic) construct).getReified() != null && ((ITopic) construct).getReified().getId().equals(second.getReifier().getId())) {
+				if(second.getReifier() != null && ((ITopic) construct).getReified() != null && ConstructId.same(((ITopic) construct).getReified(), second.getReifier())) {
 					((ITopic) construct).setReified(first);
 				}
 			}
@@ -18,32 +18,418 @@ package de.topicmapslab.couchtm.internal.utils;
 
 import de.topicmapslab.couchtm.internal.api.IConstruct;
 import de.topicmapslab.couchtm.internal.api.IConstant;
-import de.topicmapslab.couchtm.internal.api.ITopicMap;
 import de.topicmapslab.couchtm.internal.api.ITopic;
-import de.topicmapslab.couchtm.internal.api.IName;
-import de.topicmapslab.couchtm.internal.api.IVariant;
-import de.topicmapslab.couchtm.internal.api.IOccurrence;
-import de.topicmapslab.couchtm.internal.api.IRole;
-import de.topicmapslab.couchtm.internal.api.IAssociation;
 
-
-import java.util.LinkedHashMap;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
- * Class to cache topic map constructs.
+ * Class to cache topic map constructs, safe for concurrent use.
+ * <p>
+ * Every document type has its own segment with a budget of estimated bytes. 
+ * Reads do not lock, they only stamp the entry with the current cache clock, which
+ * advances with every put. When a segment exceeds its budget one thread evicts the 
+ * entries with the oldest stamps until the segment is a tenth below its budget 
+ * (approximate least recently used). Pinned entries are never evicted. Entries pinned
+ * on behalf of another entry, like the types of a construct, are released when the
+ * last entry holding them leaves the cache, so the pinned entries stay bounded by 
+ * the cached ones.
+ * </p>
+ * <p>
+ * {@link #get(Object, Callable)} loads missing constructs, concurrent requests for
+ * the same key wait for a single load.
+ * </p>
  * 
  * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
  *
  * @param <K> identifier
  * @param <V> construct
  */
-public class ObjectCache<K extends Object, V extends IConstruct> extends LinkedHashMap<K,V>{
+public class ObjectCache<K extends Object, V extends IConstruct> {
+	
+	//default size of the whole cache in bytes
+	public static final long DEFAULT_SIZE = 64L * 1024 * 1024;
+	
+	//document types with an own budget
+	public static final String[] DOCUMENT_TYPES = new String[] {IConstant.TOPIC, IConstant.NAME, IConstant.VARIANT, 
+		IConstant.OCCURRENCE, IConstant.ROLE, IConstant.ASSOCIATION};
+	
+	//default share of the cache size in percent, same order as DOCUMENT_TYPES, the rest is left to other constructs
+	private static final int[] DEFAULT_SHARES = new int[] {30, 15, 5, 15, 15, 15};
+	
+	//estimated size of a cache entry including the construct and its id
+	private static final long ENTRY_SIZE = 256;
+	
+	//estimated size of a locator
+	private static final long LOCATOR_SIZE = 128;
+	
+	//segment for constructs without one of the above document types
+	private static final String OTHER = "OTHER";
+	
+	private final Map<String, Segment> segments;
+	private final ConcurrentMap<K, Entry> index;
+	private final Set<K> pinned;
+	//number of cached entries holding a pin on the key
+	private final ConcurrentMap<K, AtomicInteger> references;
+	//keys pinned by each cached entry
+	private final ConcurrentMap<K, Set<K>> holds;
+	//running loads by key
+	private final ConcurrentMap<K, FutureTask<V>> loading;
+	//advances with every put, reads stamp their entry with it
+	private final AtomicLong clock;
+	
+	public ObjectCache(long max) {
+		segments = CollectionFactory.createMap();
+		index = new ConcurrentHashMap<K, Entry>();
+		pinned = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+		references = new ConcurrentHashMap<K, AtomicInteger>();
+		holds = new ConcurrentHashMap<K, Set<K>>();
+		loading = new ConcurrentHashMap<K, FutureTask<V>>();
+		clock = new AtomicLong();
+		long rest = max;
+		for(int i = 0; i < DOCUMENT_TYPES.length; i++) {
+			long budget = max / 100 * DEFAULT_SHARES[i];
+			segments.put(DOCUMENT_TYPES[i], new Segment(budget));
+			rest -= budget;
+		}
+		segments.put(OTHER, new Segment(rest));
+		segments.put(IConstant.TOPIC_MAP, new Segment(Long.MAX_VALUE));
+	}
+	
+	/**
+	 * Sets the budget in bytes for the given document type.
+	 * 
+	 * @param documentType document type
+	 * @param budget budget in bytes
+	 */
+	public void setBudget(String documentType, long budget) {
+		Segment segment = getSegment(documentType);
+		segment.budget = budget;
+		evict(segment, null);
+	}
+	
+	/**
+	 * Returns the cached construct and marks it as recently used.
+	 * 
+	 * @param key key
+	 * @return construct or <tt>null</tt>
+	 */
+	public V get(K key) {
+		Entry entry = index.get(key);
+		if(entry == null) return null;
+		long now = clock.get();
+		if(entry.accessed != now) entry.accessed = now;
+		return entry.value;
+	}
+	
+	/**
+	 * Returns the cached construct or loads it. Only one load runs per key, other
+	 * threads asking for the same key wait for its result. The loader is responsible
+	 * for caching the construct.
+	 * 
+	 * @param key key
+	 * @param loader loads the construct, may return <tt>null</tt>
+	 * @return construct or <tt>null</tt>
+	 */
+	public V get(K key, Callable<V> loader) {
+		V value = get(key);
+		if(value != null) return value;
+		FutureTask<V> task = new FutureTask<V>(loader);
+		FutureTask<V> running = loading.putIfAbsent(key, task);
+		if(running == null) {
+			running = task;
+			try {
+				//a load may have finished between the lookup and the registration
+				value = get(key);
+				if(value != null) return value;
+				task.run();
+			} finally {
+				loading.remove(key, task);
+			}
+		}
+		try {
+			return running.get();
+		} catch(InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch(ExecutionException e) {
+			if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
+	/**
+	 * Returns whether a construct is cached for the given key.
+	 * 
+	 * @param key key
+	 * @return boolean
+	 */
+	public boolean containsKey(K key) {
+		return index.containsKey(key);
+	}
+	
+	/**
+	 * Caches a construct and evicts the least recently used constructs
+	 * of the same document type if the budget is exceeded.
+	 * 
+	 * @param key key
+	 * @param value construct
+	 * @return previous construct or <tt>null</tt>
+	 */
+	public V put(K key, V value) {
+		Segment segment = getSegment(value.getDocumentType());
+		Entry entry = new Entry(value, estimateSize(value), segment, clock.incrementAndGet());
+		segment.size.addAndGet(entry.size);
+		Entry old = index.put(key, entry);
+		if(old != null) old.segment.size.addAndGet(-old.size);
+		evict(segment, key);
+		return old == null ? null : old.value;
+	}
+	
+	/**
+	 * Caches a construct unless one is cached for the key already.
+	 * 
+	 * @param key key
+	 * @param value construct
+	 * @return cached construct or <tt>null</tt> if the given one was cached
+	 */
+	public V putIfAbsent(K key, V value) {
+		Segment segment = getSegment(value.getDocumentType());
+		Entry entry = new Entry(value, estimateSize(value), segment, clock.incrementAndGet());
+		Entry old = index.putIfAbsent(key, entry);
+		if(old != null) return old.value;
+		segment.size.addAndGet(entry.size);
+		evict(segment, key);
+		return null;
+	}
+	
+	/**
+	 * Removes a construct from the cache.
+	 * 
+	 * @param key key
+	 * @return removed construct or <tt>null</tt>
+	 */
+	public V remove(K key) {
+		Entry entry = index.remove(key);
+		release(key);
+		if(entry == null) return null;
+		entry.segment.size.addAndGet(-entry.size);
+		return entry.value;
+	}
+	
+	/**
+	 * Pins the construct with the given key, pinned constructs are never evicted.
+	 * The key may be pinned before the construct is cached.
+	 * 
+	 * @param key key
+	 */
+	public void pin(K key) {
+		pinned.add(key);
+	}
 	
-	//maximum size
-	private final int MAX_ENTRIES;
+	/**
+	 * Unpins the construct with the given key.
+	 * 
+	 * @param key key
+	 */
+	public void unpin(K key) {
+		pinned.remove(key);
+	}
+	
+	/**
+	 * Pins the construct with the given key as long as the holder is cached. 
+	 * The pin is released when the holder is removed or evicted, the key stays 
+	 * pinned while any holder is cached.
+	 * 
+	 * @param key key
+	 * @param holder key of the cached construct holding the pin
+	 */
+	public void pin(K key, K holder) {
+		if(key.equals(holder) || !index.containsKey(holder)) return;
+		Set<K> held = holds.get(holder);
+		if(held == null) {
+			Set<K> created = Collections.newSetFromMap(new ConcurrentHashMap<K, Boolean>());
+			held = holds.putIfAbsent(holder, created);
+			if(held == null) held = created;
+		}
+		if(!held.add(key)) return;
+		AtomicInteger count = references.get(key);
+		if(count == null) {
+			AtomicInteger created = new AtomicInteger();
+			count = references.putIfAbsent(key, created);
+			if(count == null) count = created;
+		}
+		count.incrementAndGet();
+	}
+	
+	/**
+	 * Returns whether the construct with the given key is pinned.
+	 * 
+	 * @param key key
+	 * @return boolean
+	 */
+	public boolean isPinned(K key) {
+		return pinned.contains(key) || references.containsKey(key);
+	}
+	
+	/**
+	 * Returns the number of cached constructs.
+	 * 
+	 * @return size
+	 */
+	public int size() {
+		return index.size();
+	}
+	
+	/**
+	 * Returns the estimated size of all cached constructs in bytes.
+	 * 
+	 * @return bytes
+	 */
+	public long getEstimatedSize() {
+		long size = 0;
+		for(Segment segment : segments.values()) size += segment.size.get();
+		return size;
+	}
+	
+	/**
+	 * Removes all constructs and pins.
+	 */
+	public void clear() {
+		index.clear();
+		for(Segment segment : segments.values()) segment.size.set(0);
+		pinned.clear();
+		holds.clear();
+		references.clear();
+	}
+	
+	/**
+	 * Called after a construct was evicted.
+	 * 
+	 * @param key key
+	 * @param value evicted construct
+	 */
+	protected void evicted(K key, V value) {
+		//noop
+	}
+	
+	/**
+	 * Estimates the memory used by the construct. Stubs are not loaded for this.
+	 * 
+	 * @param value construct
+	 * @return size in bytes
+	 */
+	protected long estimateSize(V value) {
+		long size = ENTRY_SIZE;
+		if(!value.getLoaded()) return size;
+		size += LOCATOR_SIZE * value.getItemIdentifiers().size();
+		if(IConstant.TOPIC.equals(value.getDocumentType())) {
+			ITopic topic = (ITopic) value;
+			size += LOCATOR_SIZE * (topic.getSubjectIdentifiers().size() + topic.getSubjectLocators().size());
+		}
+		return size;
+	}
+	
+	//releases the pins held by the entry with the given key
+	private void release(K holder) {
+		Set<K> held = holds.remove(holder);
+		if(held == null) return;
+		for(K key : held) {
+			AtomicInteger count = references.get(key);
+			if(count != null && count.decrementAndGet() <= 0) references.remove(key, count);
+		}
+	}
+	
+	//returns the segment for the document type
+	private Segment getSegment(String documentType) {
+		Segment segment = documentType == null ? null : segments.get(documentType);
+		return segment == null ? segments.get(OTHER) : segment;
+	}
+	
+	//evicts the oldest entries until the segment is a tenth below its budget, 
+	//skipped if another thread is already evicting the segment
+	private void evict(Segment segment, K added) {
+		if(segment.size.get() <= segment.budget || !segment.lock.tryLock()) return;
+		try {
+			long target = segment.budget - segment.budget / 10;
+			List<Candidate> candidates = new ArrayList<Candidate>();
+			for(Map.Entry<K, Entry> mapEntry : index.entrySet()) {
+				Entry entry = mapEntry.getValue();
+				if(entry.segment == segment) candidates.add(new Candidate(mapEntry.getKey(), entry));
+			}
+			Collections.sort(candidates, new Comparator<Candidate>() {
+				@Override
+				public int compare(Candidate first, Candidate second) {
+					return first.accessed < second.accessed ? -1 : (first.accessed == second.accessed ? 0 : 1);
+				}
+			});
+			for(Candidate candidate : candidates) {
+				if(segment.size.get() <= target) break;
+				if(candidate.key.equals(added) || isPinned(candidate.key)) continue;
+				if(index.remove(candidate.key, candidate.entry)) {
+					segment.size.addAndGet(-candidate.entry.size);
+					release(candidate.key);
+					evicted(candidate.key, candidate.entry.value);
+				}
+			}
+		} finally {
+			segment.lock.unlock();
+		}
+	}
+	
+	//cached construct with its estimated size
+	private class Entry {
+		final V value;
+		final long size;
+		final Segment segment;
+		//clock value of the last access
+		volatile long accessed;
+		
+		Entry(V value, long size, Segment segment, long accessed) {
+			this.value = value;
+			this.size = size;
+			this.segment = segment;
+			this.accessed = accessed;
+		}
+	}
+	
+	//entry with the access stamp at the time the eviction started
+	private class Candidate {
+		final K key;
+		final Entry entry;
+		final long accessed;
+		
+		Candidate(K key, Entry entry) {
+			this.key = key;
+			this.entry = entry;
+			this.accessed = entry.accessed;
+		}
+	}
 	
-	public ObjectCache(int max) {
-		MAX_ENTRIES = max;
+	//budget and estimated size of the constructs of a document type
+	private class Segment {
+		
+		volatile long budget;
+		final AtomicLong size;
+		final ReentrantLock lock;
+		
+		Segment(long budget) {
+			this.budget = budget;
+			size = new AtomicLong();
+			lock = new ReentrantLock();
+		}
 	}
-}
\ No newline at end of file
+}
@@ -17,36 +17,49 @@
 package de.topicmapslab.couchtm.internal.utils;
 
 
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.io.IOException;
+import java.io.Reader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
+import java.util.concurrent.Callable;
 import java.net.URI;
+import java.net.URISyntaxException;
 
 import de.topicmapslab.couchtm.internal.api.ITopicMap;
 import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
+import de.topicmapslab.couchtm.internal.api.IRowMapper;
 
 import org.tmapi.core.Locator;
 import org.tmapi.core.TMAPIException;
 import org.tmapi.core.TopicMap;
 
+import org.apache.http.Header;
+import org.apache.http.HttpEntity;
+import org.apache.http.HttpResponse;
+import org.apache.http.HttpStatus;
+import org.apache.http.StatusLine;
 import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.DefaultHttpClient;
 import org.apache.http.impl.client.BasicResponseHandler;
 import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpHead;
 import org.apache.http.client.methods.HttpPut;
 import org.apache.http.client.methods.HttpPost;
 import org.apache.http.client.methods.HttpDelete;
+import org.apache.http.client.methods.HttpUriRequest;
 import org.apache.http.client.ResponseHandler;
 import org.apache.http.client.HttpResponseException;
-import org.apache.http.HttpVersion;
-import org.apache.http.params.HttpParams;
-import org.apache.http.params.BasicHttpParams;
-import org.apache.http.params.CoreProtocolPNames;
 import org.apache.http.entity.StringEntity;
+import org.apache.http.util.EntityUtils;
 import org.apache.http.client.utils.URIUtils;
 import org.apache.http.message.BasicNameValuePair;
 import org.apache.http.NameValuePair;
 import org.apache.http.client.utils.URLEncodedUtils;
+import org.json.JSONException;
+import org.json.JSONObject;
 
 /**
  * This class provides access to CouchDB.
@@ -59,32 +72,39 @@ public class SysDB {
 	protected String url;
 	protected int port;
 	protected String dbName;
-	protected HttpClient client;
-	protected HttpGet get;
-	protected HttpDelete delete;
-	protected HttpPut put;
-	protected HttpPost post;
-	protected ResponseHandler<String> responseHandler;
+	protected final HttpTransport transport;
+	protected final HttpClient client;
+	protected final ResponseHandler<String> responseHandler;
 	protected TopicMapDB topicMaps;
 	protected boolean flag = true;
+	//true if the transport was created by this instance and has to be shut down by it
+	private final boolean ownsTransport;
 	
 	public SysDB(String url, int port, String dbName, ITopicMapSystem sys) throws TMAPIException {
+		this(url, port, dbName, sys, sys == null ? null : sys.getTransport());
+	}
+	
+	public SysDB(String url, int port) throws TMAPIException {
+		this(url, port, null, null, null);
+	}
+	
+	public SysDB(String url, int port, HttpTransport transport) throws TMAPIException {
+		this(url, port, null, null, transport);
+	}
+	
+	protected SysDB(String url, int port, String dbName, ITopicMapSystem sys, HttpTransport transport) throws TMAPIException {
 		this.url = url;
 		this.port = port;
 		this.dbName = dbName;
-		HttpParams params = new BasicHttpParams();
-		params.setParameter(CoreProtocolPNames.PROTOCOL_VERSION, HttpVersion.HTTP_1_1);
-		client = new DefaultHttpClient(params);
+		ownsTransport = (transport == null);
+		this.transport = ownsTransport ? new HttpTransport() : transport;
+		client = this.transport.getClient();
 		responseHandler = new BasicResponseHandler();
 		if(!dbUp()) throw new TMAPIException("Database not reachable");
 		topicMaps = null;
 		if(sys == null )updateTopicMapDB();
 	}
 	
-	public SysDB(String url, int port) throws TMAPIException {
-		this(url, port, null, null);
-	}
-	
 	/**
 	 * Query the server, not a specific database.
 	 *  
@@ -95,7 +115,7 @@ public class SysDB {
 		String responseBody = "{}";
 		try {
 			URI uri = URIUtils.createURI("http", url, port, query, null, null);
-			get = new HttpGet(uri);
+			HttpGet get = new HttpGet(uri);
 			responseBody = client.execute(get, responseHandler);
 		} catch(Exception e) {
 			e.printStackTrace();
@@ -114,6 +134,29 @@ public class SysDB {
 		else return false;
 	}
 	
+	/**
+	 * Retrieves the current revision of a document with a HEAD request.
+	 * 
+	 * @param id document id
+	 * @return revision or <tt>null</tt> if there is no such document
+	 */
+	protected String getRevision(String id) {
+		try {
+			URI uri = URIUtils.createURI("http", url, port, dbName+"/"+id, null, null);
+			return client.execute(new HttpHead(uri), new ResponseHandler<String>() {
+				public String handleResponse(HttpResponse response) throws IOException {
+					if(response.getEntity() != null) response.getEntity().consumeContent();
+					if(response.getStatusLine().getStatusCode() >= 300) return null;
+					Header etag = response.getFirstHeader("ETag");
+					return etag == null ? null : etag.getValue().replace("\"", "");
+				}
+			});
+		} catch(Exception e) {
+			e.printStackTrace();
+			return null;
+		}
+	}
+	
 	/**
 	 * Method used to retrieve something from the database.
 	 * 
@@ -144,8 +187,12 @@ public class SysDB {
 		try {
 			uri = URIUtils.createURI("http", url, port, db+"/"+query, key, null);
 			//System.out.println("get: "+uri.toString());
-			get = new HttpGet(uri);
-			responseBody = client.execute(get, responseHandler);
+			final HttpGet get = new HttpGet(uri);
+			responseBody = transport.coalesce("GET "+uri, new Callable<String>() {
+				public String call() throws Exception {
+					return client.execute(get, responseHandler);
+				}
+			});
 		} catch(HttpResponseException e) {
 			//System.out.println("status Code: "+e.getStatusCode());
 			//System.out.println("URI: "+uri.toString());
@@ -157,6 +204,294 @@ public class SysDB {
 		return responseBody;
 	}
 	
+	/**
+	 * Sends a GET request for a view to the database and maps the rows of the
+	 * response with the given mapper once the response has been read.
+	 * 
+	 * @param query
+	 * @param key
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	protected <T, C extends Collection<? super T>> C getRows(String query, String key, IRowMapper<T> mapper, C target) {
+		return getRows(query, parameters(key, false), mapper, target);
+	}
+	
+	/**
+	 * Sends a GET request for a view with the given query parameters to the database
+	 * and maps the rows of the response with the given mapper into the target once 
+	 * the response has been read. Identical running reads share the response, each 
+	 * caller maps the rows with its own mapper.
+	 * 
+	 * @param query
+	 * @param parameters query parameters
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	protected <T, C extends Collection<? super T>> C getRows(String query, List<NameValuePair> parameters, IRowMapper<T> mapper, C target) {
+		return getRows(query, parameters, mapper, null, target);
+	}
+	
+	/**
+	 * Sends a GET request for a view with the given query parameters to the database
+	 * and maps the rows of the response with the given mapper once all rows have 
+	 * been read and the connection is released. Callers passing the same share key for an identical running read get 
+	 * the rows mapped once, so the key has to stand for a mapper without state or side 
+	 * effects. Without a share key only the parsed rows are shared and they are mapped 
+	 * into the target directly.
+	 * 
+	 * @param query
+	 * @param parameters query parameters
+	 * @param mapper row mapper
+	 * @param shared share key of a stateless mapper or <tt>null</tt>
+	 * @param target target collection
+	 * @return target
+	 */
+	protected <T, C extends Collection<? super T>> C getRows(String query, List<NameValuePair> parameters, final IRowMapper<T> mapper, String shared, C target) {
+		String params = parameters.isEmpty() ? null : URLEncodedUtils.format(parameters, "UTF-8");
+		try {
+			final URI uri = URIUtils.createURI("http", url, port, dbName+"/"+query, params, null);
+			if(shared != null) {
+				List<T> rows = transport.coalesce("ROWS "+shared+" "+uri, new Callable<List<T>>() {
+					public List<T> call() throws Exception {
+						return JSONToObject.mapRows(readRows(new HttpGet(uri)), mapper, CollectionFactory.<T>createList());
+					}
+				});
+				target.addAll(rows);
+			} else {
+				List<JSONObject> rows = transport.coalesce("ROWS "+uri, new Callable<List<JSONObject>>() {
+					public List<JSONObject> call() throws Exception {
+						return readRows(new HttpGet(uri));
+					}
+				});
+				JSONToObject.mapRows(rows, mapper, target);
+			}
+		} catch (Exception e) {
+			e.printStackTrace();
+		} 
+		return target;
+	}
+	
+	/**
+	 * Sends a GET request for a view with the given query parameters to the database
+	 * and streams the rows into the given mapper while they are read from the connection. 
+	 * Unlike <tt>getRows</tt> the request is never shared with an identical running 
+	 * request, for mappers with side effects. The connection is held while the mapper 
+	 * runs, so the mapper must not block or send requests of its own.
+	 * 
+	 * @param query
+	 * @param parameters query parameters
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	protected <T, C extends Collection<? super T>> C streamRows(String query, List<NameValuePair> parameters, IRowMapper<T> mapper, C target) {
+		String params = parameters.isEmpty() ? null : URLEncodedUtils.format(parameters, "UTF-8");
+		try {
+			URI uri = URIUtils.createURI("http", url, port, dbName+"/"+query, params, null);
+			executeRows(new HttpGet(uri), mapper, target, true);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} 
+		return target;
+	}
+	
+	/**
+	 * Sends a POST request with the given entity to the database and maps the 
+	 * rows of the response with the given mapper. Used for the multi-key queries
+	 * of views and <tt>_all_docs</tt>.
+	 * 
+	 * @param query
+	 * @param parameters query parameters
+	 * @param entity request entity
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @return target
+	 */
+	protected <T, C extends Collection<? super T>> C postRows(String query, List<NameValuePair> parameters, String entity, IRowMapper<T> mapper, C target) {
+		String params = parameters.isEmpty() ? null : URLEncodedUtils.format(parameters, "UTF-8");
+		try {
+			URI uri = URIUtils.createURI("http", url, port, dbName+"/"+query, params, null);
+			HttpPost post = new HttpPost(uri);
+			post.addHeader("Content-Type","application/json");
+			post.setEntity(new StringEntity(entity, "UTF-8"));
+			executeRows(post, mapper, target, false);
+		} catch (Exception e) {
+			e.printStackTrace();
+		} 
+		return target;
+	}
+	
+	/**
+	 * Executes a request and maps the rows of the response with the given mapper.
+	 * Unless <tt>stream</tt> is set the rows are parsed while they are read, but the 
+	 * connection is released before the first row is mapped, so mappers may load referenced 
+	 * constructs with requests of their own.
+	 * 
+	 * @param request request
+	 * @param mapper row mapper
+	 * @param target target collection
+	 * @param stream whether the rows are mapped while the response is read
+	 */
+	private <T, C extends Collection<? super T>> void executeRows(HttpUriRequest request, final IRowMapper<T> mapper, final C target, boolean stream) throws IOException {
+		if(!stream) {
+			JSONToObject.mapRows(readRows(request), mapper, target);
+			return;
+		}
+		try {
+			client.execute(request, new ResponseHandler<Object>() {
+				public Object handleResponse(HttpResponse response) throws IOException {
+					HttpEntity entity = rowsEntity(response);
+					if(entity == null) return null;
+					String charset = EntityUtils.getContentCharSet(entity);
+					Reader reader = new InputStreamReader(entity.getContent(), charset == null ? "UTF-8" : charset);
+					try {
+						JSONToObject.mapRows(reader, mapper, target);
+					} catch(Exception e) {
+						e.printStackTrace();
+					} finally {
+						entity.consumeContent();
+					}
+					return null;
+				}
+			});
+		} catch(HttpResponseException e) {
+			//no rows
+		}
+	}
+	
+	/**
+	 * Executes a request for rows and parses the rows while the response is read, 
+	 * without keeping the response body. The connection is released afterwards.
+	 * 
+	 * @param request request
+	 * @return rows, empty if there are no rows
+	 */
+	private List<JSONObject> readRows(HttpUriRequest request) throws IOException {
+		final List<JSONObject> rows = CollectionFactory.createList();
+		try {
+			client.execute(request, new ResponseHandler<Object>() {
+				public Object handleResponse(HttpResponse response) throws IOException {
+					HttpEntity entity = rowsEntity(response);
+					if(entity == null) return null;
+					String charset = EntityUtils.getContentCharSet(entity);
+					Reader reader = new InputStreamReader(entity.getContent(), charset == null ? "UTF-8" : charset);
+					try {
+						JSONToObject.mapRows(reader, JSONToObject.rowMapper(), rows);
+					} catch(Exception e) {
+						e.printStackTrace();
+					} finally {
+						entity.consumeContent();
+					}
+					return null;
+				}
+			});
+		} catch(HttpResponseException e) {
+			//no rows
+		}
+		return rows;
+	}
+	
+	//returns the entity of a successful response, an error response is consumed and thrown
+	private static HttpEntity rowsEntity(HttpResponse response) throws IOException {
+		StatusLine statusLine = response.getStatusLine();
+		HttpEntity entity = response.getEntity();
+		if(statusLine.getStatusCode() >= 300) {
+			if(entity != null) entity.consumeContent();
+			throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+		}
+		return entity;
+	}
+	
+	/**
+	 * Creates a client with a connection of its own outside the pool of the transport.
+	 * 
+	 * @param socketTimeout time in milliseconds without data after which a read fails
+	 * @return client, has to be shut down by the caller
+	 */
+	protected HttpClient createDedicatedClient(int socketTimeout) {
+		return transport.createDedicatedClient(socketTimeout);
+	}
+	
+	/**
+	 * Follows the continuous <tt>_changes</tt> feed of the database and passes each 
+	 * change to the mapper as soon as it is read. Returns when the server ends the
+	 * feed after the given time without changes or when the connection is closed.
+	 * The feed holds its connection all the time, so it is read with a client of 
+	 * its own instead of a pooled connection.
+	 * 
+	 * @param feedClient client with a connection of its own, see {@link #createDedicatedClient(int)}
+	 * @param since sequence after which changes are read
+	 * @param timeout time in milliseconds without changes after which the server ends the feed
+	 * @param includeDocs whether each change contains the changed document as <tt>doc</tt>
+	 * @param mapper gets each change containing <tt>seq</tt>, <tt>id</tt> and <tt>changes</tt>
+	 * @return sequence of the last change read or <tt>since</tt> if there was none
+	 * @throws IOException
+	 */
+	protected Object followChanges(HttpClient feedClient, final Object since, int timeout, boolean includeDocs, final IRowMapper<?> mapper) throws IOException {
+		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+		parameters.add(new BasicNameValuePair("feed", "continuous"));
+		if(includeDocs) parameters.add(new BasicNameValuePair("include_docs", "true"));
+		parameters.add(new BasicNameValuePair("since", String.valueOf(since)));
+		parameters.add(new BasicNameValuePair("timeout", String.valueOf(timeout)));
+		URI uri;
+		try {
+			uri = URIUtils.createURI("http", url, port, dbName+"/_changes", URLEncodedUtils.format(parameters, "UTF-8"), null);
+		} catch(URISyntaxException e) {
+			throw new IOException(e.getMessage());
+		}
+		return feedClient.execute(new HttpGet(uri), new ResponseHandler<Object>() {
+			public Object handleResponse(HttpResponse response) throws IOException {
+				StatusLine statusLine = response.getStatusLine();
+				HttpEntity entity = response.getEntity();
+				if(statusLine.getStatusCode() >= 300) {
+					if(entity != null) entity.consumeContent();
+					throw new HttpResponseException(statusLine.getStatusCode(), statusLine.getReasonPhrase());
+				}
+				Object seq = since;
+				if(entity == null) return seq;
+				String charset = EntityUtils.getContentCharSet(entity);
+				BufferedReader reader = new BufferedReader(new InputStreamReader(entity.getContent(), charset == null ? "UTF-8" : charset));
+				try {
+					String line;
+					//one change per line, empty lines are heartbeats
+					while((line = reader.readLine()) != null) {
+						if(line.trim().length() == 0) continue;
+						JSONObject change = new JSONObject(line);
+						if(change.has("last_seq")) return change.get("last_seq");
+						mapper.mapRow(change);
+						seq = change.opt("seq");
+					}
+				} catch(JSONException e) {
+					e.printStackTrace();
+				} finally {
+					entity.consumeContent();
+				}
+				return seq;
+			}
+		});
+	}
+	
+	/**
+	 * Creates the query parameters of a view request.
+	 * 
+	 * @param key key, may be null
+	 * @param includeDocs whether the documents of the rows are included
+	 * @return parameters
+	 */
+	protected static List<NameValuePair> parameters(String key, boolean includeDocs) {
+		List<NameValuePair> parameters = new ArrayList<NameValuePair>();
+		if(key != null) parameters.add(new BasicNameValuePair("key", key));
+		if(includeDocs) {
+			//documents can only be included in unreduced rows
+			parameters.add(new BasicNameValuePair("reduce", "false"));
+			parameters.add(new BasicNameValuePair("include_docs", "true"));
+		}
+		return parameters;
+	}
+	
 	/**
 	 * Insertion of a topic map construct in the database.
 	 * 
@@ -166,6 +501,7 @@ public class SysDB {
 	 */
 	protected String putMethod(String query, String entity) {
 		String responseBody = "{}";
+		HttpPut put = null;
 		try {
 			put = new HttpPut("http://"+url+":"+port+"/"+query);
 			if(entity != null && entity.length() > 0) {
@@ -179,10 +515,37 @@ public class SysDB {
 		} catch(Exception e) {
 			//System.out.println(put.getRequestLine());
 			e.printStackTrace();
+		} finally {
+			transport.written();
 		}
 		return responseBody;
 	}
 	
+	/**
+	 * Creates a document with a PUT request without revision.
+	 * 
+	 * @param query Query to be executed
+	 * @param entity document
+	 * @return result string or <tt>null</tt> if the document already exists
+	 */
+	protected String createMethod(String query, String entity) {
+		HttpPut put = new HttpPut("http://"+url+":"+port+"/"+query);
+		try {
+			StringEntity stringEntity = new StringEntity(entity, "UTF-8");
+			stringEntity.setContentEncoding("application/json");
+			put.setEntity(stringEntity);
+			return client.execute(put, responseHandler);
+		} catch(HttpResponseException e) {
+			if(e.getStatusCode() == HttpStatus.SC_CONFLICT) return null;
+			e.printStackTrace();
+		} catch(Exception e) {
+			e.printStackTrace();
+		} finally {
+			transport.written();
+		}
+		return "{}";
+	}
+	
 	/**
 	 * Sends a POST request to the database.
 	 * 
@@ -192,7 +555,7 @@ public class SysDB {
 	 */
 	protected String postMethod(String query, String entity) {
 		String responseBody = "";
-		post = new HttpPost("http://"+url+":"+port+"/"+query);
+		HttpPost post = new HttpPost("http://"+url+":"+port+"/"+query);
 		post.addHeader("Content-Type","application/json");
 		try {
 			if(entity != null && entity.length() > 0) {
@@ -203,6 +566,8 @@ public class SysDB {
 		} catch(Exception e) {
 			System.err.println(post.getRequestLine());
 			e.printStackTrace();
+		} finally {
+			transport.written();
 		}
 		return responseBody;
 	}
@@ -224,11 +589,13 @@ public class SysDB {
 		}
 		try {
 			uri = URIUtils.createURI("http", url, port, (dbName == null ? "" : dbName+"/")+query, key, null);
-			delete = new HttpDelete(uri);
+			HttpDelete delete = new HttpDelete(uri);
 			client.execute(delete, responseHandler);
 		} catch(Exception e) {
 			System.err.println(uri.toString());
 			e.printStackTrace();
+		} finally {
+			transport.written();
 		}
 		return statusCode;
 	}
@@ -319,9 +686,10 @@ public class SysDB {
 	}
 	
 	/**
-	 * Releases the conncetion to the database.
+	 * Releases the conncetion to the database. A transport shared with
+	 * the topic map system is shut down by the system.
 	 */
 	public void releaseConnection() {
-		client.getConnectionManager().shutdown();
+		if(ownsTransport) transport.shutdown();
 	}
 }
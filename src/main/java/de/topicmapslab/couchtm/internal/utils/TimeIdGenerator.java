@@ -0,0 +1,64 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+import de.topicmapslab.couchtm.internal.api.IIdGenerator;
+
+/**
+ * Generates time ordered IDs in the UUID version 7 layout. The first 48 bits are 
+ * the time in milliseconds, followed by a 12 bit sequence and a random node value 
+ * per generator. IDs of one generator are strictly increasing, so new documents 
+ * are appended at the end of the database B-tree.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class TimeIdGenerator implements IIdGenerator {
+	
+	private static final int SEQUENCE_BITS = 12;
+	
+	//time in milliseconds and sequence of the last ID
+	private final AtomicLong last;
+	//node value with the IETF variant bits
+	private final long node;
+	
+	public TimeIdGenerator() {
+		last = new AtomicLong();
+		node = (new SecureRandom().nextLong() & 0x3FFFFFFFFFFFFFFFL) | 0x8000000000000000L;
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.internal.api.IIdGenerator#nextId()
+	 */
+	@Override
+	public String nextId() {
+		long now = System.currentTimeMillis() << SEQUENCE_BITS;
+		long prev, next;
+		do {
+			prev = last.get();
+			//an exhausted sequence continues in the next millisecond
+			next = now > prev ? now : prev + 1;
+		} while(!last.compareAndSet(prev, next));
+		long msb = ((next >>> SEQUENCE_BITS) << 16) | 0x7000L | (next & 0xFFFL);
+		return new UUID(msb, node).toString();
+	}
+	
+}
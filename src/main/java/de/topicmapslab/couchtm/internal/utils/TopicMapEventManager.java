@@ -188,7 +188,7 @@ public class TopicMapEventManager implements IEventHandler{
 		Set<ITopic> existingTopics = tmom.getTopicsBySubjectIdentifier(newValue);
 		existingTopics.addAll(tmom.getTopicsByItemIdentifier(newValue));
 		for(ITopic topic : existingTopics) {
-			if(!topic.getId().equals(sender.getId())) existing = topic;
+			if(!ConstructId.same(topic, sender)) existing = topic;
 		}
 		if(existing == null) {
 			tmom.saveConstruct(sender);
@@ -210,7 +210,7 @@ public class TopicMapEventManager implements IEventHandler{
 		ITopic existing = null;
 		Set<ITopic> existingTopics = tmom.getTopicsBySubjectLocator(newValue);
 		for(ITopic topic : existingTopics) {
-			if(!topic.getId().equals(sender.getId())) existing = topic;
+			if(!ConstructId.same(topic, sender)) existing = topic;
 		}
 		if(existing == null) {
 			tmom.saveConstruct(sender);
@@ -236,7 +236,7 @@ public class TopicMapEventManager implements IEventHandler{
 			Set<ITopic> existingTopics = tmom.getTopicsByItemIdentifier(newValue);
 			existingTopics.addAll(tmom.getTopicsBySubjectIdentifier(newValue));
 			for(ITopic topic : existingTopics) {
-				if(!topic.getId().equals(sender.getId())) existing = topic;
+				if(!ConstructId.same(topic, sender)) existing = topic;
 			}
 		}
 		if(existing == null || existing.equals(sender)) tmom.saveConstruct(sender);
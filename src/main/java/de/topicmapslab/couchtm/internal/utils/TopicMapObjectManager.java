@@ -25,14 +25,38 @@ import de.topicmapslab.couchtm.internal.api.IOccurrence;
 import de.topicmapslab.couchtm.internal.api.IRole;
 import de.topicmapslab.couchtm.internal.api.IAssociation;
 import de.topicmapslab.couchtm.internal.api.IConstant;
+import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
+import de.topicmapslab.couchtm.internal.api.IRowMapper;
 
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 import java.util.Iterator;
 
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.tmapi.core.Construct;
 import org.tmapi.core.Locator;
+import org.tmapi.core.TMAPIRuntimeException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.Typed;
 
 import java.util.Map;
-import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.WeakHashMap;
+import java.lang.ref.WeakReference;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import de.topicmapslab.couchtm.core.AssociationImpl;
+import de.topicmapslab.couchtm.core.ConstructImpl;
+import de.topicmapslab.couchtm.core.NameImpl;
+import de.topicmapslab.couchtm.core.OccurrenceImpl;
+import de.topicmapslab.couchtm.core.RoleImpl;
+import de.topicmapslab.couchtm.core.TopicImpl;
+import de.topicmapslab.couchtm.core.VariantImpl;
 
 /**
  * Class to providing various methods to access topic map constructs.
@@ -42,14 +66,90 @@ import java.util.HashMap;
 public class TopicMapObjectManager {
 	
 	private final DB db;
-	private final ObjectCache<String, IConstruct> idToConstruct;
+	private final ObjectCache<ConstructId, IConstruct> idToConstruct;
 	private final Map<Locator, IConstruct> iidToConstruct;
+	//locators in iidToConstruct per construct, dropped together with the construct
+	private final Map<IConstruct, Set<Locator>> constructToLocators;
+	//unloaded constructs for referenced ids, one per id as long as it is referenced
+	private final Map<ConstructId, WeakReference<IConstruct>> stubs;
 	private ITopicMap tm;
-	
-	public TopicMapObjectManager(int max, DB db) {
+	//content derived IDs for topics, names and occurrences
+	private boolean contentIds;
+	//follows the changes of other writers, null if the cache is not kept coherent
+	private ChangesFeed changes;
+	//capacity of the identity filter, 0 if locator lookups always query the database
+	private long identityCapacity;
+	//identity locators in the database, a definite miss skips the view query
+	private volatile LocatorFilter identities;
+	
+	public TopicMapObjectManager(long max, DB db) {
 		this.db = db;
-		idToConstruct = new ObjectCache<String, IConstruct>(max);
-		iidToConstruct = new HashMap<Locator, IConstruct>();
+		idToConstruct = new ObjectCache<ConstructId, IConstruct>(max) {
+			@Override
+			protected void evicted(ConstructId id, IConstruct construct) {
+				removeLocators(construct);
+			}
+		};
+		iidToConstruct = new ConcurrentHashMap<Locator, IConstruct>();
+		constructToLocators = CollectionFactory.createIdentityMap();
+		stubs = new WeakHashMap<ConstructId, WeakReference<IConstruct>>();
+	}
+	
+	/**
+	 * Creates an object manager with the cache sizes configured in the system properties
+	 * <tt>CACHE_SIZE</tt> and <tt>CACHE_SIZE_&lt;DOCUMENTTYPE&gt;</tt>.
+	 * 
+	 * @param sys topic map system
+	 * @param db database
+	 */
+	public TopicMapObjectManager(ITopicMapSystem sys, DB db) {
+		this(getSizeProperty(sys, "CACHE_SIZE", ObjectCache.DEFAULT_SIZE), db);
+		for(String documentType : ObjectCache.DOCUMENT_TYPES) {
+			long budget = getSizeProperty(sys, "CACHE_SIZE_"+documentType, -1);
+			if(budget >= 0) idToConstruct.setBudget(documentType, budget);
+		}
+		contentIds = sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("DETERMINISTIC_IDS")));
+		if(sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("LOCATOR_FILTER")))) {
+			//without the feed locators added by other nodes are missed and their topics are created again
+			if(!Boolean.valueOf(String.valueOf(sys.getProperty("CHANGES_FEED")))) {
+				throw new TMAPIRuntimeException("LOCATOR_FILTER needs CHANGES_FEED");
+			}
+			identityCapacity = getSizeProperty(sys, "LOCATOR_FILTER_SIZE", 100000);
+		}
+		if(sys != null && Boolean.valueOf(String.valueOf(sys.getProperty("CHANGES_FEED")))) {
+			changes = new ChangesFeed(this, db, getNodeName(sys));
+		}
+	}
+	
+	//name of this node for the checkpoint of the changes feed, defaults to the host name
+	private static String getNodeName(ITopicMapSystem sys) {
+		Object node = sys.getProperty("CHANGES_NODE");
+		if(node != null && node.toString().length() > 0) return node.toString();
+		try {
+			return InetAddress.getLocalHost().getHostName();
+		} catch(UnknownHostException e) {
+			return "localhost";
+		}
+	}
+	
+	/**
+	 * Returns whether constructs are created with content derived IDs.
+	 * 
+	 * @return <tt>true</tt> if the system property <tt>DETERMINISTIC_IDS</tt> is set
+	 */
+	public boolean hasContentIds() {
+		return contentIds;
+	}
+	
+	//reads a size property, falls back to the default value if not set
+	private static long getSizeProperty(ITopicMapSystem sys, String name, long defaultValue) {
+		Object value = sys == null ? null : sys.getProperty(name);
+		if(value == null) return defaultValue;
+		try {
+			return Long.valueOf(value.toString());
+		} catch(NumberFormatException e) {
+			return defaultValue;
+		}
 	}
 	
 	/**
@@ -60,12 +160,52 @@ public class TopicMapObjectManager {
 	 */
 	public void setTopicMap(ITopicMap tm, Locator loc) {
 		this.tm = tm;
-		idToConstruct.put(tm.getId(), tm);
-		iidToConstruct.put(loc, tm);
+		idToConstruct.put(tm.getConstructId(), tm);
+		idToConstruct.pin(tm.getConstructId());
+		putLocator(loc, tm);
 		for(Locator loc2 : tm.getItemIdentifiers()) {
-			iidToConstruct.put(loc2, tm);
+			putLocator(loc2, tm);
 		}
-		
+		if(identityCapacity > 0) buildIdentityFilter();
+		if(changes != null) changes.start();
+	}
+	
+	/**
+	 * Fills the identity filter with the item identifiers, subject identifiers and 
+	 * subject locators of the topic map, streamed from the identity views.
+	 */
+	private void buildIdentityFilter() {
+		final LocatorFilter filter = new LocatorFilter(identityCapacity);
+		streamLocators("getconstructbylocator", LocatorFilter.ITEM_IDENTIFIER, filter);
+		streamLocators("gettopicbysubjectidentifier", LocatorFilter.SUBJECT_IDENTIFIER, filter);
+		streamLocators("gettopicbysubjectlocator", LocatorFilter.SUBJECT_LOCATOR, filter);
+		identities = filter;
+	}
+	
+	//adds the locators of an identity view to the filter
+	private void streamLocators(String view, final char kind, final LocatorFilter filter) {
+		db.streamLocators(view, new IRowMapper<Object>() {
+			public Object mapRow(JSONObject row) {
+				JSONArray key = row.optJSONArray("key");
+				if(key != null && key.length() > 1) filter.add(kind, key.optString(1));
+				return null;
+			}
+		}, tm);
+	}
+	
+	/**
+	 * Returns the filter of the identity locators in the database.
+	 * 
+	 * @return filter or <tt>null</tt> if the system property <tt>LOCATOR_FILTER</tt> is not set
+	 */
+	public LocatorFilter getIdentityFilter() {
+		return identities;
+	}
+	
+	//false if no construct in the database has the locator
+	private boolean mightExist(char kind, Locator locator) {
+		LocatorFilter filter = identities;
+		return filter == null || filter.mightContain(kind, locator.getReference());
 	}
 	
 	/**
@@ -92,7 +232,7 @@ public class TopicMapObjectManager {
 	 * @param locator
 	 */
 	public void removeEntry(Locator locator) {
-		iidToConstruct.remove(locator);
+		removeLocator(locator);
 	}
 	
 	/**
@@ -102,20 +242,63 @@ public class TopicMapObjectManager {
 	 * @param construct
 	 */
 	public void addEntry(Locator locator, IConstruct construct) {
-		iidToConstruct.put(locator, construct);
+		putLocator(locator, construct);
 	}
 	
 	public void compactDB() {
 		db.compactDB();
 	}
 	
+	/**
+	 * Writes all pending saves to the database.
+	 */
+	public void flush() {
+		db.flush();
+	}
+	
+	/**
+	 * Starts a batch.
+	 */
+	public void beginBatch() {
+		db.beginBatch();
+	}
+	
+	/**
+	 * Commits the current batch.
+	 * 
+	 * @param allOrNothing <tt>true</tt> if either all or none of the documents should be saved
+	 * @return id and error of each document which could not be written, empty if all were written
+	 */
+	public Map<String, String> commitBatch(boolean allOrNothing) {
+		return db.commitBatch(allOrNothing);
+	}
+	
+	/**
+	 * Discards the batch of the current thread. The constructs changed by the batch 
+	 * are dropped from the cache since they contain changes which were not written,
+	 * they are loaded again when they are requested next.
+	 */
+	public void discardBatch() {
+		for(String id : db.discardBatch()) {
+			IConstruct construct = idToConstruct.get(ConstructId.valueOf(id));
+			if(construct != null && construct != tm) drop(construct);
+		}
+	}
+	
 	public void clear(ITopicMap tm) {
 		idToConstruct.clear();
-		iidToConstruct.clear();
+		synchronized(constructToLocators) {
+			iidToConstruct.clear();
+			constructToLocators.clear();
+		}
+		synchronized(stubs) {
+			stubs.clear();
+		}
 		if(tm != null) {
-			idToConstruct.put(tm.getId(), tm);
+			idToConstruct.put(tm.getConstructId(), tm);
+			idToConstruct.pin(tm.getConstructId());
 			for(Locator iid : tm.getItemIdentifiers()) {
-				iidToConstruct.put(iid, tm);
+				putLocator(iid, tm);
 			}
 		}
 	}
@@ -126,12 +309,17 @@ public class TopicMapObjectManager {
 	 * @param construct
 	 */
 	public void deleteConstruct(IConstruct construct) {
-		idToConstruct.remove(construct.getId());
+		idToConstruct.remove(construct.getConstructId());
+		idToConstruct.unpin(construct.getConstructId());
+		synchronized(stubs) {
+			stubs.remove(construct.getConstructId());
+		}
 		for(Locator locator : construct.getItemIdentifiers()) {
-			iidToConstruct.remove(locator);
+			removeLocator(locator);
 		}
+		removeLocators(construct);
 		if(construct.getDocumentType().equals(IConstant.TOPIC)) deleteTopic((ITopic) construct);
-		else db.deleteDocument(construct.getId(), construct.getRev());
+		else db.deleteConstruct(construct);
 		construct = null;
 	}
 	
@@ -142,23 +330,173 @@ public class TopicMapObjectManager {
 	 */
 	private void deleteTopic(ITopic topic) {
 		for(Locator sid : topic.getSubjectIdentifiers()) {
-			iidToConstruct.remove(sid);
+			removeLocator(sid);
 		}
 		for(Locator slo : topic.getSubjectLocators()) {
-			iidToConstruct.remove(slo);
+			removeLocator(slo);
 		}
 		db.deleteDocument(topic.getId(), topic.getRev());
 	}
 	
+	/**
+	 * Refreshes a construct changed by another writer in place with the current revision 
+	 * of its document, so instances held by the application see the change. Cached 
+	 * constructs embedded in the document are refreshed as well. Deleted constructs are
+	 * dropped from the cache and the disk cache. Constructs already at the given revision, 
+	 * constructs with unwritten changes and the topic map are kept.
+	 * 
+	 * @param id document id
+	 * @param rev revision of the change, <tt>null</tt> if the document was deleted
+	 */
+	public void invalidate(String id, String rev) {
+		db.invalidate(id, rev);
+		IConstruct construct = idToConstruct.get(ConstructId.valueOf(id));
+		if(construct == null || construct == tm) return;
+		if(rev != null && rev.equals(construct.getRev())) return;
+		if(db.isPending(id)) return;
+		JSONObject doc = rev == null ? null : db.getDocument(id);
+		if(doc == null || !refresh(construct, doc)) drop(construct);
+	}
+	
+	//loads the state of the document into the cached construct and its cached embedded constructs
+	private boolean refresh(IConstruct construct, JSONObject doc) {
+		IConstruct fresh = JSONToObject.JSONToDetachedConstruct(doc, tm, this);
+		if(fresh == null || !construct.getDocumentType().equals(fresh.getDocumentType())) return false;
+		Map<ConstructId, IConstruct> children = CollectionFactory.createMap();
+		for(IConstruct child : getEmbeddedChildren(construct)) children.put(child.getConstructId(), child);
+		removeLocators(construct);
+		construct.refresh(fresh);
+		updateCache(construct);
+		JSONArray embedded = doc.optJSONArray("embedded");
+		if(embedded != null) {
+			//names before their variants, as written
+			for(int i = 0; i < embedded.length(); i++) {
+				JSONObject obj = embedded.optJSONObject(i);
+				if(obj == null) continue;
+				IConstruct child = idToConstruct.get(ConstructId.valueOf(obj.optString("_id")));
+				if(child == null) continue;
+				children.remove(child.getConstructId());
+				if(!refresh(child, obj)) drop(child);
+			}
+		}
+		//removed by the other writer
+		for(IConstruct child : children.values()) drop(child);
+		return true;
+	}
+	
+	//returns the cached constructs embedded in the document of the construct, variants included
+	private List<IConstruct> getEmbeddedChildren(IConstruct construct) {
+		List<IConstruct> embedded = CollectionFactory.createList();
+		List<Construct> children = CollectionFactory.createList();
+		String documentType = construct.getDocumentType();
+		if(documentType.equals(IConstant.TOPIC)) {
+			children.addAll(((ITopic) construct).getNames());
+			children.addAll(((ITopic) construct).getOccurrences());
+		}
+		else if(documentType.equals(IConstant.NAME)) children.addAll(((IName) construct).getVariants());
+		else if(documentType.equals(IConstant.ASSOCIATION)) children.addAll(((IAssociation) construct).getRoles());
+		for(Construct child : children) {
+			IConstruct cached = idToConstruct.get(ConstructId.of(child));
+			if(cached == null || !db.isEmbedded(cached)) continue;
+			embedded.add(cached);
+			embedded.addAll(getEmbeddedChildren(cached));
+		}
+		return embedded;
+	}
+	
+	//removes the construct and its cached embedded constructs from the cache
+	private void drop(IConstruct construct) {
+		idToConstruct.remove(construct.getConstructId());
+		synchronized(stubs) {
+			stubs.remove(construct.getConstructId());
+		}
+		removeLocators(construct);
+		for(IConstruct child : getEmbeddedChildren(construct)) {
+			idToConstruct.remove(child.getConstructId());
+			removeLocators(child);
+		}
+	}
+	
 	/**
 	 * Adds an <tt>IConstruct</tt> to both maps.
 	 * 
 	 * @param construct
 	 */
 	public void addConstruct(IConstruct construct) {
-		if(!idToConstruct.containsKey(construct.getId())) idToConstruct.put(construct.getId(), construct);
+		if(!idToConstruct.containsKey(construct.getConstructId())) idToConstruct.put(construct.getConstructId(), construct);
 		for(Locator locator : construct.getItemIdentifiers()) {
-			if(!iidToConstruct.containsKey(locator)) iidToConstruct.put(locator, construct);
+			if(!iidToConstruct.containsKey(locator)) putLocator(locator, construct);
+		}
+		pinTypes(construct);
+	}
+	
+	/**
+	 * Maps the locator to the construct. The entry is removed when the
+	 * construct is evicted from the cache.
+	 * 
+	 * @param locator locator
+	 * @param construct construct
+	 */
+	private void putLocator(Locator locator, IConstruct construct) {
+		synchronized(constructToLocators) {
+			IConstruct old = iidToConstruct.put(locator, construct);
+			if(old != null && old != construct) {
+				Set<Locator> locators = constructToLocators.get(old);
+				if(locators != null) locators.remove(locator);
+			}
+			Set<Locator> locators = constructToLocators.get(construct);
+			if(locators == null) {
+				locators = CollectionFactory.createSet(IConstant.CONSTRUCT_IID_SIZE);
+				constructToLocators.put(construct, locators);
+			}
+			locators.add(locator);
+		}
+		if(!idToConstruct.containsKey(construct.getConstructId())) idToConstruct.put(construct.getConstructId(), construct);
+	}
+	
+	/**
+	 * Removes the locator from the locator map.
+	 * 
+	 * @param locator locator
+	 */
+	private void removeLocator(Locator locator) {
+		synchronized(constructToLocators) {
+			IConstruct old = iidToConstruct.remove(locator);
+			if(old != null) {
+				Set<Locator> locators = constructToLocators.get(old);
+				if(locators != null) locators.remove(locator);
+			}
+		}
+	}
+	
+	/**
+	 * Removes all locators of the construct from the locator map.
+	 * 
+	 * @param construct construct
+	 */
+	private void removeLocators(IConstruct construct) {
+		synchronized(constructToLocators) {
+			Set<Locator> locators = constructToLocators.remove(construct);
+			if(locators == null) return;
+			for(Locator locator : locators) {
+				iidToConstruct.remove(locator, construct);
+			}
+		}
+	}
+	
+	/**
+	 * Pins the types of a loaded construct in the cache as long as the construct
+	 * itself is cached.
+	 * 
+	 * @param construct construct
+	 */
+	private void pinTypes(IConstruct construct) {
+		if(!construct.getLoaded()) return;
+		if(construct instanceof Typed) {
+			Topic type = ((Typed) construct).getType();
+			if(type != null) idToConstruct.pin(ConstructId.of(type), construct.getConstructId());
+		} else if(construct.getDocumentType().equals(IConstant.TOPIC)) {
+			for(Topic type : ((ITopic) construct).getTypes()) idToConstruct.pin(ConstructId.of(type), construct.getConstructId());
 		}
 	}
 	
@@ -168,7 +506,107 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IConstruct getCachedConstruct(String id) {
-		return idToConstruct.get(id);
+		return idToConstruct.get(ConstructId.valueOf(id));
+	}
+	
+	/**
+	 * Returns the <tt>IConstruct</tt> for a referenced id without loading it. This is
+	 * the cached construct or the single unloaded stub for the id, which is created 
+	 * if there is none. A stub without document type is replaced by a typed one.
+	 * 
+	 * @param id id
+	 * @param documentType document type of the stub or <tt>null</tt> if unknown
+	 * @return construct
+	 */
+	public IConstruct getReference(String id, String documentType) {
+		ConstructId key = ConstructId.valueOf(id);
+		IConstruct construct = idToConstruct.get(key);
+		if(construct != null) return construct;
+		synchronized(stubs) {
+			//the construct may have been decoded and cached meanwhile
+			construct = idToConstruct.get(key);
+			if(construct != null) return construct;
+			WeakReference<IConstruct> ref = stubs.get(key);
+			IConstruct stub = ref == null ? null : ref.get();
+			if(stub != null && (documentType == null || documentType.equals(stub.getDocumentType()))) return stub;
+			if(IConstant.TOPIC.equals(documentType)) stub = new TopicImpl(id, tm);
+			else if(IConstant.NAME.equals(documentType)) stub = new NameImpl(id, tm);
+			else if(IConstant.VARIANT.equals(documentType)) stub = new VariantImpl(id, tm);
+			else if(IConstant.OCCURRENCE.equals(documentType)) stub = new OccurrenceImpl(id, tm);
+			else if(IConstant.ROLE.equals(documentType)) stub = new RoleImpl(id, tm);
+			else if(IConstant.ASSOCIATION.equals(documentType)) stub = new AssociationImpl(id, tm);
+			else stub = new ConstructImpl(id, tm);
+			stubs.put(stub.getConstructId(), new WeakReference<IConstruct>(stub));
+			return stub;
+		}
+	}
+	
+	/**
+	 * Returns the single instance for a decoded construct and caches it. This is the 
+	 * construct cached for the id by another thread meanwhile, else a live unloaded stub 
+	 * with the same id and document type loaded from the decoded construct, so references 
+	 * handed out before stay the construct of the id, else the decoded construct.
+	 * 
+	 * @param construct decoded construct
+	 * @return single instance of the id
+	 */
+	public IConstruct promote(IConstruct construct) {
+		ConstructId key = construct.getConstructId();
+		//serialized with the creation of stubs, a stub is either filled here or not created
+		synchronized(stubs) {
+			IConstruct cached = idToConstruct.get(key);
+			if(cached != null) return cached;
+			//a stale document of a construct deleted in an open batch is not cached again
+			if(db.isPending(construct.getId())) return construct;
+			WeakReference<IConstruct> ref = stubs.remove(key);
+			IConstruct stub = ref == null ? null : ref.get();
+			//an untyped stub can not stand for the decoded construct, the cache is looked up first
+			if(stub != null && stub != construct && construct.getDocumentType().equals(stub.getDocumentType())) {
+				stub.load(construct);
+				construct = stub;
+			}
+			cached = idToConstruct.putIfAbsent(key, construct);
+			return cached == null ? construct : cached;
+		}
+	}
+	
+	/**
+	 * Loads the documents of all unloaded <tt>IConstruct</tt> in the collection with 
+	 * a single request and puts them into the cache. The unloaded types of these
+	 * constructs are fetched with a second request. The stubs load themselves from 
+	 * the cache when they are touched.
+	 * 
+	 * @param constructs
+	 */
+	public void hydrate(Collection<? extends IConstruct> constructs) {
+		Set<IConstruct> fetched = fetch(constructs);
+		if(fetched.isEmpty()) return;
+		Set<IConstruct> types = CollectionFactory.createSet();
+		for(IConstruct construct : fetched) {
+			if(construct instanceof Typed) types.add((IConstruct) ((Typed) construct).getType());
+		}
+		fetch(types);
+	}
+	
+	/**
+	 * Fetches the unloaded and uncached <tt>IConstruct</tt> of the collection with
+	 * a single request and adds them to the cache.
+	 * 
+	 * @param constructs
+	 * @return fetched constructs
+	 */
+	private Set<IConstruct> fetch(Collection<? extends IConstruct> constructs) {
+		Set<String> ids = CollectionFactory.createSet();
+		for(IConstruct construct : constructs) {
+			if(construct == null || construct.getLoaded()) continue;
+			if(!idToConstruct.containsKey(construct.getConstructId())) ids.add(construct.getId());
+		}
+		if(ids.isEmpty()) return Collections.emptySet();
+		Set<IConstruct> fetched = db.getConstructs(ids, tm);
+		for(IConstruct construct : fetched) {
+			if(!construct.getDocumentType().equals(IConstant.TOPIC_MAP)) addConstruct(construct);
+		}
+		return fetched;
 	}
 	
 	/**
@@ -331,6 +769,81 @@ public class TopicMapObjectManager {
 		return topics;
 	}
 	
+	/**
+	 * Returns all <tt>IAssociation</tt> for each of the given themes, retrieved with a 
+	 * single request.
+	 * 
+	 * @param themes
+	 * @return
+	 */
+	public Collection<Set<IAssociation>> getAssociationsByThemes(Collection<ITopic> themes) {
+		Map<String, Set<IAssociation>> results = db.getAssociationsByThemes(themes, tm);
+		for(Set<IAssociation> set : results.values()) {
+			for(IAssociation assoc : set) addConstruct(assoc);
+		}
+		return results.values();
+	}
+	
+	/**
+	 * Returns all <tt>IName</tt> for each of the given themes, retrieved with a 
+	 * single request.
+	 * 
+	 * @param themes
+	 * @return
+	 */
+	public Collection<Set<IName>> getNamesByThemes(Collection<ITopic> themes) {
+		Map<String, Set<IName>> results = db.getNamesByThemes(themes, tm);
+		for(Set<IName> set : results.values()) {
+			for(IName name : set) addConstruct(name);
+		}
+		return results.values();
+	}
+	
+	/**
+	 * Returns all <tt>IVariant</tt> for each of the given themes, retrieved with a 
+	 * single request.
+	 * 
+	 * @param themes
+	 * @return
+	 */
+	public Collection<Set<IVariant>> getVariantsByThemes(Collection<ITopic> themes) {
+		Map<String, Set<IVariant>> results = db.getVariantsByThemes(themes, tm);
+		for(Set<IVariant> set : results.values()) {
+			for(IVariant variant : set) addConstruct(variant);
+		}
+		return results.values();
+	}
+	
+	/**
+	 * Returns all <tt>IOccurrence</tt> for each of the given themes, retrieved with a 
+	 * single request.
+	 * 
+	 * @param themes
+	 * @return
+	 */
+	public Collection<Set<IOccurrence>> getOccurrencesByThemes(Collection<ITopic> themes) {
+		Map<String, Set<IOccurrence>> results = db.getOccurrencesByThemes(themes, tm);
+		for(Set<IOccurrence> set : results.values()) {
+			for(IOccurrence occ : set) addConstruct(occ);
+		}
+		return results.values();
+	}
+	
+	/**
+	 * Returns all <tt>ITopic</tt> for each of the given types, retrieved with a 
+	 * single request.
+	 * 
+	 * @param types
+	 * @return
+	 */
+	public Collection<Set<ITopic>> getTopicsByTypes(Collection<ITopic> types) {
+		Map<String, Set<ITopic>> results = db.getTopicsByTypes(types, tm);
+		for(Set<ITopic> set : results.values()) {
+			for(ITopic topic : set) addConstruct(topic);
+		}
+		return results.values();
+	}
+	
 	/**
 	 * Returns all <tt>IName</tt> with the given value.
 	 * 
@@ -499,18 +1012,39 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IConstruct getConstruct(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		if(construct == null){
-			if((construct = db.getConstruct(id, tm)) != null) {
-				if(construct.getDocumentType().equals(IConstant.TOPIC_MAP)) {
-					return tm;
-				}
-				else addConstruct(construct);
-			}	
-		}
+		IConstruct construct = load(id);
+		if(construct != null && construct.getDocumentType().equals(IConstant.TOPIC_MAP)) return tm;
 		return construct;
 	}
 	
+	//returns the cached construct or loads it, concurrent loads of the same id share one request
+	private IConstruct load(final String id) {
+		return idToConstruct.get(ConstructId.valueOf(id), new Callable<IConstruct>() {
+			@Override
+			public IConstruct call() {
+				IConstruct construct = db.getConstruct(id, tm);
+				if(construct != null && !construct.getDocumentType().equals(IConstant.TOPIC_MAP)) addConstruct(construct);
+				return construct;
+			}
+		});
+	}
+	
+	/**
+	 * Creates a new construct with a content derived ID. The content only names the 
+	 * construct, the caller has checked that no equal construct exists. A document with
+	 * the same ID is never reused since its construct may have been changed after it 
+	 * was created, or it was created concurrently by another writer.
+	 * 
+	 * @param construct new construct
+	 * @return <tt>true</tt> if the construct was created, <tt>false</tt> if the ID is taken
+	 */
+	public boolean createConstruct(IConstruct construct) {
+		if(idToConstruct.containsKey(construct.getConstructId())) return false;
+		if(!db.create(construct, tm)) return false;
+		updateCache(construct);
+		return true;
+	}
+	
 	/**
 	 * Returns all <tt>IRole</tt> for the given player.
 	 * 
@@ -531,7 +1065,7 @@ public class TopicMapObjectManager {
 	 */
 	public IConstruct getConstruct(Locator locator) {
 		IConstruct construct = iidToConstruct.get(locator);	
-		if(construct == null){
+		if(construct == null && mightExist(LocatorFilter.ITEM_IDENTIFIER, locator)){
 			if((construct = db.getConstructByTm(locator, tm)) != null) addConstruct(construct);
 			if(construct != null && !construct.getItemIdentifiers().contains(locator)) construct = null;
 		}
@@ -545,14 +1079,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public ITopic getTopic(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		ITopic topic = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.TOPIC)) topic = (ITopic) construct;
-		if(topic == null) {
-			if((topic = (ITopic) db.getConstruct(id, tm)) != null) addConstruct(topic);
-			
-		}
-		return topic;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.TOPIC) ? (ITopic) construct : null;
 	}
 	
 	/**
@@ -573,6 +1101,7 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public Set<ITopic> getTopicsByItemIdentifier(Locator locator) {
+		if(!mightExist(LocatorFilter.ITEM_IDENTIFIER, locator)) return CollectionFactory.createSet();
 		Set<ITopic> topics = db.getTopicsByItemIdentifier(locator, tm);
 		for(ITopic topic : topics) addConstruct(topic);
 		return topics;
@@ -585,6 +1114,7 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public Set<ITopic> getTopicsBySubjectIdentifier(Locator locator) {
+		if(!mightExist(LocatorFilter.SUBJECT_IDENTIFIER, locator)) return CollectionFactory.createSet();
 		Set<ITopic> topics = db.getTopicsBySubjectIdentifier(locator, tm);
 		for(ITopic topic : topics) addConstruct(topic);
 		return topics;
@@ -597,6 +1127,7 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public Set<ITopic> getTopicsBySubjectLocator(Locator locator) {
+		if(!mightExist(LocatorFilter.SUBJECT_LOCATOR, locator)) return CollectionFactory.createSet();
 		Set<ITopic> topics = db.getTopicsBySubjectLocator(locator, tm);
 		for(ITopic topic : topics) addConstruct(topic);
 		return topics;
@@ -612,7 +1143,7 @@ public class TopicMapObjectManager {
 		IConstruct construct = iidToConstruct.get(locator);
 		ITopic topic = null;
 		if(construct != null && construct.getDocumentType().equals(IConstant.TOPIC)) topic = (ITopic) construct;
-		if(topic == null) {
+		if(topic == null && mightExist(LocatorFilter.SUBJECT_IDENTIFIER, locator)) {
 			Set<ITopic> topics = db.getTopicsBySubjectIdentifier(locator, tm);
 			Iterator<ITopic> it = topics.iterator();
 			while(it.hasNext()) topic = it.next();
@@ -630,6 +1161,7 @@ public class TopicMapObjectManager {
 	 */
 	public ITopic getTopicBySubjectLocator(Locator locator) {
 		ITopic topic = null;
+		if(!mightExist(LocatorFilter.SUBJECT_LOCATOR, locator)) return null;
 		Set<ITopic> topics = db.getTopicsBySubjectLocator(locator, tm);
 		Iterator<ITopic> it = topics.iterator();
 		while(it.hasNext()) topic = it.next();
@@ -644,13 +1176,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IName getName(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		IName nm = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.NAME)) nm = (IName) construct;
-		if(nm == null) {
-			if((nm = (IName) db.getConstruct(id, tm)) != null) addConstruct(nm);
-		}
-		return nm;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.NAME) ? (IName) construct : null;
 	}
 	
 	/**
@@ -660,13 +1187,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IVariant getVariant(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		IVariant vrnt = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.VARIANT)) vrnt = (IVariant) construct;
-		if(vrnt == null) {
-			if((vrnt = (IVariant) db.getConstruct(id, tm)) != null) addConstruct(vrnt);
-		}
-		return vrnt;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.VARIANT) ? (IVariant) construct : null;
 	}
 	
 	/**
@@ -676,13 +1198,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IOccurrence getOccurrence(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		IOccurrence occ = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.OCCURRENCE)) occ = (IOccurrence) construct;
-		if(occ == null) {
-			if((occ = (IOccurrence) db.getConstruct(id, tm)) != null) addConstruct(occ);
-		}
-		return occ;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.OCCURRENCE) ? (IOccurrence) construct : null;
 	}
 	
 	/**
@@ -692,13 +1209,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IRole getRole(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		IRole rl = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.ROLE)) rl = (IRole) construct;
-		if(rl == null) {
-			if((rl = (IRole) db.getConstruct(id, tm)) != null) addConstruct(rl);
-		}
-		return rl;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.ROLE) ? (IRole) construct : null;
 	}
 	
 	/**
@@ -708,14 +1220,8 @@ public class TopicMapObjectManager {
 	 * @return
 	 */
 	public IAssociation getAssociation(String id) {
-		IConstruct construct = idToConstruct.get(id);
-		IAssociation assoc = null;
-		if(construct != null && construct.getDocumentType().equals(IConstant.ASSOCIATION)) assoc = (IAssociation) construct;
-		if(assoc == null) {
-			if((assoc = (IAssociation) db.getConstruct(id, tm)) != null) addConstruct(assoc);
-			
-		}
-		return assoc;
+		IConstruct construct = load(id);
+		return construct != null && construct.getDocumentType().equals(IConstant.ASSOCIATION) ? (IAssociation) construct : null;
 	}
 	
 	/** 
@@ -845,6 +1351,10 @@ public class TopicMapObjectManager {
 	 */
 	public ITopicMap saveTopicMap() {
 		db.saveTopicMap(tm);
+		LocatorFilter filter = identities;
+		if(filter != null) {
+			for(Locator loc : tm.getItemIdentifiers()) filter.add(LocatorFilter.ITEM_IDENTIFIER, loc.getReference());
+		}
 		return tm;
 	}
 	
@@ -891,28 +1401,24 @@ public class TopicMapObjectManager {
 	}
 	
 	private void updateCache(IConstruct construct) {
-		idToConstruct.remove(construct.getId());
-		idToConstruct.put(construct.getId(), construct);
-		for(Locator loc : construct.getItemIdentifiers()) {
-			iidToConstruct.remove(loc);
-		}
+		IConstruct old = idToConstruct.put(construct.getConstructId(), construct);
+		if(old != null && old != construct) removeLocators(old);
+		LocatorFilter filter = identities;
 		for(Locator loc : construct.getItemIdentifiers()) {
-			iidToConstruct.put(loc, construct);
+			putLocator(loc, construct);
+			if(filter != null) filter.add(LocatorFilter.ITEM_IDENTIFIER, loc.getReference());
 		}
 		if(construct.getDocumentType().equals("TOPIC")) {
 			for(Locator loc : ((ITopic) construct).getSubjectIdentifiers()) {
-				iidToConstruct.remove(loc);
-			}
-			for(Locator loc : ((ITopic) construct).getSubjectIdentifiers()) {
-				iidToConstruct.put(loc, construct);
+				putLocator(loc, construct);
+				if(filter != null) filter.add(LocatorFilter.SUBJECT_IDENTIFIER, loc.getReference());
 			}
 			for(Locator loc : ((ITopic) construct).getSubjectLocators()) {
-				iidToConstruct.remove(loc);
-			}
-			for(Locator loc : ((ITopic) construct).getSubjectIdentifiers()) {
-				iidToConstruct.put(loc, construct);
+				putLocator(loc, construct);
+				if(filter != null) filter.add(LocatorFilter.SUBJECT_LOCATOR, loc.getReference());
 			}
 		}
+		pinTypes(construct);
 	}
 	
 	/**
@@ -936,9 +1442,20 @@ public class TopicMapObjectManager {
 	 * Clears the cache and initialized database connection release.
 	 */
 	public void close() {
+		if(changes != null) changes.close();
 		idToConstruct.clear();
-		iidToConstruct.clear();
-		db.releaseConnection();
+		synchronized(constructToLocators) {
+			iidToConstruct.clear();
+			constructToLocators.clear();
+		}
+		synchronized(stubs) {
+			stubs.clear();
+		}
+		try {
+			db.flush();
+		} finally {
+			db.releaseConnection();
+		}
 	}
 	
 }
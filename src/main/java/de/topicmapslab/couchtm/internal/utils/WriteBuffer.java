@@ -0,0 +1,149 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.internal.utils;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.topicmapslab.couchtm.internal.api.IConstruct;
+
+/**
+ * Collects constructs which have to be saved and documents which have to be deleted. 
+ * A construct saved several times before the buffer is drained is written only once.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ */
+public class WriteBuffer {
+	
+	private final Map<String, IConstruct> pending;
+	private final Map<String, String> deletions;
+	private final int maxSize;
+	private final long maxDelay;
+	private long firstPending;
+	
+	/**
+	 * Creates a buffer.
+	 * 
+	 * @param maxSize number of pending constructs which triggers a flush
+	 * @param maxDelay time in milliseconds after which pending constructs should be flushed
+	 */
+	public WriteBuffer(int maxSize, long maxDelay) {
+		pending = new LinkedHashMap<String, IConstruct>();
+		deletions = new LinkedHashMap<String, String>();
+		this.maxSize = maxSize;
+		this.maxDelay = maxDelay;
+	}
+	
+	/**
+	 * Adds a construct to the buffer.
+	 * 
+	 * @param construct construct
+	 * @return <tt>true</tt> if the buffer should be flushed
+	 */
+	public synchronized boolean add(IConstruct construct) {
+		long now = System.currentTimeMillis();
+		if(isEmpty()) firstPending = now;
+		pending.put(construct.getId(), construct);
+		deletions.remove(construct.getId());
+		return pending.size() + deletions.size() >= maxSize || now - firstPending >= maxDelay;
+	}
+	
+	/**
+	 * Adds the deletion of a document to the buffer. A pending save of the
+	 * document is dropped, documents without revision were never written 
+	 * and need not be deleted.
+	 * 
+	 * @param id document id
+	 * @param rev current revision of the document
+	 */
+	public synchronized void delete(String id, String rev) {
+		pending.remove(id);
+		if(rev == null || rev.equals("")) return;
+		if(isEmpty()) firstPending = System.currentTimeMillis();
+		deletions.put(id, rev);
+	}
+	
+	/**
+	 * Returns the pending construct with the given id.
+	 * 
+	 * @param id id
+	 * @return construct or <tt>null</tt>
+	 */
+	public synchronized IConstruct get(String id) {
+		return pending.get(id);
+	}
+	
+	/**
+	 * Returns whether the deletion of the document with the given id is pending.
+	 * 
+	 * @param id id
+	 * @return boolean
+	 */
+	public synchronized boolean isDeleted(String id) {
+		return deletions.containsKey(id);
+	}
+	
+	/**
+	 * Returns all pending constructs without removing them.
+	 * 
+	 * @return constructs
+	 */
+	public synchronized List<IConstruct> getPending() {
+		return CollectionFactory.createList(pending.values());
+	}
+	
+	/**
+	 * Removes and returns all pending constructs.
+	 * 
+	 * @return constructs
+	 */
+	public synchronized List<IConstruct> drain() {
+		List<IConstruct> constructs = CollectionFactory.createList(pending.values());
+		pending.clear();
+		return constructs;
+	}
+	
+	/**
+	 * Removes and returns all pending deletions.
+	 * 
+	 * @return map of document id to revision
+	 */
+	public synchronized Map<String, String> drainDeletions() {
+		Map<String, String> docs = CollectionFactory.createMap(deletions);
+		deletions.clear();
+		return docs;
+	}
+	
+	/**
+	 * Returns whether constructs are pending for longer than the delay.
+	 * 
+	 * @return boolean
+	 */
+	public synchronized boolean isDue() {
+		return !isEmpty() && System.currentTimeMillis() - firstPending >= maxDelay;
+	}
+	
+	/**
+	 * Returns whether constructs are pending.
+	 * 
+	 * @return boolean
+	 */
+	public synchronized boolean isEmpty() {
+		return pending.isEmpty() && deletions.isEmpty();
+	}
+}
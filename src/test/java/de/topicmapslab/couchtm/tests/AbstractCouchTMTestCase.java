@@ -0,0 +1,98 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import junit.framework.TestCase;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+
+import de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl;
+
+/**
+ * Base class of the tests which need a running CouchDB. Every test gets a new 
+ * topic map which is removed afterwards.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public abstract class AbstractCouchTMTestCase extends TestCase {
+	
+	protected TopicMapSystemFactoryImpl factory;
+	protected TopicMapSystem sys;
+	protected TopicMap tm;
+	protected Locator base;
+	
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		factory = new TopicMapSystemFactoryImpl();
+		configure(factory);
+		sys = factory.newTopicMapSystem();
+		base = sys.createLocator("http://www.topicmapslab.de/couchtm/test/"+getClass().getSimpleName().toLowerCase()+"/"+System.nanoTime()+"/");
+		tm = sys.createTopicMap(base);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		try {
+			if(tm != null) tm.remove();
+		} finally {
+			sys.close();
+			super.tearDown();
+		}
+	}
+	
+	/**
+	 * Sets the properties of the factory before the topic map system is created.
+	 * 
+	 * @param factory factory
+	 */
+	protected void configure(TopicMapSystemFactoryImpl factory) {
+		//defaults
+	}
+	
+	/**
+	 * Opens the topic map of the test with a second topic map system, as another 
+	 * node of the same database would.
+	 * 
+	 * @return topic map system, has to be closed by the caller
+	 * @throws Exception
+	 */
+	protected TopicMapSystem newNode() throws Exception {
+		return factory.newTopicMapSystem();
+	}
+	
+	/**
+	 * Creates a locator relative to the locator of the topic map.
+	 * 
+	 * @param reference reference
+	 * @return locator
+	 */
+	protected Locator createLocator(String reference) {
+		return base.resolve(reference);
+	}
+}
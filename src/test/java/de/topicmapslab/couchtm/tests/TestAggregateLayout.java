@@ -0,0 +1,135 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+import org.tmapi.core.Variant;
+
+import de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl;
+
+/**
+ * Tests the aggregate layout, names, variants and occurrences embedded in the 
+ * document of their topic, and roles embedded in the document of their association.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestAggregateLayout extends AbstractCouchTMTestCase {
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.tests.AbstractCouchTMTestCase#configure(de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl)
+	 */
+	@Override
+	protected void configure(TopicMapSystemFactoryImpl factory) {
+		factory.setProperty("AGGREGATE_TOPICS", "true");
+		factory.setProperty("EMBEDDED_ROLES", "true");
+	}
+	
+	public void testTopicRoundTrip() throws Exception {
+		Locator sid = createLocator("topic");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		Topic theme = tm.createTopicBySubjectIdentifier(createLocator("theme"));
+		Name name = topic.createName("name");
+		name.createVariant("variant", theme);
+		topic.createOccurrence(tm.createTopicBySubjectIdentifier(createLocator("occurrence-type")), "occurrence");
+		TopicMapSystem node = newNode();
+		try {
+			Topic loaded = node.getTopicMap(base).getTopicBySubjectIdentifier(sid);
+			assertEquals(1, loaded.getNames().size());
+			Name loadedName = loaded.getNames().iterator().next();
+			assertEquals("name", loadedName.getValue());
+			assertEquals(loaded, loadedName.getParent());
+			assertEquals(1, loadedName.getVariants().size());
+			Variant loadedVariant = loadedName.getVariants().iterator().next();
+			assertEquals("variant", loadedVariant.getValue());
+			assertEquals(loadedName, loadedVariant.getParent());
+			assertEquals(1, loaded.getOccurrences().size());
+			Occurrence loadedOcc = loaded.getOccurrences().iterator().next();
+			assertEquals("occurrence", loadedOcc.getValue());
+			assertEquals(loaded, loadedOcc.getParent());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testEmbeddedConstructById() throws Exception {
+		Locator sid = createLocator("by-id");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		Name name = topic.createName("name");
+		Variant variant = name.createVariant("variant", tm.createTopic());
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap other = node.getTopicMap(base);
+			Variant loadedVariant = (Variant) other.getConstructById(variant.getId());
+			assertNotNull(loadedVariant);
+			Name loadedName = loadedVariant.getParent();
+			assertEquals(name.getId(), loadedName.getId());
+			assertEquals("name", loadedName.getValue());
+			assertEquals(topic.getId(), loadedName.getParent().getId());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testNameRemoval() throws Exception {
+		Locator sid = createLocator("removal");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		topic.createName("first");
+		Name second = topic.createName("second");
+		second.remove();
+		assertEquals(1, topic.getNames().size());
+		assertEquals("first", topic.getNames().iterator().next().getValue());
+		TopicMapSystem node = newNode();
+		try {
+			Topic loaded = node.getTopicMap(base).getTopicBySubjectIdentifier(sid);
+			assertEquals(1, loaded.getNames().size());
+			assertEquals("first", loaded.getNames().iterator().next().getValue());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testEmbeddedRolesRoundTrip() throws Exception {
+		Topic type = tm.createTopicBySubjectIdentifier(createLocator("association-type"));
+		Topic roleType = tm.createTopicBySubjectIdentifier(createLocator("role-type"));
+		Locator sid = createLocator("player");
+		Topic player = tm.createTopicBySubjectIdentifier(sid);
+		Association assoc = tm.createAssociation(type);
+		assoc.createRole(roleType, player);
+		assoc.createRole(roleType, tm.createTopic()).remove();
+		assertEquals(1, assoc.getRoles().size());
+		TopicMapSystem node = newNode();
+		try {
+			Topic loaded = node.getTopicMap(base).getTopicBySubjectIdentifier(sid);
+			assertEquals(1, loaded.getRolesPlayed().size());
+			Role role = loaded.getRolesPlayed().iterator().next();
+			assertEquals(loaded, role.getPlayer());
+			assertEquals(assoc.getId(), role.getParent().getId());
+			assertEquals(1, role.getParent().getRoles().size());
+		} finally {
+			node.close();
+		}
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.TMAPIException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMapSystem;
+
+import de.topicmapslab.couchtm.internal.api.ITopicMap;
+import de.topicmapslab.couchtm.internal.api.IUnitOfWork;
+
+/**
+ * Tests batches: commit, discard, identity checks inside a batch and the
+ * confinement of a batch to its thread.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestBatch extends AbstractCouchTMTestCase {
+	
+	public void testCommit() throws Exception {
+		final Locator sid = createLocator("committed");
+		((ITopicMap) tm).executeBatch(new IUnitOfWork() {
+			public void execute(ITopicMap tm) throws TMAPIException {
+				tm.createTopicBySubjectIdentifier(sid).createName("committed");
+			}
+		});
+		TopicMapSystem node = newNode();
+		try {
+			Topic topic = node.getTopicMap(base).getTopicBySubjectIdentifier(sid);
+			assertNotNull(topic);
+			assertEquals(1, topic.getNames().size());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testIdentityInsideBatch() throws Exception {
+		final Locator loc = createLocator("identity");
+		final Topic[] topics = new Topic[2];
+		((ITopicMap) tm).executeBatch(new IUnitOfWork() {
+			public void execute(ITopicMap tm) throws TMAPIException {
+				topics[0] = tm.createTopicBySubjectIdentifier(loc);
+				//the topic is not written yet, the check has to find it in the batch
+				topics[1] = tm.createTopicByItemIdentifier(loc);
+				topics[0].createName("name");
+				topics[0].createName("name");
+			}
+		});
+		assertEquals(topics[0], topics[1]);
+		assertEquals(1, topics[0].getNames().size());
+		TopicMapSystem node = newNode();
+		try {
+			Topic topic = node.getTopicMap(base).getTopicBySubjectIdentifier(loc);
+			assertNotNull(topic);
+			assertEquals(1, topic.getNames().size());
+			assertTrue(topic.getItemIdentifiers().contains(loc));
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testDiscard() throws Exception {
+		final Locator sid = createLocator("discarded");
+		final Locator kept = createLocator("kept");
+		final Topic before = tm.createTopicBySubjectIdentifier(kept);
+		final Topic untouched = tm.createTopicBySubjectIdentifier(createLocator("untouched"));
+		try {
+			((ITopicMap) tm).executeBatch(new IUnitOfWork() {
+				public void execute(ITopicMap tm) throws TMAPIException {
+					before.createName("discarded");
+					tm.createTopicBySubjectIdentifier(sid);
+					throw new TMAPIException("failed work");
+				}
+			});
+			fail("the failure of the work has to be passed on");
+		} catch(TMAPIException e) {
+			//expected
+		}
+		assertNull(tm.getTopicBySubjectIdentifier(sid));
+		Topic reloaded = tm.getTopicBySubjectIdentifier(kept);
+		assertNotNull(reloaded);
+		assertEquals(0, reloaded.getNames().size());
+		//constructs not changed by the batch stay cached
+		assertSame(untouched, tm.getTopicBySubjectIdentifier(createLocator("untouched")));
+	}
+	
+	public void testBatchIsConfinedToItsThread() throws Exception {
+		final CountDownLatch started = new CountDownLatch(1);
+		final CountDownLatch written = new CountDownLatch(1);
+		final Locator inBatch = createLocator("in-batch");
+		final Locator outside = createLocator("outside");
+		final Exception[] failure = new Exception[1];
+		Thread worker = new Thread() {
+			public void run() {
+				try {
+					((ITopicMap) tm).executeBatch(new IUnitOfWork() {
+						public void execute(ITopicMap tm) throws TMAPIException {
+							tm.createTopicBySubjectIdentifier(inBatch);
+							started.countDown();
+							try {
+								written.await(10, TimeUnit.SECONDS);
+							} catch(InterruptedException e) {
+								throw new TMAPIException(e);
+							}
+						}
+					});
+				} catch(Exception e) {
+					failure[0] = e;
+				}
+			}
+		};
+		worker.start();
+		assertTrue(started.await(10, TimeUnit.SECONDS));
+		//written at once although another thread runs a batch
+		tm.createTopicBySubjectIdentifier(outside);
+		TopicMapSystem node = newNode();
+		try {
+			assertNotNull(node.getTopicMap(base).getTopicBySubjectIdentifier(outside));
+			assertNull(node.getTopicMap(base).getTopicBySubjectIdentifier(inBatch));
+		} finally {
+			written.countDown();
+			worker.join();
+		}
+		try {
+			assertNull(failure[0]);
+			assertNotNull(node.getTopicMap(base).getTopicBySubjectIdentifier(inBatch));
+		} finally {
+			node.close();
+		}
+	}
+}
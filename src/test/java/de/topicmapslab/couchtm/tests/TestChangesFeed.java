@@ -0,0 +1,73 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+
+import de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl;
+import de.topicmapslab.couchtm.internal.api.ITopicMap;
+
+/**
+ * Tests that constructs changed by another node are refreshed in place by the
+ * <tt>_changes</tt> feed.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestChangesFeed extends AbstractCouchTMTestCase {
+	
+	//longest wait in milliseconds for a change to arrive
+	private static final long WAIT = 10000;
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.tests.AbstractCouchTMTestCase#configure(de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl)
+	 */
+	@Override
+	protected void configure(TopicMapSystemFactoryImpl factory) {
+		factory.setProperty("CHANGES_FEED", "true");
+	}
+	
+	public void testRefreshInPlace() throws Exception {
+		Locator sid = createLocator("changed");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		Name name = topic.createName("before");
+		((ITopicMap) tm).flush();
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap other = node.getTopicMap(base);
+			Topic changed = other.getTopicBySubjectIdentifier(sid);
+			changed.addSubjectIdentifier(createLocator("added"));
+			((Name) other.getConstructById(name.getId())).setValue("after");
+			((ITopicMap) other).flush();
+			long end = System.currentTimeMillis() + WAIT;
+			while(System.currentTimeMillis() < end && (!name.getValue().equals("after") || topic.getSubjectIdentifiers().size() < 2)) {
+				Thread.sleep(100);
+			}
+			//the instances held before see the change
+			assertEquals("after", name.getValue());
+			assertTrue(topic.getSubjectIdentifiers().contains(createLocator("added")));
+			assertSame(topic, tm.getTopicBySubjectIdentifier(createLocator("added")));
+		} finally {
+			node.close();
+		}
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.util.UUID;
+
+import junit.framework.TestCase;
+
+import de.topicmapslab.couchtm.internal.utils.ConstructId;
+
+/**
+ * Tests the parsing and rendering of compact construct IDs.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestConstructId extends TestCase {
+	
+	public void testNull() {
+		assertNull(ConstructId.valueOf(null));
+	}
+	
+	public void testUUID() {
+		for(int i = 0; i < 100; i++) {
+			String id = UUID.randomUUID().toString();
+			assertEquals(id, ConstructId.valueOf(id).toString());
+		}
+	}
+	
+	public void testBoundaries() {
+		String[] ids = {"00000000-0000-0000-0000-000000000000", "ffffffff-ffff-ffff-ffff-ffffffffffff", 
+				"80000000-0000-0000-8000-000000000000", "0000000f-000f-000f-000f-00000000000f"};
+		for(String id : ids) {
+			assertEquals(id, ConstructId.valueOf(id).toString());
+		}
+	}
+	
+	public void testPrefix() {
+		String id = "ctm-"+UUID.randomUUID().toString();
+		ConstructId cid = ConstructId.valueOf(id);
+		assertEquals(id, cid.toString());
+		assertFalse(cid.equals(ConstructId.valueOf(id.substring(4))));
+	}
+	
+	public void testOtherIds() {
+		String[] ids = {"", "topic", "1234", "ctm-", "F47AC10B-58CC-4372-A567-0E02B2C3D479", 
+				"f47ac10b-58cc-4372-a567-0e02b2c3d47", "f47ac10b_58cc-4372-a567-0e02b2c3d479", 
+				"f47ac10b-58cc-4372-a567-0e02b2c3d47g", "f47ac10b58cc4372a5670e02b2c3d4791234"};
+		for(String id : ids) {
+			assertEquals(id, ConstructId.valueOf(id).toString());
+		}
+	}
+	
+	public void testEquality() {
+		String id = UUID.randomUUID().toString();
+		ConstructId first = ConstructId.valueOf(id);
+		ConstructId second = ConstructId.valueOf(new String(id));
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertFalse(first.equals(ConstructId.valueOf(UUID.randomUUID().toString())));
+		assertEquals(ConstructId.valueOf("topic"), ConstructId.valueOf("topic"));
+		assertFalse(ConstructId.valueOf("topic").equals(ConstructId.valueOf("Topic")));
+		assertFalse(first.equals(id));
+	}
+	
+	public void testUpperCaseIsNotCompact() {
+		String id = UUID.randomUUID().toString();
+		assertFalse(ConstructId.valueOf(id).equals(ConstructId.valueOf(id.toUpperCase())));
+	}
+}
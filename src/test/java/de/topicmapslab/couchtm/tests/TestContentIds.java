@@ -0,0 +1,128 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMapSystem;
+
+import de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl;
+
+/**
+ * Tests constructs with content derived IDs. A content ID only names a new 
+ * construct, an existing construct is found by its content and a construct 
+ * which was changed after its creation is never returned for its old content.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestContentIds extends AbstractCouchTMTestCase {
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.tests.AbstractCouchTMTestCase#configure(de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl)
+	 */
+	@Override
+	protected void configure(TopicMapSystemFactoryImpl factory) {
+		factory.setProperty("DETERMINISTIC_IDS", "true");
+	}
+	
+	public void testSameContent() throws Exception {
+		Locator sid = createLocator("same");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		assertEquals(topic, tm.createTopicBySubjectIdentifier(sid));
+		Name name = topic.createName("name");
+		assertEquals(name, topic.createName("name"));
+		assertEquals(1, topic.getNames().size());
+		Topic type = tm.createTopicBySubjectIdentifier(createLocator("type"));
+		Occurrence occ = topic.createOccurrence(type, "value");
+		assertEquals(occ, topic.createOccurrence(type, "value"));
+		assertEquals(1, topic.getOccurrences().size());
+	}
+	
+	public void testTopicAfterRemovedIdentifier() throws Exception {
+		Locator sid = createLocator("moved");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		topic.removeSubjectIdentifier(sid);
+		topic.addItemIdentifier(createLocator("kept"));
+		Topic created = tm.createTopicBySubjectIdentifier(sid);
+		assertNotSame(topic, created);
+		assertFalse(topic.equals(created));
+		assertTrue(created.getSubjectIdentifiers().contains(sid));
+		assertFalse(topic.getSubjectIdentifiers().contains(sid));
+	}
+	
+	public void testNameAfterChangedValue() throws Exception {
+		Topic topic = tm.createTopicBySubjectIdentifier(createLocator("topic"));
+		Name name = topic.createName("original");
+		name.setValue("changed");
+		Name created = topic.createName("original");
+		assertFalse(name.equals(created));
+		assertEquals("original", created.getValue());
+		assertEquals("changed", name.getValue());
+		assertEquals(2, topic.getNames().size());
+	}
+	
+	public void testOccurrenceAfterChangedValue() throws Exception {
+		Topic topic = tm.createTopicBySubjectIdentifier(createLocator("topic"));
+		Topic type = tm.createTopicBySubjectIdentifier(createLocator("type"));
+		Occurrence occ = topic.createOccurrence(type, "original");
+		occ.setValue("changed");
+		Occurrence created = topic.createOccurrence(type, "original");
+		assertFalse(occ.equals(created));
+		assertEquals("original", created.getValue());
+		assertEquals(2, topic.getOccurrences().size());
+	}
+	
+	public void testSameContentOtherNode() throws Exception {
+		Locator sid = createLocator("known");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		Name name = topic.createName("name");
+		Topic type = tm.createTopicBySubjectIdentifier(createLocator("known-type"));
+		Occurrence occ = topic.createOccurrence(type, "value");
+		TopicMapSystem node = newNode();
+		try {
+			//the PUT of the other node conflicts and the stored constructs still match
+			Topic other = node.getTopicMap(base).createTopicBySubjectIdentifier(sid);
+			assertEquals(topic.getId(), other.getId());
+			assertEquals(name.getId(), other.createName("name").getId());
+			Topic otherType = node.getTopicMap(base).createTopicBySubjectIdentifier(createLocator("known-type"));
+			assertEquals(occ.getId(), other.createOccurrence(otherType, "value").getId());
+			assertEquals(1, other.getNames().size());
+			assertEquals(1, other.getOccurrences().size());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testOtherNode() throws Exception {
+		Locator sid = createLocator("shared");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		topic.removeSubjectIdentifier(sid);
+		topic.addItemIdentifier(createLocator("shared-kept"));
+		TopicMapSystem node = newNode();
+		try {
+			Topic created = node.getTopicMap(base).createTopicBySubjectIdentifier(sid);
+			assertFalse(topic.getId().equals(created.getId()));
+			assertTrue(created.getSubjectIdentifiers().contains(sid));
+		} finally {
+			node.close();
+		}
+	}
+}
@@ -0,0 +1,165 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.io.File;
+import java.io.IOException;
+
+import junit.framework.TestCase;
+
+import de.topicmapslab.couchtm.internal.utils.DiskCache;
+
+/**
+ * Tests the disk cache: replaying the segments on open, reusing the oldest 
+ * segment once the cache is full and the sequence stored with the documents.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestDiskCache extends TestCase {
+	
+	//smallest size, every segment holds a few documents only
+	private static final long SIZE = 8 * 4200;
+	
+	private File dir;
+	private DiskCache cache;
+	
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#setUp()
+	 */
+	@Override
+	protected void setUp() throws Exception {
+		super.setUp();
+		dir = File.createTempFile("couchtm-disk", "");
+		dir.delete();
+		cache = new DiskCache(dir, SIZE);
+	}
+	
+	/*
+	 * (non-Javadoc)
+	 * @see junit.framework.TestCase#tearDown()
+	 */
+	@Override
+	protected void tearDown() throws Exception {
+		cache.close();
+		File[] files = dir.listFiles();
+		if(files != null) {
+			for(File file : files) file.delete();
+		}
+		dir.delete();
+		super.tearDown();
+	}
+	
+	private DiskCache reopen() throws IOException {
+		cache.close();
+		cache = new DiskCache(dir, SIZE);
+		return cache;
+	}
+	
+	private static String doc(String id, String rev) {
+		return "{\"_id\":\""+id+"\",\"_rev\":\""+rev+"\",\"value\":\"\u00e4\"}";
+	}
+	
+	public void testPutAndGet() {
+		cache.put("a", "1-a", doc("a", "1-a"));
+		assertEquals("1-a", cache.getRevision("a"));
+		assertEquals(doc("a", "1-a"), cache.get("a"));
+		cache.put("a", "2-a", doc("a", "2-a"));
+		assertEquals("2-a", cache.getRevision("a"));
+		assertEquals(doc("a", "2-a"), cache.get("a"));
+		assertNull(cache.get("b"));
+		assertNull(cache.getRevision("b"));
+		cache.remove("a");
+		assertNull(cache.get("a"));
+		assertEquals(0, cache.size());
+	}
+	
+	public void testReplay() throws Exception {
+		cache.put("a", "1-a", doc("a", "1-a"));
+		cache.put("b", "1-b", doc("b", "1-b"));
+		cache.put("b", "2-b", doc("b", "2-b"));
+		cache.put("c", "1-c", doc("c", "1-c"));
+		cache.remove("c");
+		reopen();
+		assertEquals(2, cache.size());
+		assertEquals(doc("a", "1-a"), cache.get("a"));
+		assertEquals("2-b", cache.getRevision("b"));
+		assertEquals(doc("b", "2-b"), cache.get("b"));
+		assertNull(cache.get("c"));
+	}
+	
+	public void testRecycling() throws Exception {
+		int count = 1000;
+		for(int i = 0; i < count; i++) cache.put("doc-"+i, "1-"+i, doc("doc-"+i, "1-"+i));
+		//the oldest documents were dropped with their segment
+		assertNull(cache.get("doc-0"));
+		assertEquals(doc("doc-"+(count - 1), "1-"+(count - 1)), cache.get("doc-"+(count - 1)));
+		int size = cache.size();
+		assertTrue(size > 0 && size < count);
+		reopen();
+		//records of an earlier use of a reused segment are not replayed
+		assertEquals(size, cache.size());
+		assertNull(cache.get("doc-0"));
+		for(int i = count - size; i < count; i++) {
+			assertEquals(doc("doc-"+i, "1-"+i), cache.get("doc-"+i));
+		}
+	}
+	
+	public void testTooLarge() throws Exception {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < 5000; i++) sb.append('x');
+		cache.put("a", "1-a", doc("a", "1-a"));
+		cache.put("a", "2-a", sb.toString());
+		//a document larger than a segment is not cached, the older revision is dropped
+		assertNull(cache.get("a"));
+		reopen();
+		assertNull(cache.get("a"));
+	}
+	
+	public void testLocked() throws Exception {
+		try {
+			new DiskCache(dir, SIZE);
+			fail("directory used twice");
+		} catch(IOException e) {
+			//expected
+		}
+	}
+	
+	public void testSequence() throws Exception {
+		assertNull(cache.getSequence());
+		cache.put("a", "1-a", doc("a", "1-a"));
+		cache.setSequence("42");
+		reopen();
+		assertEquals("42", cache.getSequence());
+		assertEquals(doc("a", "1-a"), cache.get("a"));
+		cache.setSequence("43");
+		assertEquals("43", cache.getSequence());
+	}
+	
+	public void testClear() throws Exception {
+		cache.put("a", "1-a", doc("a", "1-a"));
+		cache.setSequence("42");
+		cache.clear();
+		assertEquals(0, cache.size());
+		assertNull(cache.getSequence());
+		cache.put("b", "1-b", doc("b", "1-b"));
+		reopen();
+		assertNull(cache.get("a"));
+		assertEquals(doc("b", "1-b"), cache.get("b"));
+	}
+}
@@ -0,0 +1,121 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.List;
+import java.util.ArrayList;
+
+import org.tmapi.core.Association;
+import org.tmapi.core.Locator;
+import org.tmapi.core.Name;
+import org.tmapi.core.Occurrence;
+import org.tmapi.core.Role;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+
+/**
+ * Tests that a topic map holds a single instance per construct id, whether the 
+ * construct was reached by a reference of another construct, by a lookup or by 
+ * several threads at once.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestIdentityMap extends AbstractCouchTMTestCase {
+	
+	public void testReferenceBeforeLookup() throws Exception {
+		Locator typeSid = createLocator("type");
+		Locator topicSid = createLocator("topic");
+		Topic topic = tm.createTopicBySubjectIdentifier(topicSid);
+		topic.createOccurrence(tm.createTopicBySubjectIdentifier(typeSid), "value");
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap loaded = node.getTopicMap(base);
+			Occurrence occ = loaded.getTopicBySubjectIdentifier(topicSid).getOccurrences().iterator().next();
+			//the type is referenced before its document is read
+			Topic type = occ.getType();
+			assertSame(type, loaded.getTopicBySubjectIdentifier(typeSid));
+			assertSame(type, loaded.getConstructById(type.getId()));
+			assertTrue(type.getSubjectIdentifiers().contains(typeSid));
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testParentAndChildren() throws Exception {
+		Locator sid = createLocator("parent");
+		Name name = tm.createTopicBySubjectIdentifier(sid).createName("name");
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap loaded = node.getTopicMap(base);
+			Name loadedName = (Name) loaded.getConstructById(name.getId());
+			Topic topic = loaded.getTopicBySubjectIdentifier(sid);
+			assertSame(topic, loadedName.getParent());
+			assertSame(loadedName, topic.getNames().iterator().next());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testRolePlayer() throws Exception {
+		Locator sid = createLocator("player");
+		Topic player = tm.createTopicBySubjectIdentifier(sid);
+		Association assoc = tm.createAssociation(tm.createTopicBySubjectIdentifier(createLocator("association")));
+		assoc.createRole(tm.createTopicBySubjectIdentifier(createLocator("role")), player);
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap loaded = node.getTopicMap(base);
+			Role role = ((Association) loaded.getConstructById(assoc.getId())).getRoles().iterator().next();
+			Topic loadedPlayer = role.getPlayer();
+			assertSame(loadedPlayer, loaded.getTopicBySubjectIdentifier(sid));
+			assertSame(role, loadedPlayer.getRolesPlayed().iterator().next());
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testConcurrentLookups() throws Exception {
+		final Locator sid = createLocator("concurrent");
+		tm.createTopicBySubjectIdentifier(sid).createName("name");
+		TopicMapSystem node = newNode();
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			final TopicMap loaded = node.getTopicMap(base);
+			List<Future<Topic>> results = new ArrayList<Future<Topic>>();
+			for(int i = 0; i < 32; i++) {
+				results.add(executor.submit(new Callable<Topic>() {
+					public Topic call() throws Exception {
+						return loaded.getTopicBySubjectIdentifier(sid);
+					}
+				}));
+			}
+			Topic topic = results.get(0).get();
+			assertNotNull(topic);
+			for(Future<Topic> result : results) {
+				assertSame(topic, result.get());
+			}
+		} finally {
+			executor.shutdown();
+			node.close();
+		}
+	}
+}
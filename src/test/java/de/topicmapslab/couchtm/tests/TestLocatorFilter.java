@@ -0,0 +1,125 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import junit.framework.TestCase;
+
+import org.tmapi.core.TMAPIRuntimeException;
+
+import de.topicmapslab.couchtm.internal.api.ITopicMapSystem;
+import de.topicmapslab.couchtm.internal.utils.LocatorFilter;
+import de.topicmapslab.couchtm.internal.utils.TopicMapObjectManager;
+
+/**
+ * Tests the filter over the identity locators: added locators are always found,
+ * also after the filter has grown, and the rate of false positives stays low.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestLocatorFilter extends TestCase {
+	
+	private static final String BASE = "http://www.topicmapslab.de/couchtm/";
+	
+	public void testEmpty() {
+		LocatorFilter filter = new LocatorFilter(1024);
+		assertFalse(filter.mightContain(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic"));
+	}
+	
+	public void testAdded() {
+		LocatorFilter filter = new LocatorFilter(1024);
+		filter.add(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic");
+		filter.add(LocatorFilter.ITEM_IDENTIFIER, BASE+"name");
+		filter.add(LocatorFilter.SUBJECT_LOCATOR, BASE+"document");
+		assertTrue(filter.mightContain(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic"));
+		assertTrue(filter.mightContain(LocatorFilter.ITEM_IDENTIFIER, BASE+"name"));
+		assertTrue(filter.mightContain(LocatorFilter.SUBJECT_LOCATOR, BASE+"document"));
+	}
+	
+	public void testKinds() {
+		LocatorFilter filter = new LocatorFilter(1024);
+		filter.add(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic");
+		//the kind is part of the hash, a locator of another kind is a miss
+		assertFalse(filter.mightContain(LocatorFilter.SUBJECT_LOCATOR, BASE+"topic"));
+		assertFalse(filter.mightContain(LocatorFilter.ITEM_IDENTIFIER, BASE+"topic"));
+	}
+	
+	public void testGrowth() {
+		LocatorFilter filter = new LocatorFilter(1024);
+		//several times the capacity of the first stage
+		int count = 20000;
+		for(int i = 0; i < count; i++) filter.add(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic-"+i);
+		for(int i = 0; i < count; i++) {
+			assertTrue(filter.mightContain(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"topic-"+i));
+		}
+		int positives = 0;
+		for(int i = 0; i < count; i++) {
+			if(filter.mightContain(LocatorFilter.SUBJECT_IDENTIFIER, BASE+"missing-"+i)) positives++;
+		}
+		//the rates of the stages add up to at most twice the rate of the first stage
+		assertTrue("false positives: "+positives, positives < count * 0.03);
+	}
+	
+	public void testConcurrentAdds() throws Exception {
+		final LocatorFilter filter = new LocatorFilter(1024);
+		final int perThread = 5000;
+		List<Thread> threads = new ArrayList<Thread>();
+		for(int t = 0; t < 4; t++) {
+			final int offset = t * perThread;
+			threads.add(new Thread() {
+				public void run() {
+					for(int i = offset; i < offset + perThread; i++) filter.add(LocatorFilter.ITEM_IDENTIFIER, BASE+"construct-"+i);
+				}
+			});
+		}
+		for(Thread thread : threads) thread.start();
+		for(Thread thread : threads) thread.join();
+		for(int i = 0; i < 4 * perThread; i++) {
+			assertTrue(filter.mightContain(LocatorFilter.ITEM_IDENTIFIER, BASE+"construct-"+i));
+		}
+	}
+	
+	public void testNeedsChangesFeed() {
+		Map<String, String> properties = new HashMap<String, String>();
+		assertNull(new TopicMapObjectManager(system(properties), null).getIdentityFilter());
+		properties.put("LOCATOR_FILTER", "true");
+		try {
+			new TopicMapObjectManager(system(properties), null);
+			fail("without the changes feed the filter misses locators added by other nodes");
+		} catch(TMAPIRuntimeException e) {
+			//expected
+		}
+	}
+	
+	//a system which only answers the properties
+	private static ITopicMapSystem system(final Map<String, String> properties) {
+		return (ITopicMapSystem) Proxy.newProxyInstance(ITopicMapSystem.class.getClassLoader(), new Class<?>[] {ITopicMapSystem.class}, new InvocationHandler() {
+			public Object invoke(Object proxy, Method method, Object[] args) {
+				if(method.getName().equals("getProperty")) return properties.get(args[0]);
+				throw new UnsupportedOperationException(method.getName());
+			}
+		});
+	}
+}
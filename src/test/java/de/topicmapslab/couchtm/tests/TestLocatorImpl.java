@@ -0,0 +1,101 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.net.URI;
+
+import junit.framework.TestCase;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.MalformedIRIException;
+
+import de.topicmapslab.couchtm.core.LocatorImpl;
+import de.topicmapslab.couchtm.internal.api.IConstant;
+
+/**
+ * Tests the equality, interning and syntax check of locators.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestLocatorImpl extends TestCase {
+	
+	public void testEquality() {
+		LocatorImpl first = new LocatorImpl("http://www.topicmapslab.de/couchtm#topic");
+		LocatorImpl second = new LocatorImpl(new String("http://www.topicmapslab.de/couchtm#topic"));
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+		assertFalse(first.equals(new LocatorImpl("http://www.topicmapslab.de/couchtm#Topic")));
+		assertFalse(first.equals(new LocatorImpl("http://www.topicmapslab.de/couchtm/topic")));
+		assertEquals("http://www.topicmapslab.de/couchtm#topic", first.getReference());
+	}
+	
+	public void testEscapedEquality() {
+		LocatorImpl escaped = new LocatorImpl("http://www.topicmapslab.de/a%20b");
+		LocatorImpl plain = new LocatorImpl("http://www.topicmapslab.de/a b");
+		assertEquals(escaped, plain);
+		assertEquals(escaped.hashCode(), plain.hashCode());
+		assertEquals("http://www.topicmapslab.de/a b", escaped.getReference());
+		assertEquals("http://www.topicmapslab.de/a%20b", escaped.toExternalForm());
+		assertEquals("http://www.topicmapslab.de/a%20b", plain.toExternalForm());
+	}
+	
+	public void testURIConstructor() {
+		LocatorImpl loc = new LocatorImpl(URI.create("http://www.topicmapslab.de/a%20b"));
+		assertEquals(new LocatorImpl("http://www.topicmapslab.de/a b"), loc);
+		assertEquals("http://www.topicmapslab.de/a%20b", loc.toExternalForm());
+	}
+	
+	public void testInterning() {
+		String reference = "http://www.topicmapslab.de/couchtm/interned";
+		LocatorImpl loc = LocatorImpl.valueOf(reference);
+		assertSame(loc, LocatorImpl.valueOf(new String(reference)));
+		assertSame(loc, LocatorImpl.valueOf("http://www.topicmapslab.de/couchtm/interned"));
+		assertNotSame(loc, LocatorImpl.valueOf("http://www.topicmapslab.de/couchtm/other"));
+		assertSame(LocatorImpl.XSD_STRING, LocatorImpl.valueOf(IConstant.XSD_STRING));
+	}
+	
+	public void testResolve() {
+		Locator base = new LocatorImpl("http://www.topicmapslab.de/couchtm/");
+		assertEquals(new LocatorImpl("http://www.topicmapslab.de/couchtm/topic"), base.resolve("topic"));
+		assertEquals(new LocatorImpl("http://www.topicmapslab.de/couchtm/#topic"), base.resolve("#topic"));
+		assertEquals(new LocatorImpl("http://www.topicmapslab.de/other"), base.resolve("../other"));
+	}
+	
+	public void testIllegal() {
+		String[] references = {"", "#fragment", "http://www.topicmapslab.de/a%2", "http://www.topicmapslab.de/a%zz", 
+				"http://www.topicmapslab.de/a#b#c", "http://www.topicmapslab.de/a|b", "http://www.topicmapslab.de/a<b>", 
+				"http://www.topicmapslab.de/[a]", "1http://www.topicmapslab.de/", ":a", "http:", "http://www.topicmapslab.de/a\tb"};
+		for(String reference : references) {
+			try {
+				new LocatorImpl(reference);
+				fail("Illegal IRI accepted: "+reference);
+			} catch(MalformedIRIException e) {
+				//expected, on creation and not on first use
+			}
+		}
+	}
+	
+	public void testLegal() {
+		String[] references = {"http://www.topicmapslab.de/", "urn:x-couchtm:topic", "mailto:couchtm@topicmapslab.de", 
+				"http://[::1]/couchtm", "http://www.topicmapslab.de/?q=[1]", "file:///c:/couchtm", "relative/path", 
+				"http://www.topicmapslab.de/a+b", "http://www.topicmapslab.de/\u00e4"};
+		for(String reference : references) {
+			assertNotNull(new LocatorImpl(reference).toExternalForm());
+		}
+	}
+}
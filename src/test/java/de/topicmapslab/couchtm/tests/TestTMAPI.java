@@ -31,6 +31,16 @@ public class TestTMAPI extends TestSuite {
     public static Test suite() {
         TestSuite suite = new TestSuite();
         //suite.addTest(org.tmapi.AllTests.suite());
+        suite.addTestSuite(TestWriteBehind.class);
+        suite.addTestSuite(TestBatch.class);
+        suite.addTestSuite(TestAggregateLayout.class);
+        suite.addTestSuite(TestContentIds.class);
+        suite.addTestSuite(TestConstructId.class);
+        suite.addTestSuite(TestLocatorImpl.class);
+        suite.addTestSuite(TestIdentityMap.class);
+        suite.addTestSuite(TestChangesFeed.class);
+        suite.addTestSuite(TestLocatorFilter.class);
+        suite.addTestSuite(TestDiskCache.class);
         return suite;
     }
 }
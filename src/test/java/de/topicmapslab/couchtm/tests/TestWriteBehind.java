@@ -0,0 +1,147 @@
+/*
+ * Copyright 2009 Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package de.topicmapslab.couchtm.tests;
+
+import java.util.Map;
+
+import org.tmapi.core.Locator;
+import org.tmapi.core.TMAPIRuntimeException;
+import org.tmapi.core.Topic;
+import org.tmapi.core.TopicMap;
+import org.tmapi.core.TopicMapSystem;
+
+import de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl;
+import de.topicmapslab.couchtm.internal.api.IConstruct;
+import de.topicmapslab.couchtm.internal.api.ITopicMap;
+import de.topicmapslab.couchtm.internal.utils.CollectionFactory;
+import de.topicmapslab.couchtm.internal.utils.JSONToObject;
+import de.topicmapslab.couchtm.internal.utils.WriteBuffer;
+
+/**
+ * Tests the write-behind mode: buffered saves, flushing and the report of 
+ * documents which could not be written.
+ * 
+ * @author Hans-Henning Koch (phi04bib[at]studserv.uni-leipzig.de)
+ *
+ */
+public class TestWriteBehind extends AbstractCouchTMTestCase {
+	
+	/*
+	 * (non-Javadoc)
+	 * @see de.topicmapslab.couchtm.tests.AbstractCouchTMTestCase#configure(de.topicmapslab.couchtm.core.TopicMapSystemFactoryImpl)
+	 */
+	@Override
+	protected void configure(TopicMapSystemFactoryImpl factory) {
+		factory.setProperty("WRITE_BEHIND", "true");
+		factory.setProperty("WRITE_BEHIND_SIZE", "1000");
+		factory.setProperty("WRITE_BEHIND_DELAY", "200");
+	}
+	
+	public void testBufferSizeTrigger() {
+		WriteBuffer buffer = new WriteBuffer(2, Long.MAX_VALUE);
+		Topic topic = tm.createTopic();
+		Topic other = tm.createTopic();
+		assertFalse(buffer.add((IConstruct) topic));
+		assertFalse("saving the same construct again must not count", buffer.add((IConstruct) topic));
+		assertTrue(buffer.add((IConstruct) other));
+		assertEquals(2, buffer.drain().size());
+		assertTrue(buffer.isEmpty());
+	}
+	
+	public void testDeletionDropsPendingSave() {
+		WriteBuffer buffer = new WriteBuffer(100, Long.MAX_VALUE);
+		Topic topic = tm.createTopic();
+		buffer.add((IConstruct) topic);
+		buffer.delete(topic.getId(), null);
+		assertNull(buffer.get(topic.getId()));
+		assertFalse("never written documents need no deletion", buffer.isDeleted(topic.getId()));
+		assertTrue(buffer.isEmpty());
+		buffer.delete(topic.getId(), "1-abc");
+		assertTrue(buffer.isDeleted(topic.getId()));
+		assertEquals("1-abc", buffer.drainDeletions().get(topic.getId()));
+	}
+	
+	public void testBufferIsDue() throws Exception {
+		WriteBuffer buffer = new WriteBuffer(100, 50);
+		assertFalse(buffer.isDue());
+		buffer.add((IConstruct) tm.createTopic());
+		Thread.sleep(100);
+		assertTrue(buffer.isDue());
+		buffer.drain();
+		assertFalse(buffer.isDue());
+	}
+	
+	public void testBulkRevsReportsFailures() {
+		Map<String, String> failed = CollectionFactory.createMap();
+		Map<String, String> revs = JSONToObject.getBulkRevs("[{\"id\":\"a\",\"rev\":\"1-x\"},"
+				+ "{\"id\":\"b\",\"error\":\"conflict\",\"reason\":\"Document update conflict.\"}]", failed);
+		assertEquals(1, revs.size());
+		assertEquals("1-x", revs.get("a"));
+		assertEquals(1, failed.size());
+		assertTrue(failed.get("b").startsWith("conflict"));
+	}
+	
+	public void testFlushWritesPendingSaves() throws Exception {
+		Locator sid = createLocator("flushed");
+		tm.createTopicBySubjectIdentifier(sid);
+		((ITopicMap) tm).flush();
+		TopicMapSystem node = newNode();
+		try {
+			assertNotNull(node.getTopicMap(base).getTopicBySubjectIdentifier(sid));
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testPendingSavesAreWrittenWhenDue() throws Exception {
+		Locator sid = createLocator("due");
+		tm.createTopicBySubjectIdentifier(sid);
+		Thread.sleep(400);
+		//the next save of the owning system writes the buffer once it is due
+		tm.createTopic();
+		TopicMapSystem node = newNode();
+		try {
+			assertNotNull(node.getTopicMap(base).getTopicBySubjectIdentifier(sid));
+		} finally {
+			node.close();
+		}
+	}
+	
+	public void testFlushReportsConflicts() throws Exception {
+		Locator sid = createLocator("conflict");
+		Topic topic = tm.createTopicBySubjectIdentifier(sid);
+		((ITopicMap) tm).flush();
+		TopicMapSystem node = newNode();
+		try {
+			TopicMap other = node.getTopicMap(base);
+			other.getTopicBySubjectIdentifier(sid).addItemIdentifier(createLocator("other"));
+			((ITopicMap) other).flush();
+		} finally {
+			node.close();
+		}
+		//the revision of the cached topic is outdated now
+		topic.addItemIdentifier(createLocator("stale"));
+		try {
+			((ITopicMap) tm).flush();
+			fail("the conflict has to be reported");
+		} catch(TMAPIRuntimeException e) {
+			assertTrue(e.getMessage().contains(topic.getId()));
+		}
+		//reported once
+		((ITopicMap) tm).flush();
+	}
+}